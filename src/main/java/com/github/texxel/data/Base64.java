@@ -0,0 +1,66 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.InvalidDataException;
+
+import java.util.Arrays;
+
+/**
+ * The standard base 64 alphabet with padding (RFC 4648). Used for writing bytes into text formats.
+ */
+final class Base64 {
+
+    static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+    private static final int[] VALUES = new int[128];
+
+    static {
+        Arrays.fill(VALUES, -1);
+        for (int i = 0; i < ALPHABET.length; i++)
+            VALUES[ALPHABET[i]] = i;
+    }
+
+    private Base64() {
+    }
+
+    /**
+     * Decodes base 64 text
+     * @param text the text holding the base 64 characters
+     * @param offset where in the text the base 64 starts
+     * @return the decoded bytes
+     * @throws InvalidDataException if the text is not valid base 64
+     */
+    static byte[] decode(String text, int offset) {
+        int length = text.length() - offset;
+        if (length % 4 != 0)
+            throw new InvalidDataException("Base 64 length must be a multiple of 4");
+        int padding = 0;
+        if (length > 0 && text.charAt(text.length() - 1) == '=')
+            padding++;
+        if (length > 1 && text.charAt(text.length() - 2) == '=')
+            padding++;
+        byte[] bytes = new byte[length / 4 * 3 - padding];
+        int out = 0;
+        for (int i = offset; i < text.length(); i += 4) {
+            int bits = value(text, i) << 18 | value(text, i + 1) << 12;
+            boolean third = out + 1 < bytes.length;
+            boolean fourth = out + 2 < bytes.length;
+            if (third)
+                bits |= value(text, i + 2) << 6;
+            if (fourth)
+                bits |= value(text, i + 3);
+            bytes[out++] = (byte) (bits >> 16);
+            if (third)
+                bytes[out++] = (byte) (bits >> 8);
+            if (fourth)
+                bytes[out++] = (byte) bits;
+        }
+        return bytes;
+    }
+
+    private static int value(String text, int i) {
+        char c = text.charAt(i);
+        int value = c < 128 ? VALUES[c] : -1;
+        if (value < 0)
+            throw new InvalidDataException("Invalid base 64 character '" + c + "'");
+        return value;
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.texxel.data;
+
+/**
+ * Constants shared by everything that reads or writes the binary PData format.
+ *
+ * <p>A document starts with the {@link #MAGIC} bytes followed by the {@link #VERSION}. After that comes the root
+ * section. A section is written as a varint byte length (counting everything after the length), a varint entry count
+ * and then the entries. Each entry is a key, a one byte tag and then the value for that tag:</p>
+ * <ul>
+ *     <li>{@link #NULL}, {@link #TRUE}, {@link #FALSE}: nothing more</li>
+ *     <li>{@link #LONG}: a zig-zag encoded varint</li>
+ *     <li>{@link #DOUBLE}: the raw IEEE bits as 8 little-endian bytes</li>
+ *     <li>{@link #STRING}: a varint byte length followed by the UTF-8 bytes</li>
+ *     <li>{@link #DATA}: a section</li>
+ *     <li>{@link #REFERENCE}: the object id as a zig-zag encoded varint</li>
+ *     <li>{@link #LONG_ARRAY}, {@link #DOUBLE_ARRAY}: a varint count followed by 8 little-endian bytes for each
+ *     value (the raw IEEE bits for doubles)</li>
+ *     <li>{@link #BYTE_ARRAY}: a varint count followed by the bytes</li>
+ *     <li>{@link #LIST}: a varint count followed by each value as a tag and then the value for that tag. Lists cannot
+ *     hold packed arrays</li>
+ *     <li>{@link #STREAMED_DATA}: a section written without knowing its length up front. Each entry is written as
+ *     the tag, then the key and then the value for that tag. The section ends with an {@link #END} tag</li>
+ *     <li>{@link #STREAMED_LIST}: a list written without knowing its size up front. Each value is written as a tag
+ *     and then the value for that tag, ending with an {@link #END} tag</li>
+ * </ul>
+ * <p>The root section may be followed by an object index so that the section of an object can be found from its id
+ * without decoding the rest of the document. It is a varint count and then, for each section holding an object, the
+ * object's id as a zig-zag encoded varint, the varint offset of the section's length from the start of the document,
+ * and the class name recorded for the object by the list it is in as a string (empty if there is none). Documents
+ * without objects have no index.</p>
+ * <p>Documents written by a {@link DataSink} have the {@link #STREAMED_VERSION} instead, and the root section is
+ * written as the entries of a {@link #STREAMED_DATA} section. Everything inside of it is streamed as well.</p>
+ * <p>Keys are written the same way as strings. Varints store 7 bits per byte, lowest bits first, with the top bit of
+ * each byte set if more bytes follow.</p>
+ */
+final class BinaryFormat {
+
+    static final byte[] MAGIC = { 'P', 'D', 'A', 'T' };
+    static final int VERSION = 1;
+    /** the version of documents where the root section is streamed */
+    static final int STREAMED_VERSION = 2;
+
+    static final int NULL = 0;
+    static final int FALSE = 1;
+    static final int TRUE = 2;
+    static final int LONG = 3;
+    static final int DOUBLE = 4;
+    static final int STRING = 5;
+    static final int DATA = 6;
+    static final int REFERENCE = 7;
+    static final int LONG_ARRAY = 8;
+    static final int DOUBLE_ARRAY = 9;
+    static final int BYTE_ARRAY = 10;
+    static final int LIST = 11;
+    static final int STREAMED_DATA = 12;
+    static final int STREAMED_LIST = 13;
+    static final int END = 14;
+
+    private BinaryFormat() {
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** The number of bytes a varint takes up */
+    static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * The number of bytes the string takes up as UTF-8. Unpaired surrogates are written as a single '?' byte.
+     */
+    static int utf8Length(String value) {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80)
+                continue;
+            if (c < 0x800)
+                bytes += 1;
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                // the pair takes 4 bytes in total
+                bytes += 2;
+                i++;
+            } else if (!Character.isSurrogate(c))
+                bytes += 2;
+        }
+        return bytes;
+    }
+}
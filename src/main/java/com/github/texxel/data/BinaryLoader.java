@@ -0,0 +1,866 @@
+package com.github.texxel.data;
+
+import com.badlogic.gdx.utils.StreamUtils;
+import com.github.texxel.data.exceptions.DataSerializationException;
+import com.github.texxel.data.exceptions.InvalidDataException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A DataLoader that uses a compact binary format instead of text. Any PData written by this loader will read back in
+ * exactly the same as if it went through the {@link JsonLoader}, so Json can still be used whenever the data needs to
+ * be human readable. See {@link BinaryFormat} for the layout of the bytes.
+ */
+public class BinaryLoader implements DataLoader {
+
+    @Override
+    public PData read (InputStream input) {
+        try {
+            PData pData = read(new BinaryStreamReader(input));
+            input.close();
+            return pData;
+        } catch (Exception e) {
+            throw new DataSerializationException("Couldn't load the data", e);
+        } finally {
+            StreamUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Reads binary data that is already in memory.
+     * @param bytes the binary data
+     * @return the PData in the bytes
+     * @throws DataSerializationException if the bytes could not be read
+     */
+    public PData read (byte[] bytes) {
+        try {
+            return read(new BinaryStreamReader(bytes, 0, bytes.length));
+        } catch (Exception e) {
+            throw new DataSerializationException("Couldn't load the data", e);
+        }
+    }
+
+    private PData read (BinaryStreamReader reader) throws IOException {
+        int version = readHeader(reader);
+        PData pData = new PData();
+        if (version == BinaryFormat.STREAMED_VERSION)
+            readStreamedEntries(pData, reader);
+        else
+            readInto(pData, reader);
+        return pData;
+    }
+
+    /**
+     * @return the version of the document
+     */
+    private static int readHeader (BinaryStreamReader reader) throws IOException {
+        for (byte b : BinaryFormat.MAGIC) {
+            if (reader.readByte() != b)
+                throw new InvalidDataException("Not binary PData");
+        }
+        int version = reader.readByte();
+        if (version != BinaryFormat.VERSION && version != BinaryFormat.STREAMED_VERSION)
+            throw new InvalidDataException("Unsupported binary PData version " + version);
+        return version;
+    }
+
+    private void readInto (PData pData, BinaryStreamReader reader) throws IOException {
+        // the byte length is only needed by readers that want to skip sections
+        reader.readLength();
+        readEntries(pData, reader, null);
+    }
+
+    /**
+     * Reads the entries of a section into the PData.
+     * @param mapped if not null, the sections are not read in but are instead left to be decoded out of the mapped
+     *               buffer the first time they are used
+     */
+    static void readEntries (PData pData, BinaryStreamReader reader, MappedSection mapped) throws IOException {
+        int count = reader.readLength();
+        for (int i = 0; i < count; i++) {
+            String key = reader.readKey();
+            readEntry(pData, key, reader.readByte(), reader, mapped);
+        }
+    }
+
+    /**
+     * Reads the entries of a streamed section up to its end tag
+     */
+    private static void readStreamedEntries (PData pData, BinaryStreamReader reader) throws IOException {
+        for (int tag = reader.readByte(); tag != BinaryFormat.END; tag = reader.readByte())
+            readEntry(pData, reader.readKey(), tag, reader, null);
+    }
+
+    private static void readEntry (PData pData, String key, int tag, BinaryStreamReader reader, MappedSection mapped)
+            throws IOException {
+        switch (tag) {
+            case BinaryFormat.NULL:
+                pData.setNull(key);
+                break;
+            case BinaryFormat.FALSE:
+                pData.set(key, false);
+                break;
+            case BinaryFormat.TRUE:
+                pData.set(key, true);
+                break;
+            case BinaryFormat.LONG:
+                pData.set(key, reader.readLong());
+                break;
+            case BinaryFormat.DOUBLE:
+                pData.set(key, reader.readDouble());
+                break;
+            case BinaryFormat.STRING:
+                pData.set(key, reader.readString());
+                break;
+            case BinaryFormat.REFERENCE:
+                pData.setReference(key, reader.readLong());
+                break;
+            case BinaryFormat.LONG_ARRAY: {
+                long[] values = new long[reader.readLength()];
+                for (int j = 0; j < values.length; j++)
+                    values[j] = reader.readFixedLong();
+                pData.setArray(key, values);
+                break;
+            }
+            case BinaryFormat.DOUBLE_ARRAY: {
+                double[] values = new double[reader.readLength()];
+                for (int j = 0; j < values.length; j++)
+                    values[j] = Double.longBitsToDouble(reader.readFixedLong());
+                pData.setArray(key, values);
+                break;
+            }
+            case BinaryFormat.BYTE_ARRAY: {
+                byte[] values = new byte[reader.readLength()];
+                reader.readBytes(values);
+                pData.setArray(key, values);
+                break;
+            }
+            case BinaryFormat.DATA:
+                readSection(pData.createSection(key), reader, mapped);
+                break;
+            case BinaryFormat.LIST:
+                readList(pData.createList(key), reader, mapped);
+                break;
+            case BinaryFormat.STREAMED_DATA:
+                readStreamedEntries(pData.createSection(key), reader);
+                break;
+            case BinaryFormat.STREAMED_LIST:
+                readStreamedList(pData.createList(key), reader);
+                break;
+            default:
+                throw reader.error("Unknown tag " + tag);
+        }
+    }
+
+    private static void readSection (PData section, BinaryStreamReader reader, MappedSection mapped) throws IOException {
+        if (mapped == null) {
+            reader.readLength();
+            readEntries(section, reader, null);
+        } else {
+            section.pending = mapped.child(reader.offset());
+            reader.skip(reader.readLength());
+        }
+    }
+
+    private static void readList (PList list, BinaryStreamReader reader, MappedSection mapped) throws IOException {
+        int count = reader.readLength();
+        for (int i = 0; i < count; i++)
+            readElement(list, reader.readByte(), reader, mapped);
+    }
+
+    /**
+     * Reads the values of a streamed list up to its end tag
+     */
+    private static void readStreamedList (PList list, BinaryStreamReader reader) throws IOException {
+        for (int tag = reader.readByte(); tag != BinaryFormat.END; tag = reader.readByte())
+            readElement(list, tag, reader, null);
+    }
+
+    private static void readElement (PList list, int tag, BinaryStreamReader reader, MappedSection mapped)
+            throws IOException {
+        switch (tag) {
+            case BinaryFormat.NULL:
+                list.addNull();
+                break;
+            case BinaryFormat.FALSE:
+                list.add(false);
+                break;
+            case BinaryFormat.TRUE:
+                list.add(true);
+                break;
+            case BinaryFormat.LONG:
+                list.add(reader.readLong());
+                break;
+            case BinaryFormat.DOUBLE:
+                list.add(reader.readDouble());
+                break;
+            case BinaryFormat.STRING:
+                list.add(reader.readString());
+                break;
+            case BinaryFormat.REFERENCE:
+                list.addReference(reader.readLong());
+                break;
+            case BinaryFormat.DATA:
+                readSection(list.addSection(), reader, mapped);
+                break;
+            case BinaryFormat.LIST:
+                readList(list.addList(), reader, mapped);
+                break;
+            case BinaryFormat.STREAMED_DATA:
+                readStreamedEntries(list.addSection(), reader);
+                break;
+            case BinaryFormat.STREAMED_LIST:
+                readStreamedList(list.addList(), reader);
+                break;
+            default:
+                throw reader.error("Unknown tag " + tag + " in list");
+        }
+    }
+
+    /**
+     * Reads binary data out of a stream lazily, the same as {@link JsonLoader#stream(InputStream)} does for Json. Both
+     * length prefixed and streamed documents can be read.
+     * @param input where to read the data from
+     * @return the root of the data in the stream
+     * @throws DataSerializationException if the start of the stream could not be read. Errors further on are thrown
+     * as the data is used
+     */
+    public PData stream (InputStream input) {
+        try {
+            BinaryStreamReader reader = new BinaryStreamReader(input);
+            Cursor cursor = new Cursor(reader, input);
+            if (readHeader(reader) == BinaryFormat.STREAMED_VERSION)
+                cursor.enter(-1);
+            else
+                cursor.enterSection();
+            return new StreamedDocument(cursor).root();
+        } catch (Exception e) {
+            StreamUtils.closeQuietly(input);
+            throw new DataSerializationException("Couldn't load the data", e);
+        }
+    }
+
+    /**
+     * Memory maps a binary file and gives a view of it as PData. Nothing is decoded up front; instead each section is
+     * decoded out of the file the first time it is used, so the time and memory taken only depends on how much of the
+     * data is actually looked at. Once a section has been decoded it is a normal PData and can be changed as usual.
+     * The file must not be changed while the data is in use.
+     * @param file the file to map
+     * @return the root of the data in the file
+     * @throws DataSerializationException if the file could not be mapped or is not binary PData. Errors in the data
+     * of sections will only be found when the section is used.
+     */
+    public PData map (File file) {
+        FileChannel channel = null;
+        try {
+            channel = new RandomAccessFile(file, "r").getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new InvalidDataException("File too big to map: " + size + " bytes");
+            return view(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } catch (Exception e) {
+            throw new DataSerializationException("Couldn't map " + file, e);
+        } finally {
+            // the mapping stays valid after the channel is closed
+            StreamUtils.closeQuietly(channel);
+        }
+    }
+
+    /**
+     * Gives a lazily decoded view of binary data in a buffer. See {@link #map(File)}. The buffer's position and limit
+     * are not used.
+     * @param buffer the binary data. The buffer must not be changed while the data is in use
+     * @return the root of the data in the buffer
+     * @throws DataSerializationException if the buffer is not binary PData
+     */
+    public PData view (ByteBuffer buffer) {
+        try {
+            String[] keys = BinaryStreamReader.newKeyCache();
+            BinaryStreamReader reader = new BinaryStreamReader(buffer, 0, keys);
+            PData pData = new PData();
+            // streamed sections have no length to skip them with, so they are all decoded up front
+            if (readHeader(reader) == BinaryFormat.STREAMED_VERSION) {
+                readStreamedEntries(pData, reader);
+            } else {
+                int root = (int) reader.offset();
+                reader.skip(reader.readLength());
+                // data written before the index was added ends with the root section
+                int end = (int) reader.offset();
+                MappedIndex index = end < buffer.limit() ? new MappedIndex(buffer, end, keys) : null;
+                pData.pending = new MappedSection(buffer, root, keys, index);
+            }
+            return pData;
+        } catch (Exception e) {
+            throw new DataSerializationException("Couldn't load the data", e);
+        }
+    }
+
+    @Override
+    public void write (OutputStream output, PData data) {
+        try {
+            // section lengths have to be known before the sections are written, so work them all out first
+            Sizes sizes = new Sizes();
+            sizeOf(data, sizes);
+            sizes.index = 0;
+
+            BinaryStreamWriter writer = new BinaryStreamWriter(output);
+            writer.writeBytes(BinaryFormat.MAGIC);
+            writer.writeByte(BinaryFormat.VERSION);
+            ObjectIndex index = new ObjectIndex();
+            writeFrom(data, writer, sizes, index, null);
+            index.write(writer);
+            writer.flush();
+        } catch (Exception e) {
+            throw new DataSerializationException("Couldn't write the data", e);
+        } finally {
+            StreamUtils.closeQuietly(output);
+        }
+    }
+
+    /**
+     * Gives a sink that writes binary data to the output as the values come in. Since the sizes of the sections are
+     * not known ahead of time, every section is written in the streamed form (see {@link BinaryFormat}). Closing the
+     * sink closes the output.
+     * @param output where to write the data
+     * @return the sink
+     * @see DataOutRoot#writeStreamed(DataSerializable, DataSink)
+     */
+    public DataSink sink (OutputStream output) {
+        return new Sink(output);
+    }
+
+    /**
+     * @param elementName the class recorded by the list the section is in or null if there is none
+     */
+    private void writeFrom (PData data, BinaryStreamWriter writer, Sizes sizes, ObjectIndex index, String elementName)
+            throws IOException {
+        long id = objectId(data);
+        if (id >= 0)
+            index.add(id, writer.offset(), PrimitiveConverter.hasOwnClass(data) ? null : elementName);
+        writer.writeVarint(sizes.next());
+        writer.writeVarint(data.keys().size());
+        for (String key : data.keys()) {
+            writer.writeString(key);
+            switch (data.getType(key)) {
+                case NULL:
+                    writer.writeByte(BinaryFormat.NULL);
+                    break;
+                case BOOLEAN:
+                    writer.writeByte(data.getBoolean(key) ? BinaryFormat.TRUE : BinaryFormat.FALSE);
+                    break;
+                case LONG:
+                    writer.writeByte(BinaryFormat.LONG);
+                    writer.writeLong(data.getLong(key));
+                    break;
+                case DOUBLE:
+                    writer.writeByte(BinaryFormat.DOUBLE);
+                    writer.writeDouble(data.getDouble(key));
+                    break;
+                case STRING:
+                    writer.writeByte(BinaryFormat.STRING);
+                    writer.writeString(data.getString(key));
+                    break;
+                case DATA:
+                    writer.writeByte(BinaryFormat.DATA);
+                    writeFrom(data.section(key), writer, sizes, index, null);
+                    break;
+                case REFERENCE:
+                    writer.writeByte(BinaryFormat.REFERENCE);
+                    writer.writeLong(data.getReference(key));
+                    break;
+                case LONG_ARRAY: {
+                    long[] values = data.getLongArray(key);
+                    writer.writeByte(BinaryFormat.LONG_ARRAY);
+                    writer.writeVarint(values.length);
+                    for (long value : values)
+                        writer.writeFixedLong(value);
+                    break;
+                }
+                case DOUBLE_ARRAY: {
+                    double[] values = data.getDoubleArray(key);
+                    writer.writeByte(BinaryFormat.DOUBLE_ARRAY);
+                    writer.writeVarint(values.length);
+                    for (double value : values)
+                        writer.writeDouble(value);
+                    break;
+                }
+                case BYTE_ARRAY: {
+                    byte[] values = data.getByteArray(key);
+                    writer.writeByte(BinaryFormat.BYTE_ARRAY);
+                    writer.writeVarint(values.length);
+                    writer.writeBytes(values);
+                    break;
+                }
+                case LIST:
+                    writer.writeByte(BinaryFormat.LIST);
+                    writeFrom(data.list(key), writer, sizes, index, PrimitiveConverter.elementName(data, key));
+                    break;
+                default:
+                    throw new InvalidDataException("Unsupported type " + data.getType(key));
+            }
+        }
+    }
+
+    private void writeFrom (PList list, BinaryStreamWriter writer, Sizes sizes, ObjectIndex index, String elementName)
+            throws IOException {
+        writer.writeVarint(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            switch (list.getType(i)) {
+                case NULL:
+                    writer.writeByte(BinaryFormat.NULL);
+                    break;
+                case BOOLEAN:
+                    writer.writeByte(list.getBoolean(i) ? BinaryFormat.TRUE : BinaryFormat.FALSE);
+                    break;
+                case LONG:
+                    writer.writeByte(BinaryFormat.LONG);
+                    writer.writeLong(list.getLong(i));
+                    break;
+                case DOUBLE:
+                    writer.writeByte(BinaryFormat.DOUBLE);
+                    writer.writeDouble(list.getDouble(i));
+                    break;
+                case STRING:
+                    writer.writeByte(BinaryFormat.STRING);
+                    writer.writeString(list.getString(i));
+                    break;
+                case REFERENCE:
+                    writer.writeByte(BinaryFormat.REFERENCE);
+                    writer.writeLong(list.getReference(i));
+                    break;
+                case DATA:
+                    writer.writeByte(BinaryFormat.DATA);
+                    writeFrom(list.getSection(i), writer, sizes, index, elementName);
+                    break;
+                case LIST:
+                    writer.writeByte(BinaryFormat.LIST);
+                    writeFrom(list.getList(i), writer, sizes, index, null);
+                    break;
+                default:
+                    throw new InvalidDataException("Unsupported type " + list.getType(i));
+            }
+        }
+    }
+
+    /**
+     * Works out the number of bytes each section will take. The sizes are recorded in the same order that
+     * {@link #writeFrom(PData, BinaryStreamWriter, Sizes)} visits the sections.
+     * @return the number of bytes the section takes including its length prefix
+     */
+    private long sizeOf (PData data, Sizes sizes) {
+        int slot = sizes.reserve();
+        long size = BinaryFormat.varintLength(data.keys().size());
+        for (String key : data.keys()) {
+            size += stringSize(key) + 1;
+            switch (data.getType(key)) {
+                case LONG:
+                    size += BinaryFormat.varintLength(BinaryFormat.zigZag(data.getLong(key)));
+                    break;
+                case REFERENCE:
+                    size += BinaryFormat.varintLength(BinaryFormat.zigZag(data.getReference(key)));
+                    break;
+                case LONG_ARRAY:
+                    size += arraySize(data.getLongArray(key).length, 8);
+                    break;
+                case DOUBLE_ARRAY:
+                    size += arraySize(data.getDoubleArray(key).length, 8);
+                    break;
+                case BYTE_ARRAY:
+                    size += arraySize(data.getByteArray(key).length, 1);
+                    break;
+                case LIST:
+                    size += sizeOf(data.list(key), sizes);
+                    break;
+                case DOUBLE:
+                    size += 8;
+                    break;
+                case STRING:
+                    size += stringSize(data.getString(key));
+                    break;
+                case DATA:
+                    size += sizeOf(data.section(key), sizes);
+                    break;
+                default:
+                    // null and booleans are only the tag
+            }
+        }
+        sizes.values[slot] = size;
+        return BinaryFormat.varintLength(size) + size;
+    }
+
+    /**
+     * Works out the number of bytes a list takes. Lists have no length prefix of their own but the sizes of the
+     * sections in them still need to be recorded.
+     */
+    private long sizeOf (PList list, Sizes sizes) {
+        long size = BinaryFormat.varintLength(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            size += 1;
+            switch (list.getType(i)) {
+                case LONG:
+                    size += BinaryFormat.varintLength(BinaryFormat.zigZag(list.getLong(i)));
+                    break;
+                case REFERENCE:
+                    size += BinaryFormat.varintLength(BinaryFormat.zigZag(list.getReference(i)));
+                    break;
+                case DOUBLE:
+                    size += 8;
+                    break;
+                case STRING:
+                    size += stringSize(list.getString(i));
+                    break;
+                case DATA:
+                    size += sizeOf(list.getSection(i), sizes);
+                    break;
+                case LIST:
+                    size += sizeOf(list.getList(i), sizes);
+                    break;
+                default:
+                    // null and booleans are only the tag
+            }
+        }
+        return size;
+    }
+
+    private static long arraySize (int length, int bytesEach) {
+        return BinaryFormat.varintLength(length) + (long) length * bytesEach;
+    }
+
+    private static long stringSize (String value) {
+        int length = BinaryFormat.utf8Length(value);
+        return BinaryFormat.varintLength(length) + length;
+    }
+
+    /**
+     * The sizes of each section in the order they are written
+     */
+    private static final class Sizes {
+        long[] values = new long[16];
+        int count;
+        int index;
+
+        int reserve() {
+            if (count == values.length) {
+                long[] bigger = new long[count * 2];
+                System.arraycopy(values, 0, bigger, 0, count);
+                values = bigger;
+            }
+            return count++;
+        }
+
+        long next() {
+            return values[index++];
+        }
+    }
+
+    /**
+     * @return the id of the object held in the section or -1 if it does not hold an object
+     */
+    private static long objectId (PData section) {
+        int entry = section.entry("__id");
+        if (entry < 0)
+            return -1;
+        switch (section.typeAt(entry)) {
+            case LONG:
+                return section.primitiveAt(entry);
+            case STRING:
+                return ReferenceTable.legacyId((String) section.objectAt(entry));
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * The object index written after the root section (see {@link BinaryFormat})
+     */
+    private static final class ObjectIndex {
+        long[] ids = new long[16];
+        long[] offsets = new long[16];
+        String[] elementNames = new String[16];
+        int count;
+
+        void add(long id, long offset, String elementName) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+                elementNames = Arrays.copyOf(elementNames, count * 2);
+            }
+            ids[count] = id;
+            offsets[count] = offset;
+            elementNames[count] = elementName;
+            count++;
+        }
+
+        void write(BinaryStreamWriter writer) throws IOException {
+            // data without objects never needs the index
+            if (count == 0)
+                return;
+            writer.writeVarint(count);
+            for (int i = 0; i < count; i++) {
+                writer.writeLong(ids[i]);
+                writer.writeVarint(offsets[i]);
+                writer.writeString(elementNames[i] == null ? "" : elementNames[i]);
+            }
+        }
+    }
+
+    private static final class Sink implements DataSink {
+
+        private final OutputStream output;
+        private final BinaryStreamWriter writer;
+        /** the key of the next value or null if the value is in a list */
+        private String key;
+        private boolean started;
+
+        Sink(OutputStream output) {
+            this.output = output;
+            this.writer = new BinaryStreamWriter(output);
+        }
+
+        /**
+         * Starts a value. Values in sections have their key written after the tag
+         */
+        private void tag(int tag) throws IOException {
+            writer.writeByte(tag);
+            if (key != null) {
+                writer.writeString(key);
+                key = null;
+            }
+        }
+
+        @Override
+        public void beginSection() throws IOException {
+            if (started) {
+                tag(BinaryFormat.STREAMED_DATA);
+            } else {
+                started = true;
+                writer.writeBytes(BinaryFormat.MAGIC);
+                writer.writeByte(BinaryFormat.STREAMED_VERSION);
+            }
+        }
+
+        @Override
+        public void endSection() throws IOException {
+            writer.writeByte(BinaryFormat.END);
+        }
+
+        @Override
+        public void beginList() throws IOException {
+            tag(BinaryFormat.STREAMED_LIST);
+        }
+
+        @Override
+        public void endList() throws IOException {
+            writer.writeByte(BinaryFormat.END);
+        }
+
+        @Override
+        public void key(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void value(long value) throws IOException {
+            tag(BinaryFormat.LONG);
+            writer.writeLong(value);
+        }
+
+        @Override
+        public void value(double value) throws IOException {
+            tag(BinaryFormat.DOUBLE);
+            writer.writeDouble(value);
+        }
+
+        @Override
+        public void value(boolean value) throws IOException {
+            tag(value ? BinaryFormat.TRUE : BinaryFormat.FALSE);
+        }
+
+        @Override
+        public void value(String value) throws IOException {
+            tag(BinaryFormat.STRING);
+            writer.writeString(value);
+        }
+
+        @Override
+        public void nullValue() throws IOException {
+            tag(BinaryFormat.NULL);
+        }
+
+        @Override
+        public void reference(long id) throws IOException {
+            tag(BinaryFormat.REFERENCE);
+            writer.writeLong(id);
+        }
+
+        @Override
+        public void array(long[] values) throws IOException {
+            tag(BinaryFormat.LONG_ARRAY);
+            writer.writeVarint(values.length);
+            for (long value : values)
+                writer.writeFixedLong(value);
+        }
+
+        @Override
+        public void array(double[] values) throws IOException {
+            tag(BinaryFormat.DOUBLE_ARRAY);
+            writer.writeVarint(values.length);
+            for (double value : values)
+                writer.writeDouble(value);
+        }
+
+        @Override
+        public void array(byte[] values) throws IOException {
+            tag(BinaryFormat.BYTE_ARRAY);
+            writer.writeVarint(values.length);
+            writer.writeBytes(values);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+
+    /**
+     * Reads binary data one value at a time
+     */
+    private static final class Cursor extends DocumentCursor {
+
+        private final BinaryStreamReader reader;
+        private final InputStream input;
+        /** the number of values left in each section and list that has been entered or -1 if it has an end tag */
+        private int[] remaining = new int[16];
+        private int depth;
+
+        Cursor(BinaryStreamReader reader, InputStream input) {
+            this.reader = reader;
+            this.input = input;
+        }
+
+        void enter(int count) {
+            if (depth == remaining.length)
+                remaining = Arrays.copyOf(remaining, depth * 2);
+            remaining[depth++] = count;
+        }
+
+        /**
+         * Enters a length prefixed section
+         */
+        void enterSection() throws IOException {
+            reader.readLength();
+            enter(reader.readLength());
+        }
+
+        @Override
+        boolean next(boolean inList) throws IOException {
+            int left = remaining[depth - 1];
+            int tag;
+            if (left < 0) {
+                tag = reader.readByte();
+                if (tag == BinaryFormat.END) {
+                    depth--;
+                    return false;
+                }
+                key = inList ? null : reader.readKey();
+            } else if (left == 0) {
+                depth--;
+                return false;
+            } else {
+                remaining[depth - 1] = left - 1;
+                key = inList ? null : reader.readKey();
+                tag = reader.readByte();
+            }
+            value(tag);
+            return true;
+        }
+
+        private void value(int tag) throws IOException {
+            object = null;
+            switch (tag) {
+                case BinaryFormat.NULL:
+                    type = PData.Type.NULL;
+                    break;
+                case BinaryFormat.FALSE:
+                case BinaryFormat.TRUE:
+                    type = PData.Type.BOOLEAN;
+                    primitive = tag == BinaryFormat.TRUE ? 1 : 0;
+                    break;
+                case BinaryFormat.LONG:
+                    type = PData.Type.LONG;
+                    primitive = reader.readLong();
+                    break;
+                case BinaryFormat.DOUBLE:
+                    type = PData.Type.DOUBLE;
+                    primitive = reader.readFixedLong();
+                    break;
+                case BinaryFormat.STRING:
+                    type = PData.Type.STRING;
+                    object = reader.readString();
+                    break;
+                case BinaryFormat.REFERENCE:
+                    type = PData.Type.REFERENCE;
+                    primitive = reader.readLong();
+                    break;
+                case BinaryFormat.LONG_ARRAY: {
+                    long[] values = new long[reader.readLength()];
+                    for (int i = 0; i < values.length; i++)
+                        values[i] = reader.readFixedLong();
+                    type = PData.Type.LONG_ARRAY;
+                    object = values;
+                    break;
+                }
+                case BinaryFormat.DOUBLE_ARRAY: {
+                    double[] values = new double[reader.readLength()];
+                    for (int i = 0; i < values.length; i++)
+                        values[i] = Double.longBitsToDouble(reader.readFixedLong());
+                    type = PData.Type.DOUBLE_ARRAY;
+                    object = values;
+                    break;
+                }
+                case BinaryFormat.BYTE_ARRAY: {
+                    byte[] values = new byte[reader.readLength()];
+                    reader.readBytes(values);
+                    type = PData.Type.BYTE_ARRAY;
+                    object = values;
+                    break;
+                }
+                case BinaryFormat.DATA:
+                    type = PData.Type.DATA;
+                    enterSection();
+                    break;
+                case BinaryFormat.LIST:
+                    type = PData.Type.LIST;
+                    enter(reader.readLength());
+                    break;
+                case BinaryFormat.STREAMED_DATA:
+                    type = PData.Type.DATA;
+                    enter(-1);
+                    break;
+                case BinaryFormat.STREAMED_LIST:
+                    type = PData.Type.LIST;
+                    enter(-1);
+                    break;
+                default:
+                    throw reader.error("Unknown tag " + tag);
+            }
+        }
+
+        @Override
+        void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.InvalidDataException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the primitives of the binary PData format (see {@link BinaryFormat}) out of a stream. Keys that are pure ASCII
+ * are looked up in a small cache so keys that get repeated throughout a document share a single String.
+ */
+final class BinaryStreamReader {
+
+    private static final int KEY_CACHE_SIZE = 256;
+
+    private final InputStream input;
+    private final ByteBuffer source;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private long consumed;
+
+    private char[] chars = new char[64];
+    private final String[] keys;
+
+    BinaryStreamReader(InputStream input) {
+        this.input = input;
+        this.source = null;
+        this.buffer = new byte[8192];
+        this.keys = new String[KEY_CACHE_SIZE];
+    }
+
+    BinaryStreamReader(byte[] bytes, int offset, int length) {
+        this.input = null;
+        this.source = null;
+        this.buffer = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+        this.keys = new String[KEY_CACHE_SIZE];
+    }
+
+    /**
+     * Creates a reader that starts part way through a buffer. Only small chunks of the buffer are copied out at a time
+     * so creating a reader to look at a small part of a huge buffer is cheap.
+     * @param bytes the buffer to read. The buffer's position and limit are not changed
+     * @param offset where in the buffer to start reading
+     * @param keys a key cache to share between readers of the same buffer (see {@link #newKeyCache()})
+     */
+    BinaryStreamReader(ByteBuffer bytes, int offset, String[] keys) {
+        this.input = null;
+        this.source = bytes.duplicate();
+        this.source.position(offset);
+        this.buffer = new byte[256];
+        this.consumed = offset;
+        this.keys = keys;
+    }
+
+    static String[] newKeyCache() {
+        return new String[KEY_CACHE_SIZE];
+    }
+
+    /**
+     * The number of bytes read through so far. For readers created over a ByteBuffer, this is the absolute position in
+     * the buffer.
+     */
+    long offset() {
+        return consumed + position;
+    }
+
+    void skip(long bytes) throws IOException {
+        int available = limit - position;
+        if (bytes <= available) {
+            position += bytes;
+            return;
+        }
+        long remaining = bytes - available;
+        consumed += limit + remaining;
+        position = 0;
+        limit = 0;
+        if (source != null) {
+            if (remaining > source.remaining())
+                throw error("Unexpected end of data");
+            source.position(source.position() + (int) remaining);
+        } else if (input != null) {
+            while (remaining > 0) {
+                long skipped = input.skip(remaining);
+                if (skipped <= 0) {
+                    if (input.read() < 0)
+                        throw error("Unexpected end of data");
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+        } else {
+            throw error("Unexpected end of data");
+        }
+    }
+
+    int readByte() throws IOException {
+        if (position == limit && !fill())
+            throw error("Unexpected end of data");
+        return buffer[position++] & 0xFF;
+    }
+
+    long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw error("Malformed varint");
+    }
+
+    int readLength() throws IOException {
+        long length = readVarint();
+        if (length < 0 || length > Integer.MAX_VALUE)
+            throw error("Invalid length " + length);
+        return (int) length;
+    }
+
+    long readLong() throws IOException {
+        return BinaryFormat.unZigZag(readVarint());
+    }
+
+    double readDouble() throws IOException {
+        return Double.longBitsToDouble(readFixedLong());
+    }
+
+    /**
+     * Reads a long written as 8 little-endian bytes
+     */
+    long readFixedLong() throws IOException {
+        if (limit - position >= 8) {
+            long bits = 0;
+            for (int i = 0; i < 8; i++)
+                bits |= (long) (buffer[position++] & 0xFF) << (8 * i);
+            return bits;
+        }
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits |= (long) readByte() << (8 * i);
+        }
+        return bits;
+    }
+
+    /**
+     * Fills the array with the next bytes
+     */
+    void readBytes(byte[] bytes) throws IOException {
+        int done = 0;
+        while (done < bytes.length) {
+            if (position == limit && !fill())
+                throw error("Unexpected end of data");
+            int count = Math.min(bytes.length - done, limit - position);
+            System.arraycopy(buffer, position, bytes, done, count);
+            position += count;
+            done += count;
+        }
+    }
+
+    String readString() throws IOException {
+        return readString(false);
+    }
+
+    String readKey() throws IOException {
+        return readString(true);
+    }
+
+    private String readString(boolean key) throws IOException {
+        int length = readLength();
+        if (chars.length < length)
+            chars = new char[Math.max(length, chars.length * 2)];
+        int count = 0;
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            int c = readByte();
+            if (c < 0x80) {
+                chars[count++] = (char) c;
+                continue;
+            }
+            ascii = false;
+            int extra;
+            int code;
+            if ((c & 0xE0) == 0xC0) {
+                extra = 1;
+                code = c & 0x1F;
+            } else if ((c & 0xF0) == 0xE0) {
+                extra = 2;
+                code = c & 0x0F;
+            } else if ((c & 0xF8) == 0xF0) {
+                extra = 3;
+                code = c & 0x07;
+            } else {
+                throw error("Malformed UTF-8");
+            }
+            if (i + extra >= length)
+                throw error("Malformed UTF-8");
+            for (int j = 0; j < extra; j++) {
+                int next = readByte();
+                if ((next & 0xC0) != 0x80)
+                    throw error("Malformed UTF-8");
+                code = (code << 6) | (next & 0x3F);
+            }
+            i += extra;
+            if (code >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars[count++] = Character.highSurrogate(code);
+                chars[count++] = Character.lowSurrogate(code);
+            } else {
+                chars[count++] = (char) code;
+            }
+        }
+        if (key && ascii)
+            return cachedKey(count);
+        return new String(chars, 0, count);
+    }
+
+    private String cachedKey(int count) {
+        int hash = 0;
+        for (int i = 0; i < count; i++)
+            hash = 31 * hash + chars[i];
+        int slot = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+        String cached = keys[slot];
+        if (cached != null && cached.length() == count) {
+            int i = 0;
+            while (i < count && cached.charAt(i) == chars[i])
+                i++;
+            if (i == count)
+                return cached;
+        }
+        String key = new String(chars, 0, count);
+        keys[slot] = key;
+        return key;
+    }
+
+    private boolean fill() throws IOException {
+        if (input == null && source == null)
+            return false;
+        consumed += limit;
+        position = 0;
+        limit = 0;
+        int read;
+        if (source != null) {
+            read = Math.min(buffer.length, source.remaining());
+            source.get(buffer, 0, read);
+        } else {
+            read = input.read(buffer, 0, buffer.length);
+        }
+        if (read <= 0)
+            return false;
+        limit = read;
+        return true;
+    }
+
+    InvalidDataException error(String message) {
+        return new InvalidDataException(message + " at byte " + (consumed + position));
+    }
+}
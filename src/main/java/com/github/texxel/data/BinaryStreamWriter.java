@@ -0,0 +1,122 @@
+package com.github.texxel.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the primitives of the binary PData format (see {@link BinaryFormat}) into a fixed size buffer that is flushed
+ * to the underlying stream whenever it fills up.
+ */
+final class BinaryStreamWriter {
+
+    private final OutputStream output;
+    private final byte[] buffer;
+    private int position;
+    /** the number of bytes already sent to the output */
+    private long flushed;
+
+    BinaryStreamWriter(OutputStream output) {
+        this.output = output;
+        this.buffer = new byte[8192];
+    }
+
+    void writeByte(int b) throws IOException {
+        ensure(1);
+        buffer[position++] = (byte) b;
+    }
+
+    void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length) {
+            // too big to be worth buffering
+            ensure(buffer.length);
+            output.write(bytes);
+            flushed += bytes.length;
+            return;
+        }
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    void writeVarint(long value) throws IOException {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeLong(long value) throws IOException {
+        writeVarint(BinaryFormat.zigZag(value));
+    }
+
+    void writeDouble(double value) throws IOException {
+        writeFixedLong(Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Writes all 64 bits of a long as 8 little-endian bytes
+     */
+    void writeFixedLong(long bits) throws IOException {
+        ensure(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[position++] = (byte) bits;
+            bits >>>= 8;
+        }
+    }
+
+    /**
+     * Writes a string as its UTF-8 length followed by the UTF-8 bytes
+     */
+    void writeString(String value) throws IOException {
+        writeVarint(BinaryFormat.utf8Length(value));
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            ensure(4);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (code >> 18));
+                buffer[position++] = (byte) (0x80 | ((code >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (code & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    void flush() throws IOException {
+        if (position > 0) {
+            output.write(buffer, 0, position);
+            flushed += position;
+            position = 0;
+        }
+        output.flush();
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    long offset() {
+        return flushed + position;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            output.write(buffer, 0, position);
+            flushed += position;
+            position = 0;
+        }
+    }
+}
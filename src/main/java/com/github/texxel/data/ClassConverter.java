@@ -1,7 +1,5 @@
 package com.github.texxel.data;
 
-import com.github.texxel.data.exceptions.InvalidDataException;
-
 public class ClassConverter implements DataConverter<Class> {
 
     @Override
@@ -11,12 +9,8 @@ public class ClassConverter implements DataConverter<Class> {
 
     @Override
     public Class create (DataIn bundle, Class<? extends Class> actual) {
-        String classname = bundle.read(String.class, "name");
-        try {
-            return Class.forName(classname);
-        } catch (ClassNotFoundException e) {
-            throw new InvalidDataException("Unknown class " + classname, e);
-        }
+        // primitive classes cannot be found with Class.forName
+        return PrimitiveConverter.findClass(bundle.read(String.class, "name"));
     }
 
     @Override
@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A map between a classes and objects. If a class does not have a mapping, then the map will
@@ -12,13 +13,21 @@ import java.util.Set;
  * walk up the class' concrete hierarchy (if the class is a class) and then walk the interface
  * hierarchy. The interfaces of the requested class will be walked before the interfaces of the
  * super classes.
+ *
+ * Lookups are safe to make from any number of threads at once and never lock. Changes to the map are made to a copy
+ * which is then published, so changes should be rare compared to lookups.
  * @param <K> the type of classes that can be registered
  * @param <V> the type of values that can be registered
  */
 class ClassMap<K, V> implements Map<Class<? extends K>, V> {
 
-    private HashMap<Class<? extends K>, V> map = new HashMap<>();
-    private HashMap<Class<? extends K>, V> cache = new HashMap<>();
+    /** marks a class that has no value in the cache since the cache cannot hold nulls */
+    private static final Object NONE = new Object();
+
+    /** the registered values. Never changed once published; changes replace the whole map */
+    private volatile HashMap<Class<? extends K>, V> map = new HashMap<>();
+    /** the result of looking up each class (or NONE) */
+    private final ConcurrentHashMap<Class, Object> cache = new ConcurrentHashMap<>();
 
     @Override
     public int size() {
@@ -47,17 +56,24 @@ class ClassMap<K, V> implements Map<Class<? extends K>, V> {
         Class clazz = (Class)key;
 
         // look up the cache first
-        if ( cache.containsKey( clazz ))
-            return cache.get( clazz );
+        Object cached = cache.get( clazz );
+        if ( cached != null )
+            return cached == NONE ? null : (V)cached;
 
         // find the value
-        V value = find(clazz);
-
-        cache.put( clazz, value );
+        HashMap<Class<? extends K>, V> map = this.map;
+        V value = find(map, clazz);
+
+        Object entry = value == null ? NONE : value;
+        cache.put( clazz, entry );
+        // the map may have changed while the value was being found. If it did, the change may have already cleared
+        // the cache before the stale value was put in, so it is removed here instead
+        if ( map != this.map )
+            cache.remove( clazz, entry );
         return value;
     }
 
-    private V find(Class clazz) {
+    private V find(HashMap<Class<? extends K>, V> map, Class clazz) {
         V value = map.get( clazz );
         if ( value != null )
             return value;
@@ -74,7 +90,7 @@ class ClassMap<K, V> implements Map<Class<? extends K>, V> {
         // walk the interface hierarchy
         parent = clazz;
         while (parent != null) {
-            value = findInterface(parent);
+            value = findInterface(map, parent);
             if (value != null)
                 return value;
             parent = parent.getSuperclass();
@@ -82,7 +98,7 @@ class ClassMap<K, V> implements Map<Class<? extends K>, V> {
         return null;
     }
 
-    private V findInterface(Class clazz) {
+    private V findInterface(HashMap<Class<? extends K>, V> map, Class clazz) {
         Class[] ifaces = clazz.getInterfaces();
         // test each interface directly
         for ( Class iface : ifaces ) {
@@ -93,7 +109,7 @@ class ClassMap<K, V> implements Map<Class<? extends K>, V> {
         }
         // walk up the tree
         for ( Class iface : ifaces ) {
-            V value = findInterface(iface);
+            V value = findInterface(map, iface);
             if ( value != null ) {
                 return value;
             }
@@ -102,41 +118,63 @@ class ClassMap<K, V> implements Map<Class<? extends K>, V> {
     }
 
     @Override
-    public V put( Class<? extends K> key, V value ) {
-        cache.clear();
-        return map.put( key, value );
+    public synchronized V put( Class<? extends K> key, V value ) {
+        HashMap<Class<? extends K>, V> changed = new HashMap<>(map);
+        V old = changed.put( key, value );
+        map = changed;
+        invalidate( key );
+        return old;
     }
 
     @Override
-    public V remove( Object key ) {
-        cache.clear();
-        return map.remove( key );
+    public synchronized V remove( Object key ) {
+        if (!map.containsKey( key ))
+            return null;
+        HashMap<Class<? extends K>, V> changed = new HashMap<>(map);
+        V old = changed.remove( key );
+        map = changed;
+        invalidate( (Class)key );
+        return old;
     }
 
     @Override
-    public void putAll( Map<? extends Class<? extends K>, ? extends V> m ) {
-        cache.clear();
-        map.putAll( m );
+    public synchronized void putAll( Map<? extends Class<? extends K>, ? extends V> m ) {
+        HashMap<Class<? extends K>, V> changed = new HashMap<>(map);
+        changed.putAll( m );
+        map = changed;
+        for ( Class key : m.keySet() )
+            invalidate( key );
     }
 
     @Override
-    public void clear() {
+    public synchronized void clear() {
+        map = new HashMap<>();
         cache.clear();
-        map.clear();
     }
 
     /**
-     * A key set backed by this map. The set cannot be modified.
+     * Removes the cached lookups that a change to a class' value could affect. That is, the class and all of its
+     * subclasses and implementations. Must be called after the changed map has been published.
+     */
+    private void invalidate( Class changed ) {
+        for ( Class clazz : cache.keySet() ) {
+            if ( changed.isAssignableFrom( clazz ) )
+                cache.remove( clazz );
+        }
+    }
+
+    /**
+     * The keys in the map at the time of the call. The set cannot be modified.
      * @return the unmodifiable set
      */
     @Override
     public Set<Class<? extends K>> keySet() {
-        // we cannot let the set be modified since we need to clear the cache
+        // we cannot let the set be modified since changes must go through put
         return Collections.unmodifiableSet( map.keySet() );
     }
 
     /**
-     * The values collection backed by this map. The collection cannot be modified
+     * The values in the map at the time of the call. The collection cannot be modified
      * @return the values in this map
      */
     @Override
@@ -145,7 +183,7 @@ class ClassMap<K, V> implements Map<Class<? extends K>, V> {
     }
 
     /**
-     * The entry set backed by this map. The set cannot be modified.
+     * The entries in the map at the time of the call. The set cannot be modified.
      * @return the entry set
      */
     @Override
@@ -3,21 +3,85 @@ package com.github.texxel.data;
 import com.github.texxel.data.serializers.*;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A singleton class where classes can be registered to have custom serialization.
  * If a class is registered with custom serialization, then all the subclasses
  * of the registered class will also use that same serialization method.
+ * Converters can be found from any thread without locking, so data can be saved and loaded on several threads at once.
  */
 public final class ConverterRegistry {
 
-    private static ClassMap<Object, DataConverter> map = new ClassMap<>();
-    private static DataConverter arrayConverter = new ArrayConverter();
+    private static final ClassMap<Object, DataConverter> map = new ClassMap<>();
+    private static final DataConverter arrayConverter = new ArrayConverter();
+    private static final ConcurrentHashMap<Class, Long> typeIds = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Long, Class> typesById = new ConcurrentHashMap<>();
+    /** the converters registered by this class itself. Only filled in while the class is loaded */
+    private static final Set<DataConverter> builtIn = Collections.newSetFromMap(new IdentityHashMap<DataConverter, Boolean>());
 
     public static <T> void register( Class<T> clazz, DataConverter<? super T> converter ) {
         map.put(clazz, converter);
     }
 
+    /**
+     * Registers a converter along with a type id for the class. Objects of exactly this class are written with the
+     * id instead of their full class name, which makes the data smaller and faster to read. The id must never change
+     * once data has been saved with it and, unlike the class name, it does not change when the class is renamed.
+     * @param typeId a non negative id that no other class uses
+     * @throws IllegalArgumentException if the id is negative or is already used by another class
+     */
+    public static synchronized <T> void register( Class<T> clazz, DataConverter<? super T> converter, int typeId ) {
+        if (typeId < 0)
+            throw new IllegalArgumentException("Type ids cannot be negative: " + typeId);
+        Long id = (long) typeId;
+        Class existing = typesById.get(id);
+        if (existing != null && existing != clazz)
+            throw new IllegalArgumentException("Type id " + typeId + " is already used by " + existing.getName());
+        Long previous = typeIds.put(clazz, id);
+        if (previous != null && !previous.equals(id))
+            typesById.remove(previous);
+        typesById.put(id, clazz);
+        map.put(clazz, converter);
+    }
+
+    /**
+     * @return the type id registered for exactly the class or -1 if there is none
+     */
+    static long typeIdOf( Class clazz ) {
+        Long id = typeIds.get(clazz);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the class registered with a type id or null if there is none
+     */
+    static Class typeOf( long typeId ) {
+        return typesById.get(typeId);
+    }
+
+    /**
+     * Registers every {@link GeneratedConverter} that a class loader can find. The converters that the context class
+     * loader of the thread that first uses the registry can find are registered automatically.
+     * @param loader the class loader to search
+     */
+    public static void registerGenerated( ClassLoader loader ) {
+        for (GeneratedConverter converter : ServiceLoader.load(GeneratedConverter.class, loader))
+            map.put(converter.type(), converter);
+    }
+
+    /**
+     * @return true if the converter is one that is registered by default rather than one registered by the user
+     */
+    static boolean isBuiltIn( DataConverter converter ) {
+        return builtIn.contains(converter);
+    }
+
+    private static <T> void registerBuiltIn( Class<T> clazz, DataConverter<? super T> converter ) {
+        builtIn.add(converter);
+        register(clazz, converter);
+    }
+
     public static <T> DataConverter<T> find(Class<? extends T> clazz) {
         // arrays need special consideration because there is no common array ancestor
         if (clazz.isArray())
@@ -27,19 +91,22 @@ public final class ConverterRegistry {
     }
 
     static {
-        register(DataSerializable.class, new DataSerializer());
-        register(Collection.class, new CollectionConverter());
-        register(Map.class, new MapConverter());
-        register(Class.class, new ClassConverter());
-        register(Enum.class, new EnumConverter());
-        register(Integer.class, new PrimitiveConverters.IntegerConverter());
-        register(Long.class, new PrimitiveConverters.LongConverter());
-        register(Double.class, new PrimitiveConverters.DoubleConverter());
-        register(Float.class, new PrimitiveConverters.FloatConverter());
-        register(Character.class, new PrimitiveConverters.CharConverter());
-        register(Byte.class, new PrimitiveConverters.ByteConverter());
-        register(Short.class, new PrimitiveConverters.ShortConverter());
-        register(Boolean.class, new PrimitiveConverters.BooleanConverter());
+        registerBuiltIn(DataSerializable.class, new DataSerializer());
+        registerBuiltIn(Collection.class, new CollectionConverter());
+        registerBuiltIn(Map.class, new MapConverter());
+        registerBuiltIn(Class.class, new ClassConverter());
+        registerBuiltIn(Enum.class, new EnumConverter());
+        registerBuiltIn(Integer.class, new PrimitiveConverters.IntegerConverter());
+        registerBuiltIn(Long.class, new PrimitiveConverters.LongConverter());
+        registerBuiltIn(Double.class, new PrimitiveConverters.DoubleConverter());
+        registerBuiltIn(Float.class, new PrimitiveConverters.FloatConverter());
+        registerBuiltIn(Character.class, new PrimitiveConverters.CharConverter());
+        registerBuiltIn(Byte.class, new PrimitiveConverters.ByteConverter());
+        registerBuiltIn(Short.class, new PrimitiveConverters.ShortConverter());
+        registerBuiltIn(Boolean.class, new PrimitiveConverters.BooleanConverter());
+        registerBuiltIn(String.class, new PrimitiveConverters.StringConverter());
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        registerGenerated(loader != null ? loader : ConverterRegistry.class.getClassLoader());
     }
 
 }
@@ -11,19 +11,17 @@ import com.github.texxel.data.exceptions.*;
  */
 public class DataIn {
 
-    final PData root;
     final PData pData;
-    final HashMap<String, Object> references;
+    final ReferenceTable references;
     final HashMap<String, Object> cache;
 
     public DataIn(PData data) {
-        this(data, new HashMap<String, Object>(), data);
+        this(data, new ReferenceTable(data));
     }
 
-    DataIn(PData section, HashMap<String, Object> references, PData root ) {
+    DataIn(PData section, ReferenceTable references ) {
         this.references = references;
         this.pData = section;
-        this.root = root;
         cache = new HashMap<>();
     }
 
@@ -137,6 +135,33 @@ public class DataIn {
         return bup;
     }
 
+    /**
+     * Reads a packed array of longs. The array is shared with the data so it must not be changed.
+     * @throws MissingDataException if there is no value at the key
+     * @throws WrongTypeException if the value is not a packed array of longs
+     */
+    public long[] readLongArray(String key) {
+        return pData.getLongArray(key);
+    }
+
+    /**
+     * Reads a packed array of doubles. The array is shared with the data so it must not be changed.
+     * @throws MissingDataException if there is no value at the key
+     * @throws WrongTypeException if the value is not a packed array of numbers
+     */
+    public double[] readDoubleArray(String key) {
+        return pData.getDoubleArray(key);
+    }
+
+    /**
+     * Reads a packed array of bytes. The array is shared with the data so it must not be changed.
+     * @throws MissingDataException if there is no value at the key
+     * @throws WrongTypeException if the value is not a packed array of bytes
+     */
+    public byte[] readByteArray(String key) {
+        return pData.getByteArray(key);
+    }
+
     /**
      * Reads a section of data out.
      * @param key the place to read the section from
@@ -147,4 +172,15 @@ public class DataIn {
     public DataIn readSection(String key) {
         return read(DataIn.class, key);
     }
+
+    /**
+     * Reads a list out. Packed arrays of numbers can also be read as lists.
+     * @param key the place to read the list from
+     * @return the read list
+     * @throws MissingDataException if the list is not present
+     * @throws WrongTypeException if the key does not contain a list
+     */
+    public DataInList readList(String key) {
+        return PrimitiveConverter.list(pData, key, pData.list(key), references);
+    }
 }
@@ -0,0 +1,121 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.*;
+
+/**
+ * An ordered list read out of a {@link DataIn}. The class is readonly.
+ */
+public class DataInList {
+
+    final PList list;
+    final ReferenceTable references;
+    /** the class of the objects in the list that were written without a classname or null if there are none */
+    private final String elementName;
+    private Class elementClass;
+    private DataConverter elementConverter;
+
+    DataInList(PList list, ReferenceTable references, String elementName) {
+        this.list = list;
+        this.references = references;
+        this.elementName = elementName;
+    }
+
+    /**
+     * Gets the class of the objects in the list that have no classname. The class is only looked up once for the
+     * whole list
+     * @return the class or null if every object in the list has a classname
+     * @throws InvalidDataException if the class does not exist or has no converter
+     */
+    Class elementClass() {
+        if (elementClass == null && elementName != null) {
+            Class type = PrimitiveConverter.findClass(elementName);
+            elementConverter = ConverterRegistry.find(type);
+            if (elementConverter == null)
+                throw new InvalidDataException("No converter registered for " + type);
+            elementClass = type;
+        }
+        return elementClass;
+    }
+
+    /**
+     * @return the converter for {@link #elementClass()}
+     */
+    DataConverter elementConverter() {
+        elementClass();
+        return elementConverter;
+    }
+
+    /**
+     * @return the number of values in the list
+     */
+    public int size() {
+        return list.size();
+    }
+
+    /**
+     * Tests if the list has a value at an index. Lists being streamed in (see {@link JsonLoader#stream}) have to be
+     * read in completely to find their size, so loops that only go forwards through the list should use this instead
+     * of {@link #size()}.
+     * @return true if the index is inside of the list
+     */
+    public boolean has(int index) {
+        return list.has(index);
+    }
+
+    /**
+     * Reads out an Object from the list. The same warnings as {@link DataIn#read(Class, String)} apply: the returned
+     * object may not be initialised yet.
+     * @param type the class that should be read
+     * @param index where in the list to read the object from
+     * @return the created object
+     * @throws MissingDataException if the index is outside of the list
+     * @throws WrongTypeException if the object at the index is of the incorrect type
+     * @throws InvalidDataException if the data type is not supported
+     * @throws DataSerializationException if there was any issue in constructing the object
+     */
+    public <T> T read (Class<T> type, int index) {
+        return PrimitiveConverter.read(index, type, this);
+    }
+
+    public long readLong(int index) {
+        return list.getLong(index);
+    }
+
+    public int readInt(int index) {
+        return (int)readLong(index);
+    }
+
+    public double readDouble(int index) {
+        return list.getDouble(index);
+    }
+
+    public float readFloat(int index) {
+        return (float)readDouble(index);
+    }
+
+    public boolean readBoolean(int index) {
+        return list.getBoolean(index);
+    }
+
+    public String readString(int index) {
+        return list.getString(index);
+    }
+
+    /**
+     * Reads a section of data out of the list.
+     * @throws MissingDataException if the index is outside of the list
+     * @throws WrongTypeException if the index does not contain a data section
+     */
+    public DataIn readSection(int index) {
+        return read(DataIn.class, index);
+    }
+
+    /**
+     * Reads a list out of the list.
+     * @throws MissingDataException if the index is outside of the list
+     * @throws WrongTypeException if the index does not contain a list
+     */
+    public DataInList readList(int index) {
+        return read(DataInList.class, index);
+    }
+}
@@ -1,6 +1,10 @@
 package com.github.texxel.data;
 
-import java.util.HashMap;
+import com.github.texxel.data.exceptions.InvalidDataException;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
 
 /**
  * DataOut is the high level interface to how data can be written to a Data file. The DataOut class is readonly: once an
@@ -9,19 +13,103 @@ import java.util.HashMap;
 public class DataOut {
 
     final PData pData;
-    final String[] path;
-    final HashMap<Long, DataOut> global;
-    final HashMap<Long, PData> containers;
-    final PData root;
+    /** the PData or PList that holds this section. Null for the root */
+    final Object container;
+    /** where this section is in the container: the key for PData or the index for a PList */
+    final String key;
+    final int index;
+    /** gives each object that has been written an id. The id indexes into global */
+    final IdentityTable written;
+    /** where each object was written to */
+    final ArrayList<DataOut> global;
     final int depth;
+    /**
+     * the snapshots handed out by {@link DataOutRoot#toPrimitiveData()} that still share entries with root. They are
+     * held weakly so that snapshots nobody uses any more do not have to take a copy when the data changes
+     */
+    final ArrayList<WeakReference<PData>> snapshots;
+    /** where objects should be written when writing in two passes (see {@link DataOutRoot#writePlanned}) or null */
+    final GraphPlan plan;
+    /** where the sections are sent as they are written (see {@link DataOutRoot#writeStreamed}) or null */
+    final SectionStream stream;
+    /** the sections of objects that have not changed since the last save (see {@link SectionCache}) or null */
+    final SectionCache cache;
+    /** true once a class has been recorded for any key, see {@link #recordClass(String, Class)} */
+    private boolean recordsClasses;
+    /** the keys that the {@link SectionStream} has already sent to its sink. Null until it has sent any */
+    HashSet<String> streamed;
 
-    DataOut (String[] path, PData pData, HashMap<Long, DataOut> global, HashMap<Long, PData> containers, PData root, int depth) {
-        this.path = path;
+    DataOut (PData pData, Object container, String key, int index, int depth, IdentityTable written,
+             ArrayList<DataOut> global, ArrayList<WeakReference<PData>> snapshots, GraphPlan plan, SectionStream stream,
+             SectionCache cache) {
         this.pData = pData;
+        this.container = container;
+        this.key = key;
+        this.index = index;
+        this.written = written;
         this.global = global;
-        this.containers = containers;
-        this.root = root == null ? pData : root;
         this.depth = depth;
+        this.snapshots = snapshots;
+        this.plan = plan;
+        this.stream = stream;
+        this.cache = cache;
+    }
+
+    /**
+     * Creates another section of the same data as this section
+     */
+    DataOut child (PData pData, Object container, String key, int index, int depth) {
+        DataOut child = new DataOut(pData, container, key, index, depth, written, global, snapshots, plan, stream, cache);
+        if (stream != null)
+            stream.open(child);
+        return child;
+    }
+
+    /**
+     * Must be called before anything in the data is changed. Makes any snapshots stop sharing their entries with the
+     * data so they do not see the change.
+     */
+    final void modify() {
+        modify(this);
+    }
+
+    /**
+     * Same as {@link #modify()}
+     * @param section this or a list in this that is about to be changed
+     */
+    final void modify(Object section) {
+        if (stream != null)
+            stream.enter(section);
+        if (!snapshots.isEmpty()) {
+            for (WeakReference<PData> reference : snapshots) {
+                PData snapshot = reference.get();
+                if (snapshot != null)
+                    snapshot.detach();
+            }
+            snapshots.clear();
+        }
+    }
+
+    /**
+     * Must be called instead of {@link #modify()} before a key is written. Forgets the class recorded for the key's old
+     * value so that it is not applied to the new one.
+     * @throws InvalidDataException if the key has already been streamed out
+     */
+    final void replace(String key) {
+        modify(this);
+        if (streamed != null && streamed.contains(key))
+            throw new InvalidDataException("Cannot write to '" + key + "' since it has already been streamed out");
+        if (recordsClasses && pData.entry(key) >= 0)
+            pData.delete(PrimitiveConverter.ELEMENT_CLASS_PREFIX + key);
+    }
+
+    /**
+     * Records the class of the value at a key, or of the objects in the list at a key, so the value can be read back
+     * as that class
+     */
+    final void recordClass(String key, Class clazz) {
+        recordsClasses = true;
+        pData.set(PrimitiveConverter.ELEMENT_CLASS_PREFIX + key, clazz.getName());
     }
 
     /**
@@ -31,44 +119,148 @@ public class DataOut {
      * @return this
      */
     public DataOut write (String key, Object o) {
+        replace(key);
         PrimitiveConverter.write(key, o, this);
         return this;
     }
 
     public DataOut write(String key, long value) {
+        replace(key);
         pData.set(key, value);
         return this;
     }
 
     public DataOut write(String key, double value) {
+        replace(key);
         pData.set(key, value);
         return this;
     }
 
     public DataOut write(String key, boolean value) {
+        replace(key);
         pData.set(key, value);
         return this;
     }
 
     public DataOut write(String key, String value) {
+        replace(key);
         pData.set(key, value);
         return this;
     }
 
+    /**
+     * Writes a packed array of primitives. The array is copied, so it can be changed afterwards. Packed arrays are
+     * written as a single value rather than as an object, so they do not keep their identity.
+     * @param key where to write the array
+     * @param values the values to write
+     * @return this
+     */
+    public DataOut writeArray(String key, long[] values) {
+        replace(key);
+        pData.setArray(key, values == null ? null : values.clone());
+        return this;
+    }
+
+    /**
+     * Writes a packed array of longs. PData only has 8 byte packed numbers, so each int takes 8 bytes in binary data.
+     * The same goes for shorts and chars, and for floats, which are written as doubles.
+     */
+    public DataOut writeArray(String key, int[] values) {
+        replace(key);
+        long[] longs = null;
+        if (values != null) {
+            longs = new long[values.length];
+            for (int i = 0; i < values.length; i++)
+                longs[i] = values[i];
+        }
+        pData.setArray(key, longs);
+        return this;
+    }
+
+    public DataOut writeArray(String key, short[] values) {
+        replace(key);
+        long[] longs = null;
+        if (values != null) {
+            longs = new long[values.length];
+            for (int i = 0; i < values.length; i++)
+                longs[i] = values[i];
+        }
+        pData.setArray(key, longs);
+        return this;
+    }
+
+    public DataOut writeArray(String key, char[] values) {
+        replace(key);
+        long[] longs = null;
+        if (values != null) {
+            longs = new long[values.length];
+            for (int i = 0; i < values.length; i++)
+                longs[i] = values[i];
+        }
+        pData.setArray(key, longs);
+        return this;
+    }
+
+    public DataOut writeArray(String key, double[] values) {
+        replace(key);
+        pData.setArray(key, values == null ? null : values.clone());
+        return this;
+    }
+
+    public DataOut writeArray(String key, float[] values) {
+        replace(key);
+        double[] doubles = null;
+        if (values != null) {
+            doubles = new double[values.length];
+            for (int i = 0; i < values.length; i++)
+                doubles[i] = values[i];
+        }
+        pData.setArray(key, doubles);
+        return this;
+    }
+
+    public DataOut writeArray(String key, byte[] values) {
+        replace(key);
+        pData.setArray(key, values == null ? null : values.clone());
+        return this;
+    }
+
+    /**
+     * Writes booleans as a packed array of bytes that are 1 for true and 0 for false
+     */
+    public DataOut writeArray(String key, boolean[] values) {
+        replace(key);
+        byte[] bytes = null;
+        if (values != null) {
+            bytes = new byte[values.length];
+            for (int i = 0; i < values.length; i++)
+                bytes[i] = values[i] ? (byte) 1 : 0;
+        }
+        pData.setArray(key, bytes);
+        return this;
+    }
+
     /**
      * Creates a new section in the Data.
      * @param key the place to create the new section at
      * @return the new section
      */
     public DataOut createSection (String key) {
+        replace(key);
         PData pSection = pData.createSection(key);
-        return new DataOut(getPath(key), pSection, global, containers, root, depth + 1);
+        return child(pSection, pData, key, -1, depth + 1);
     }
 
-    String[] getPath(String key) {
-        String[] location = new String[path.length+1];
-        System.arraycopy(path, 0, location, 0, path.length);
-        location[path.length] = key;
-        return location;
+    /**
+     * Creates a new list in the Data. Values in the list are written in order with the add methods.
+     * @param key the place to create the list at
+     * @return the new list
+     */
+    public DataOutList createList (String key) {
+        replace(key);
+        DataOutList list = new DataOutList(pData.createList(key), this, key, depth);
+        if (stream != null)
+            stream.open(list);
+        return list;
     }
 }
@@ -0,0 +1,125 @@
+package com.github.texxel.data;
+
+/**
+ * An ordered list in a {@link DataOut}. Values can only be added to the end of the list. Like DataOut, there is no way
+ * of undoing a value once it has been added.
+ */
+public class DataOutList {
+
+    final PList list;
+    /** the section the list belongs to. Gives access to the objects written so far */
+    final DataOut owner;
+    /** the key of the list in the owner or null if the list is inside another list */
+    final String key;
+    final int depth;
+    /**
+     * the class of the first object added to the list. Objects of this class are written without a classname since it
+     * is recorded once next to the list. Always null for lists inside other lists
+     */
+    Class elementClass;
+    /** a bit for each type of plain value that has been added to the list so far */
+    private int kinds;
+    /** the number of values that have already been sent to the owner's stream and removed from the list */
+    int flushed;
+    /** true once the list has been sent to the owner's stream */
+    boolean started;
+
+    DataOutList (PList list, DataOut owner, String key, int depth) {
+        this.list = list;
+        this.owner = owner;
+        this.key = key;
+        this.depth = depth;
+    }
+
+    /**
+     * Adds an object to the end of the list
+     * @param o the object to write
+     * @return this
+     */
+    public DataOutList add (Object o) {
+        owner.modify(this);
+        PrimitiveConverter.add(o, this);
+        return this;
+    }
+
+    public DataOutList add (long value) {
+        // the value may need to be told apart from the class recorded for the list
+        if (elementClass != null)
+            return add((Object) value);
+        owner.modify(this);
+        addKind(PData.Type.LONG);
+        list.add(value);
+        return this;
+    }
+
+    public DataOutList add (double value) {
+        // the value may need to be told apart from the class recorded for the list
+        if (elementClass != null)
+            return add((Object) value);
+        owner.modify(this);
+        addKind(PData.Type.DOUBLE);
+        list.add(value);
+        return this;
+    }
+
+    public DataOutList add (boolean value) {
+        // the value may need to be told apart from the class recorded for the list
+        if (elementClass != null)
+            return add((Object) value);
+        owner.modify(this);
+        addKind(PData.Type.BOOLEAN);
+        list.add(value);
+        return this;
+    }
+
+    public DataOutList add (String value) {
+        // the value may need to be told apart from the class recorded for the list
+        if (elementClass != null)
+            return add((Object) value);
+        owner.modify(this);
+        addKind(PData.Type.STRING);
+        list.add(value);
+        return this;
+    }
+
+    /**
+     * @return true if a plain value of the type has been added to the list
+     */
+    boolean hasKind (PData.Type type) {
+        return (kinds & (1 << type.ordinal())) != 0;
+    }
+
+    void addKind (PData.Type type) {
+        kinds |= 1 << type.ordinal();
+    }
+
+    /**
+     * Adds a new section to the end of the list
+     * @return the new section
+     */
+    public DataOut addSection () {
+        owner.modify(this);
+        int index = list.size();
+        PData section = list.addSection();
+        return owner.child(section, list, null, index, depth + 1);
+    }
+
+    /**
+     * Adds a new list to the end of this list
+     * @return the new list
+     */
+    public DataOutList addList () {
+        owner.modify(this);
+        DataOutList inner = new DataOutList(list.addList(), owner, null, depth + 1);
+        if (owner.stream != null)
+            owner.stream.open(inner);
+        return inner;
+    }
+
+    /**
+     * @return the number of values added so far
+     */
+    public int size () {
+        return flushed + list.size();
+    }
+}
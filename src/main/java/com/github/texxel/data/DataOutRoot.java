@@ -1,6 +1,11 @@
 package com.github.texxel.data;
 
-import java.util.HashMap;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.github.texxel.data.exceptions.DataSerializationException;
+import com.github.texxel.data.exceptions.InvalidDataException;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 
 /**
  * The DataOutRoot is the class that contains a bunch of other DataOut classes. All DataOut classes belong to a single
@@ -10,16 +15,129 @@ import java.util.HashMap;
 public class DataOutRoot extends DataOut {
 
     public DataOutRoot() {
-        super(new String[0], new PData(), new HashMap<Long, DataOut>(), new HashMap<Long, PData>(), null, 0);
+        this(null, null, null);
+    }
+
+    /**
+     * Creates data that reuses the sections of objects that have not changed since they were last written with the
+     * same cache (see {@link SectionCache})
+     * @param cache the cache to use and fill in
+     */
+    public DataOutRoot(SectionCache cache) {
+        this(null, null, cache);
+        cache.beginSave();
+    }
+
+    private DataOutRoot(GraphPlan plan, SectionStream stream, SectionCache cache) {
+        super(new PData(), null, null, -1, 0, new IdentityTable(), new ArrayList<DataOut>(),
+                new ArrayList<WeakReference<PData>>(), plan, stream, cache);
+    }
+
+    /**
+     * <p>Writes data in two passes so that every object is written exactly once. Normally, when an object is found
+     * again at a shallower place than where it was first written, its data gets moved up to the new place. The first
+     * pass here instead finds every object and the shallowest place it is written at, and the second pass then writes
+     * each object straight into that place.</p>
+     *
+     * <p>The content's {@code bundleInto} method and every object's converter are called twice, once in each pass.
+     * They must write the same data each time.</p>
+     * @param content writes the top level of the data
+     * @return the written data
+     * @throws DataSerializationException if the objects did not write the same data in both passes
+     */
+    public static PData writePlanned(DataSerializable content) {
+        return writePlanned(content, null);
+    }
+
+    /**
+     * Same as {@link #writePlanned(DataSerializable)} but reuses the sections of unchanged objects. Those objects are
+     * not written in either pass.
+     * @param cache the cache to use and fill in (see {@link SectionCache}) or null
+     */
+    public static PData writePlanned(DataSerializable content, SectionCache cache) {
+        if (cache != null)
+            cache.beginSave();
+        DataOutRoot root = new DataOutRoot(plan(content, cache), null, cache);
+        content.bundleInto(root);
+        checkPlaced(root);
+        return root.pData;
+    }
+
+    /**
+     * <p>Writes data straight into a sink while it is being written instead of building up the PData first. Objects
+     * are placed the same way as {@link #writePlanned(DataSerializable)}, so the same warnings apply. Sections are
+     * sent to the sink depth first, so once a section (or anything inside of it) has been written to, none of the
+     * sections opened before it that are not its parents can be written to again. Converters that only write to the
+     * section they are given always follow that rule.</p>
+     *
+     * <p>The data itself is never held in memory all at once; only the sections from the root down to the one being
+     * written are kept. The objects found in the data (and where they will be written) are still remembered until
+     * the end.</p>
+     * @param content writes the top level of the data
+     * @param sink where to send the data. The sink is always closed
+     * @throws InvalidDataException if a section is written to after it has been sent to the sink
+     * @throws DataSerializationException if the sink fails or the objects did not write the same data in both passes
+     */
+    public static void writeStreamed(DataSerializable content, DataSink sink) {
+        writeStreamed(content, sink, null);
+    }
+
+    /**
+     * Same as {@link #writeStreamed(DataSerializable, DataSink)} but reuses the sections of unchanged objects. Since
+     * the sections are sent off as they are written, streaming only reads from the cache and never adds to it.
+     * @param cache the cache to use (see {@link SectionCache}) or null
+     */
+    public static void writeStreamed(DataSerializable content, DataSink sink, SectionCache cache) {
+        try {
+            if (cache != null)
+                cache.beginSave();
+            SectionStream stream = new SectionStream(sink);
+            DataOutRoot root = new DataOutRoot(plan(content, cache), stream, cache);
+            stream.begin(root);
+            content.bundleInto(root);
+            checkPlaced(root);
+            stream.finish();
+        } finally {
+            StreamUtils.closeQuietly(sink);
+        }
+    }
+
+    /**
+     * Does the first pass of a planned write
+     */
+    private static GraphPlan plan(DataSerializable content, SectionCache cache) {
+        GraphPlan plan = new GraphPlan();
+        content.bundleInto(new DataOutRoot(plan, null, null));
+        plan.discover(cache);
+        plan.solve();
+        return plan;
+    }
+
+    private static void checkPlaced(DataOutRoot root) {
+        for (DataOut placed : root.global) {
+            if (placed == null)
+                throw new DataSerializationException("An object was referenced but never written. Objects must "
+                        + "write the same data every time they are written");
+        }
     }
 
     /**
      * Gets a snapshot of this data and converts it into PData. Altering the returned data will have no effect on this
-     * current structure
+     * current structure. Nothing is copied to take the snapshot; the snapshot only takes its own copy if either it or
+     * this data gets changed afterwards, so handing the snapshot straight to a {@link DataLoader} is cheap. Snapshots
+     * that are no longer used are forgotten and never take a copy.
      * @return the primitive data structure
      */
     public PData toPrimitiveData() {
-        return pData.copy();
+        // forget snapshots that are no longer used. Ones that have copied some of their entries may still share the
+        // rest, so they are kept until this data changes
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            if (snapshots.get(i).get() == null)
+                snapshots.remove(i);
+        }
+        PData snapshot = pData.share();
+        snapshots.add(new WeakReference<>(snapshot));
+        return snapshot;
     }
 
 }
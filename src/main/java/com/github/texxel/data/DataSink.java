@@ -0,0 +1,60 @@
+package com.github.texxel.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * <p>Receives data one value at a time while it is being written. A sink lets data be encoded straight into a file as
+ * it is written (see {@link DataOutRoot#writeStreamed(DataSerializable, DataSink)}) instead of first building up the
+ * whole PData. {@link JsonLoader#sink(java.io.OutputStream)} and {@link BinaryLoader#sink(java.io.OutputStream)}
+ * give sinks that write the same formats as the loaders read.</p>
+ *
+ * <p>The root section is begun before anything else and ended after everything else. Sections and lists are always
+ * ended in the opposite order to how they were begun. Every value (including sections and lists) inside a section has
+ * its key given first; values inside lists have no key. Packed arrays are only ever written into sections.</p>
+ */
+public interface DataSink extends Closeable {
+
+    void beginSection() throws IOException;
+
+    void endSection() throws IOException;
+
+    void beginList() throws IOException;
+
+    void endList() throws IOException;
+
+    /**
+     * Gives the key of the next value in the current section
+     */
+    void key(String key) throws IOException;
+
+    void value(long value) throws IOException;
+
+    void value(double value) throws IOException;
+
+    void value(boolean value) throws IOException;
+
+    /**
+     * @param value the string. Never null: nulls are written with {@link #nullValue()}
+     */
+    void value(String value) throws IOException;
+
+    void nullValue() throws IOException;
+
+    /**
+     * Writes a reference to an object that is written somewhere else in the data
+     * @param id the id of the object
+     */
+    void reference(long id) throws IOException;
+
+    void array(long[] values) throws IOException;
+
+    void array(double[] values) throws IOException;
+
+    void array(byte[] values) throws IOException;
+
+    /**
+     * Pushes everything written so far out to the output. Called once after the root section has ended.
+     */
+    void flush() throws IOException;
+}
@@ -0,0 +1,31 @@
+package com.github.texxel.data;
+
+import java.io.IOException;
+
+/**
+ * Reads a document one value at a time. After {@link #next(boolean)} returns true, the fields describe the value that
+ * was just read. Sections and lists are entered as soon as they are read: the values that follow are the values
+ * inside of them until their end is read.
+ */
+abstract class DocumentCursor {
+
+    /** the key of the value or null if the value is in a list */
+    String key;
+    PData.Type type;
+    /** the value of longs, doubles (as their raw bits), booleans and references */
+    long primitive;
+    /** the value of strings and packed arrays */
+    Object object;
+
+    /**
+     * Reads the next value in the current section or list
+     * @param inList true if the value is in a list rather than a section
+     * @return false if the end of the section or list was read instead
+     */
+    abstract boolean next(boolean inList) throws IOException;
+
+    /**
+     * Closes the underlying stream
+     */
+    abstract void close() throws IOException;
+}
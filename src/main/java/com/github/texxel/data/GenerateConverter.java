@@ -0,0 +1,22 @@
+package com.github.texxel.data;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Marks a {@link DataSerializable} that should have a {@link DataConverter} generated for it at compile time by
+ * {@link com.github.texxel.data.processor.ConverterProcessor}. The generated converter calls the class' constructor
+ * directly, so reading the class needs no reflection and no native code. The converter is registered with the
+ * {@link ConverterRegistry} when the registry is first used.</p>
+ *
+ * <p>Unlike other DataSerializables, the object is only created once its constructor has finished. Therefore, nothing
+ * read inside the constructor may reference back to the object being constructed; doing so throws an
+ * {@link com.github.texxel.data.exceptions.InvalidDataException}. The constructor that accepts a DataIn (or the empty
+ * constructor) must not be private.</p>
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateConverter {
+}
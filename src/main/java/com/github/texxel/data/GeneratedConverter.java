@@ -0,0 +1,15 @@
+package com.github.texxel.data;
+
+/**
+ * A converter written by the {@link com.github.texxel.data.processor.ConverterProcessor} for a class marked with
+ * {@link GenerateConverter}. Generated converters are found with {@link java.util.ServiceLoader} and registered for
+ * the class they were generated for.
+ * @param <T> the type that this converter can convert
+ */
+public interface GeneratedConverter<T> extends DataConverter<T> {
+
+    /**
+     * @return the class the converter was generated for
+     */
+    Class<T> type();
+}
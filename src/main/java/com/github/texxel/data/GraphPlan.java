@@ -0,0 +1,142 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.DataSerializationException;
+import com.github.texxel.data.exceptions.InvalidDataException;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Finds where each object should be written so that every object can be written exactly once in its final place. The
+ * plan is made by first recording every place an object is written (without writing any of the object's data), and
+ * then finding the shallowest depth that each object can be written at. Objects are written at the first place they
+ * are found at that depth; every other place gets a reference.
+ */
+final class GraphPlan {
+
+    /** gives each object found an index into objects */
+    private final IdentityTable found = new IdentityTable();
+    private final ArrayList<Object> objects = new ArrayList<>();
+    /**
+     * every place an object was written. The object at 'from' (or the root for -1) wrote 'to' at 'depth' below where
+     * 'from' itself is written
+     */
+    private int[] from = new int[16];
+    private int[] to = new int[16];
+    private int[] depths = new int[16];
+    private int edges;
+    /** the object whose data is currently being recorded or -1 for the root */
+    private int current = -1;
+    /** the depth each object will be written at. Null while recording */
+    private int[] shallowest;
+
+    /**
+     * @return true if objects are still being found
+     */
+    boolean isRecording() {
+        return shallowest == null;
+    }
+
+    /**
+     * Records that an object was written
+     * @param depth the depth the object's section would have
+     */
+    void record(Object obj, int depth) {
+        int index = found.get(obj);
+        if (index < 0) {
+            index = found.add(obj);
+            objects.add(obj);
+        }
+        if (edges == from.length) {
+            from = Arrays.copyOf(from, edges * 2);
+            to = Arrays.copyOf(to, edges * 2);
+            depths = Arrays.copyOf(depths, edges * 2);
+        }
+        from[edges] = current;
+        to[edges] = index;
+        depths[edges] = depth;
+        edges++;
+    }
+
+    /**
+     * Records the data of every object found so far, and every object that they write. Each object is written once
+     * into data that is then thrown away.
+     * @param cache the sections of unchanged objects or null. Cached objects never write other objects, so they are
+     *              skipped
+     * @throws InvalidDataException if an object has no converter
+     * @throws DataSerializationException if an object fails to be written
+     */
+    void discover(SectionCache cache) {
+        for (int i = 0; i < objects.size(); i++) {
+            current = i;
+            Object obj = objects.get(i);
+            if (cache != null && cache.get(obj) != null)
+                continue;
+            Class clazz = obj.getClass();
+            DataConverter converter = ConverterRegistry.find(clazz);
+            if (converter == null)
+                throw new InvalidDataException("No converter registered for '" + clazz.getName() + "'");
+            DataOut scratch = new DataOut(new PData(), null, null, -1, 0, new IdentityTable(),
+                    new ArrayList<DataOut>(), new ArrayList<WeakReference<PData>>(), this, null, null);
+            try {
+                converter.serialize(obj, scratch);
+            } catch (Throwable thr) {
+                throw new DataSerializationException("Failed to serialize '" + clazz.getName() + "'", thr);
+            }
+        }
+        current = -1;
+    }
+
+    /**
+     * Finds the shallowest depth of every object and stops recording
+     */
+    void solve() {
+        int count = objects.size();
+        // group the places by the object that wrote them
+        int[] starts = new int[count + 2];
+        for (int i = 0; i < edges; i++)
+            starts[from[i] + 2]++;
+        for (int i = 1; i < starts.length; i++)
+            starts[i] += starts[i - 1];
+        int[] order = new int[edges];
+        int[] next = Arrays.copyOf(starts, starts.length);
+        for (int i = 0; i < edges; i++)
+            order[next[from[i] + 1]++] = i;
+
+        int[] shallowest = new int[count];
+        Arrays.fill(shallowest, Integer.MAX_VALUE);
+        // the queue holds the depth in the high bits and the object in the low bits
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        for (int e = starts[0]; e < starts[1]; e++)
+            visit(order[e], 0, shallowest, queue);
+        while (!queue.isEmpty()) {
+            long head = queue.poll();
+            int obj = (int) head;
+            int depth = (int) (head >>> 32);
+            if (depth != shallowest[obj])
+                continue;
+            for (int e = starts[obj + 1]; e < starts[obj + 2]; e++)
+                visit(order[e], depth, shallowest, queue);
+        }
+        this.shallowest = shallowest;
+    }
+
+    private void visit(int edge, int base, int[] shallowest, PriorityQueue<Long> queue) {
+        int obj = to[edge];
+        int depth = base + depths[edge];
+        if (depth < shallowest[obj]) {
+            shallowest[obj] = depth;
+            queue.add(((long) depth << 32) | obj);
+        }
+    }
+
+    /**
+     * @return the depth the object should be written at. Objects that were never found can be written anywhere
+     */
+    int depthOf(Object obj) {
+        int index = found.get(obj);
+        return index < 0 ? Integer.MAX_VALUE : shallowest[index];
+    }
+}
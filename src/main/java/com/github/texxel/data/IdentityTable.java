@@ -0,0 +1,80 @@
+package com.github.texxel.data;
+
+/**
+ * Gives each object added to it a dense id (0, 1, 2...) based on the object's identity. Works like an
+ * {@link java.util.IdentityHashMap} from objects to ints, but it does not box the ids or allocate an entry for each
+ * object. Objects cannot be removed.
+ */
+final class IdentityTable {
+
+    /** the objects in the table. Uses linear probing. The length is always a power of two */
+    private Object[] keys = new Object[32];
+    /** the id of the object in the same slot */
+    private int[] ids = new int[32];
+    private int size;
+
+    /**
+     * @return the id of the object or -1 if it has not been added
+     */
+    int get(Object key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            Object k = keys[slot];
+            if (k == key)
+                return ids[slot];
+            if (k == null)
+                return -1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Adds an object to the table. The object must not already be in the table
+     * @return the id given to the object
+     */
+    int add(Object key) {
+        if (key == null)
+            throw new NullPointerException("Cannot add null");
+        // keep the table at most half full
+        if (size * 2 >= keys.length)
+            grow();
+        int id = size++;
+        insert(keys, ids, key, id);
+        return id;
+    }
+
+    /**
+     * @return the number of objects that have been added
+     */
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        Object[] newKeys = new Object[keys.length * 2];
+        int[] newIds = new int[keys.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null)
+                insert(newKeys, newIds, keys[i], ids[i]);
+        }
+        keys = newKeys;
+        ids = newIds;
+    }
+
+    private static void insert(Object[] keys, int[] ids, Object key, int id) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != null)
+            slot = (slot + 1) & mask;
+        keys[slot] = key;
+        ids[slot] = id;
+    }
+
+    private static int hash(Object key) {
+        int h = System.identityHashCode(key);
+        // identity hashes are often close together so spread them out before masking
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,23 +1,40 @@
 package com.github.texxel.data;
 
-import com.badlogic.gdx.utils.JsonReader;
-import com.badlogic.gdx.utils.JsonValue;
-import com.badlogic.gdx.utils.JsonWriter;
 import com.badlogic.gdx.utils.StreamUtils;
 import com.github.texxel.data.exceptions.DataSerializationException;
 import com.github.texxel.data.exceptions.InvalidDataException;
 
 import java.io.*;
+import java.util.Arrays;
 
 public class JsonLoader implements DataLoader {
 
+    /**
+     * Json has no type for references, so they are written as an object with this as the only key: {"__ref": 12}
+     */
+    static final String REFERENCE_TAG = "__ref";
+    /**
+     * Written as the first key of a section whose first key would otherwise be a tag (see {@link #isTag(String)}), so
+     * that the section is not mistaken for a tagged value: {"__section": true, "__ref": 12}
+     */
+    static final String SECTION_TAG = "__section";
+    /** the tag of an object holding a packed array of bytes as base 64: {"__bytes": "gOFC"} */
+    static final String BYTES_TAG = "__bytes";
+    /**
+     * The tags of objects holding packed arrays of longs and doubles: {"__longs": [1, 2]}. Plain Json arrays are
+     * always read as lists, so packed arrays need a tag to come back as packed arrays.
+     */
+    static final String LONGS_TAG = "__longs";
+    static final String DOUBLES_TAG = "__doubles";
+
+    /**
+     * Reads Json from the stream. The stream is parsed in a single pass with the PData being filled in as the tokens
+     * come in, so the document is never held in memory in any other form.
+     */
     @Override
     public PData read (InputStream input) {
         try {
-            JsonReader reader = new JsonReader();
-            JsonValue json = reader.parse(input);
-            PData pData = new PData();
-            readInto(pData, json);
+            PData pData = read(new JsonStreamReader(input));
             input.close();
             return pData;
         } catch (Exception e) {
@@ -27,79 +44,625 @@ public class JsonLoader implements DataLoader {
         }
     }
 
-    private void readInto (PData pData, JsonValue json) {
-        for (JsonValue value : json) {
-            String name = value.name;
-            if (value.isString()) {
-                pData.set(name, value.asString());
-            } else if (value.isLong()) {
-                pData.set(name, value.asLong());
-            } else if (value.isDouble()) {
-                pData.set(name, value.asDouble());
-            } else if (value.isBoolean()){
-                pData.set(name, value.asBoolean());
-            } else if (value.isObject()) {
-                readInto(pData.createSection(name), value);
-            } else if (value.isNull()) {
+    /**
+     * Reads Json that is already in memory.
+     * @param bytes UTF-8 encoded Json
+     * @return the PData in the bytes
+     * @throws DataSerializationException if the bytes could not be read
+     */
+    public PData read (byte[] bytes) {
+        try {
+            return read(new JsonStreamReader(bytes, 0, bytes.length));
+        } catch (Exception e) {
+            throw new DataSerializationException("Couldn't load the data", e);
+        }
+    }
+
+    /**
+     * <p>Reads Json out of a stream lazily. Nothing is read until the returned data is used, and then only as much of
+     * the stream is read as is needed to find the values asked for. This lets documents far bigger than the heap be
+     * read by passing the data to a {@link DataIn}: the sections of objects are forgotten once the object has been
+     * read in, and values are only kept when something may still ask for them.</p>
+     *
+     * <p>The data should only be used through a DataIn. Lists can only be read forwards and a section cannot be used
+     * after the object in it has been read. The stream is closed once the whole document has been read; a stream that
+     * is only partly read must be closed by the caller.</p>
+     * @param input where to read the Json from
+     * @return the root of the data in the stream
+     * @throws DataSerializationException if the start of the stream could not be read. Errors further on are thrown
+     * as the data is used
+     */
+    public PData stream (InputStream input) {
+        try {
+            JsonStreamReader reader = new JsonStreamReader(input);
+            if (reader.next() != JsonStreamReader.Token.BEGIN_OBJECT)
+                throw new InvalidDataException("Expected the data to start with an object");
+            return new StreamedDocument(new Cursor(reader, input)).root();
+        } catch (Exception e) {
+            StreamUtils.closeQuietly(input);
+            throw new DataSerializationException("Couldn't load the data", e);
+        }
+    }
+
+    private PData read (JsonStreamReader reader) throws IOException {
+        if (reader.next() != JsonStreamReader.Token.BEGIN_OBJECT)
+            throw new InvalidDataException("Expected the data to start with an object");
+        PData pData = new PData();
+        readInto(pData, reader);
+        if (reader.next() != JsonStreamReader.Token.END_DOCUMENT)
+            throw new InvalidDataException("Unexpected data after the end of the document");
+        return pData;
+    }
+
+    private void readInto (PData pData, JsonStreamReader reader) throws IOException {
+        while (reader.next() == JsonStreamReader.Token.NAME) {
+            String name = reader.name();
+            readValue(pData, name, reader.next(), reader);
+        }
+    }
+
+    private void readValue (PData pData, String name, JsonStreamReader.Token token, JsonStreamReader reader)
+            throws IOException {
+        switch (token) {
+            case STRING:
+                pData.set(name, reader.stringValue());
+                break;
+            case LONG:
+                pData.set(name, reader.longValue());
+                break;
+            case DOUBLE:
+                pData.set(name, reader.doubleValue());
+                break;
+            case BOOLEAN:
+                pData.set(name, reader.booleanValue());
+                break;
+            case BEGIN_OBJECT:
+                readObject(pData, name, null, reader);
+                break;
+            case NULL:
                 pData.setNull(name);
+                break;
+            case BEGIN_ARRAY:
+                readList(pData.createList(name), reader);
+                break;
+            default:
+                throw new InvalidDataException("Unsupported type: " + token);
+        }
+    }
+
+    /**
+     * Reads an object that has just begun into either a key of a PData or onto the end of a PList. An object whose
+     * first key is a tag (see {@link #isTag(String)}) holds a single value of a type that Json does not have, any
+     * other object is a section.
+     * @param list the list to add to or null to set the key of the PData
+     */
+    private void readObject (PData pData, String name, PList list, JsonStreamReader reader) throws IOException {
+        JsonStreamReader.Token token = reader.next();
+        if (token != JsonStreamReader.Token.NAME) {
+            if (token != JsonStreamReader.Token.END_OBJECT)
+                throw new InvalidDataException("Unexpected " + token + " in an object");
+            if (list == null)
+                pData.createSection(name);
+            else
+                list.addSection();
+            return;
+        }
+        String first = reader.name();
+        if (isTag(first)) {
+            JsonStreamReader.Token value = reader.next();
+            if (first.equals(SECTION_TAG)) {
+                if (value != JsonStreamReader.Token.BOOLEAN)
+                    throw new InvalidDataException("Expected a boolean after " + first + " but found " + value);
+                // everything after the marker is an ordinary section
+                readInto(list == null ? pData.createSection(name) : list.addSection(), reader);
+                return;
+            }
+            Object tagged = readTagged(first, value, reader);
+            if (tagged instanceof Long) {
+                if (list == null)
+                    pData.setReference(name, (Long) tagged);
+                else
+                    list.addReference((Long) tagged);
+            } else if (list == null) {
+                setArray(pData, name, tagged);
             } else {
-                throw new InvalidDataException("Unsupported type: " + value.type());
+                // lists cannot hold packed arrays
+                list.addList(PList.fromArray(tagged));
             }
+            return;
+        }
+        PData section = list == null ? pData.createSection(name) : list.addSection();
+        readValue(section, first, reader.next(), reader);
+        readInto(section, reader);
+    }
+
+    /**
+     * Reads the rest of an array into a list. The numbers keep the type they were written with
+     */
+    private void readList (PList list, JsonStreamReader reader) throws IOException {
+        JsonStreamReader.Token token;
+        while ((token = reader.next()) != JsonStreamReader.Token.END_ARRAY)
+            readElement(list, token, reader);
+    }
+
+    private void readElement (PList list, JsonStreamReader.Token token, JsonStreamReader reader) throws IOException {
+        switch (token) {
+            case STRING:
+                list.add(reader.stringValue());
+                break;
+            case LONG:
+                list.add(reader.longValue());
+                break;
+            case DOUBLE:
+                list.add(reader.doubleValue());
+                break;
+            case BOOLEAN:
+                list.add(reader.booleanValue());
+                break;
+            case BEGIN_OBJECT:
+                readObject(null, null, list, reader);
+                break;
+            case BEGIN_ARRAY:
+                readList(list.addList(), reader);
+                break;
+            case NULL:
+                list.addNull();
+                break;
+            default:
+                throw new InvalidDataException("Unsupported type: " + token);
+        }
+    }
+
+    /**
+     * @return true if an object whose first key is the key holds a single value rather than being a section
+     */
+    static boolean isTag (String key) {
+        return key.startsWith("__") && (key.equals(REFERENCE_TAG) || key.equals(BYTES_TAG) || key.equals(LONGS_TAG)
+                || key.equals(DOUBLES_TAG) || key.equals(SECTION_TAG));
+    }
+
+    private static void setArray (PData pData, String name, Object packed) {
+        if (packed instanceof long[])
+            pData.setArray(name, (long[]) packed);
+        else if (packed instanceof double[])
+            pData.setArray(name, (double[]) packed);
+        else
+            pData.setArray(name, (byte[]) packed);
+    }
+
+    private static PData.Type arrayType (Object packed) {
+        if (packed instanceof long[])
+            return PData.Type.LONG_ARRAY;
+        if (packed instanceof double[])
+            return PData.Type.DOUBLE_ARRAY;
+        return PData.Type.BYTE_ARRAY;
+    }
+
+    /**
+     * Reads the value of a tagged object, other than a section marker, and the end of the object
+     * @param token the token of the value
+     * @return the id of a reference as a Long or the packed array
+     */
+    private static Object readTagged (String tag, JsonStreamReader.Token token, JsonStreamReader reader)
+            throws IOException {
+        Object value;
+        if (tag.equals(REFERENCE_TAG)) {
+            if (token != JsonStreamReader.Token.LONG)
+                throw new InvalidDataException("Expected a number after " + tag + " but found " + token);
+            value = reader.longValue();
+        } else if (tag.equals(BYTES_TAG)) {
+            if (token != JsonStreamReader.Token.STRING)
+                throw new InvalidDataException("Expected a string after " + tag + " but found " + token);
+            value = Base64.decode(reader.stringValue(), 0);
+        } else {
+            if (token != JsonStreamReader.Token.BEGIN_ARRAY)
+                throw new InvalidDataException("Expected an array after " + tag + " but found " + token);
+            value = readNumbers(tag.equals(DOUBLES_TAG), reader);
         }
+        if (reader.next() != JsonStreamReader.Token.END_OBJECT)
+            throw new InvalidDataException("Unexpected data after " + tag);
+        return value;
     }
 
+    /**
+     * Writes the data out as Json. The data is streamed directly to the output as it is walked, so no extra copies of
+     * the document are ever held in memory.
+     */
     @Override
     public void write (OutputStream output, PData data) {
-        OutputStreamWriter writer = null;
         try {
-            JsonValue json = new JsonValue(JsonValue.ValueType.object);
-            writeFrom(data, json);
-            String writing = json.toJson(JsonWriter.OutputType.json);
-            writer = new OutputStreamWriter(output);
-            writer.write(writing);
+            JsonStreamWriter writer = new JsonStreamWriter(output);
+            writeFrom(data, writer);
+            writer.flush();
         } catch (Exception e) {
             throw new DataSerializationException("Couldn't write the data", e);
         } finally {
-            StreamUtils.closeQuietly(writer);
+            StreamUtils.closeQuietly(output);
         }
     }
 
-    private void writeFrom(PData data, JsonValue json) {
-        JsonValue prev = null;
+    /**
+     * Gives a sink that writes Json to the output as the values come in. Closing the sink closes the output.
+     * @param output where to write the Json
+     * @return the sink
+     * @see DataOutRoot#writeStreamed(DataSerializable, DataSink)
+     */
+    public DataSink sink (OutputStream output) {
+        return new Sink(output);
+    }
+
+    /**
+     * Reads the rest of an array of numbers
+     * @return a long[] or a double[]
+     */
+    private static Object readNumbers (boolean doubles, JsonStreamReader reader) throws IOException {
+        long[] longs = doubles ? null : new long[16];
+        double[] values = doubles ? new double[16] : null;
+        int count = 0;
+        JsonStreamReader.Token token;
+        while ((token = reader.next()) != JsonStreamReader.Token.END_ARRAY) {
+            if (doubles) {
+                if (count == values.length)
+                    values = Arrays.copyOf(values, count * 2);
+                if (token == JsonStreamReader.Token.DOUBLE)
+                    values[count++] = reader.doubleValue();
+                else if (token == JsonStreamReader.Token.LONG)
+                    values[count++] = reader.longValue();
+                else
+                    throw new InvalidDataException("Expected a number but found " + token);
+            } else {
+                if (count == longs.length)
+                    longs = Arrays.copyOf(longs, count * 2);
+                if (token != JsonStreamReader.Token.LONG)
+                    throw new InvalidDataException("Expected a whole number but found " + token);
+                longs[count++] = reader.longValue();
+            }
+        }
+        return doubles ? Arrays.copyOf(values, count) : Arrays.copyOf(longs, count);
+    }
+
+    private void writeFrom(PData data, JsonStreamWriter writer) throws IOException {
+        writer.beginObject();
+        boolean first = true;
         for (String key : data.keys()) {
-            JsonValue next;
+            if (first && isTag(key)) {
+                writer.name(SECTION_TAG);
+                writer.value(true);
+            }
+            first = false;
+            writer.name(key);
             switch (data.getType(key)) {
                 case DOUBLE:
-                    next = new JsonValue(data.getDouble(key));
+                    writer.value(data.getDouble(key));
                     break;
                 case LONG:
-                    next = new JsonValue(data.getLong(key));
+                    writer.value(data.getLong(key));
                     break;
                 case STRING:
-                    next = new JsonValue(data.getString(key));
+                    writer.value(data.getString(key));
                     break;
                 case BOOLEAN:
-                    next = new JsonValue(data.getBoolean(key));
+                    writer.value(data.getBoolean(key));
                     break;
                 case NULL:
-                    next = new JsonValue(JsonValue.ValueType.nullValue);
+                    writer.nullValue();
                     break;
                 case DATA:
-                    next = new JsonValue(JsonValue.ValueType.object);
-                    PData childPData = data.getSection(key);
-                    writeFrom(childPData, next);
+                    writeFrom(data.section(key), writer);
+                    break;
+                case REFERENCE:
+                    writeReference(writer, data.getReference(key));
+                    break;
+                case LONG_ARRAY:
+                    writeLongs(writer, data.getLongArray(key));
+                    break;
+                case DOUBLE_ARRAY:
+                    writeDoubles(writer, data.getDoubleArray(key));
+                    break;
+                case BYTE_ARRAY:
+                    writeBytes(writer, data.getByteArray(key));
+                    break;
+                case LIST:
+                    writeFrom(data.list(key), writer);
                     break;
                 default:
                     throw new InvalidDataException("Unsupported type " + data.getType(key));
             }
-            next.name = key;
-            if (prev == null)
-                json.child = prev = next;
-            else {
-                prev.next = next;
-                next.prev = prev;
-                prev = next;
+        }
+        writer.endObject();
+    }
+
+    private void writeFrom(PList list, JsonStreamWriter writer) throws IOException {
+        writer.beginArray();
+        for (int i = 0; i < list.size(); i++) {
+            switch (list.getType(i)) {
+                case DOUBLE:
+                    writer.value(list.getDouble(i));
+                    break;
+                case LONG:
+                    writer.value(list.getLong(i));
+                    break;
+                case STRING:
+                    writer.value(list.getString(i));
+                    break;
+                case BOOLEAN:
+                    writer.value(list.getBoolean(i));
+                    break;
+                case NULL:
+                    writer.nullValue();
+                    break;
+                case REFERENCE:
+                    writeReference(writer, list.getReference(i));
+                    break;
+                case DATA:
+                    writeFrom(list.getSection(i), writer);
+                    break;
+                case LIST:
+                    writeFrom(list.getList(i), writer);
+                    break;
+                default:
+                    throw new InvalidDataException("Unsupported type " + list.getType(i));
             }
         }
+        writer.endArray();
+    }
+
+    private static void writeReference(JsonStreamWriter writer, long id) throws IOException {
+        writer.beginObject();
+        writer.name(REFERENCE_TAG);
+        writer.value(id);
+        writer.endObject();
+    }
+
+    private static void writeLongs(JsonStreamWriter writer, long[] values) throws IOException {
+        writer.beginObject();
+        writer.name(LONGS_TAG);
+        writer.beginArray();
+        for (long value : values)
+            writer.value(value);
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private static void writeDoubles(JsonStreamWriter writer, double[] values) throws IOException {
+        writer.beginObject();
+        writer.name(DOUBLES_TAG);
+        writer.beginArray();
+        for (double value : values)
+            writer.value(value);
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private static void writeBytes(JsonStreamWriter writer, byte[] values) throws IOException {
+        writer.beginObject();
+        writer.name(BYTES_TAG);
+        writer.base64Value(values);
+        writer.endObject();
+    }
+
+    private static final class Sink implements DataSink {
+
+        private final OutputStream output;
+        private final JsonStreamWriter writer;
+        /** true if a section has just begun and no key has been written into it yet */
+        private boolean sectionStart;
+
+        Sink(OutputStream output) {
+            this.output = output;
+            this.writer = new JsonStreamWriter(output);
+        }
+
+        @Override
+        public void beginSection() throws IOException {
+            writer.beginObject();
+            sectionStart = true;
+        }
+
+        @Override
+        public void endSection() throws IOException {
+            writer.endObject();
+            sectionStart = false;
+        }
+
+        @Override
+        public void beginList() throws IOException {
+            writer.beginArray();
+        }
+
+        @Override
+        public void endList() throws IOException {
+            writer.endArray();
+        }
+
+        @Override
+        public void key(String key) throws IOException {
+            if (sectionStart && isTag(key)) {
+                writer.name(SECTION_TAG);
+                writer.value(true);
+            }
+            sectionStart = false;
+            writer.name(key);
+        }
+
+        @Override
+        public void value(long value) throws IOException {
+            writer.value(value);
+        }
+
+        @Override
+        public void value(double value) throws IOException {
+            writer.value(value);
+        }
+
+        @Override
+        public void value(boolean value) throws IOException {
+            writer.value(value);
+        }
+
+        @Override
+        public void value(String value) throws IOException {
+            writer.value(value);
+        }
+
+        @Override
+        public void nullValue() throws IOException {
+            writer.nullValue();
+        }
+
+        @Override
+        public void reference(long id) throws IOException {
+            writeReference(writer, id);
+        }
+
+        @Override
+        public void array(long[] values) throws IOException {
+            writeLongs(writer, values);
+        }
+
+        @Override
+        public void array(double[] values) throws IOException {
+            writeDoubles(writer, values);
+        }
+
+        @Override
+        public void array(byte[] values) throws IOException {
+            writeBytes(writer, values);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+
+    /**
+     * Reads Json one value at a time. The first key of every object is read as soon as the object begins so that
+     * tagged values (see {@link #isTag(String)}) can be told apart from sections.
+     */
+    private static final class Cursor extends DocumentCursor {
+
+        private final JsonStreamReader reader;
+        private final InputStream input;
+        /**
+         * the first key of the section that was just entered, which had to be read to tell the section apart from a
+         * tagged value, or null
+         */
+        private String heldName;
+        /** true if the section that was just entered turned out to be empty */
+        private boolean heldEnd;
+
+        Cursor(JsonStreamReader reader, InputStream input) {
+            this.reader = reader;
+            this.input = input;
+        }
+
+        @Override
+        boolean next(boolean inList) throws IOException {
+            if (inList) {
+                key = null;
+                JsonStreamReader.Token token = reader.next();
+                if (token == JsonStreamReader.Token.END_ARRAY)
+                    return false;
+                value(token);
+                return true;
+            }
+            if (heldEnd) {
+                heldEnd = false;
+                return false;
+            }
+            if (heldName != null) {
+                key = heldName;
+                heldName = null;
+                value(reader.next());
+                return true;
+            }
+            JsonStreamReader.Token token = reader.next();
+            if (token == JsonStreamReader.Token.END_OBJECT)
+                return false;
+            if (token != JsonStreamReader.Token.NAME)
+                throw new InvalidDataException("Unexpected " + token + " in an object");
+            key = reader.name();
+            value(reader.next());
+            return true;
+        }
+
+        private void value(JsonStreamReader.Token token) throws IOException {
+            object = null;
+            switch (token) {
+                case STRING:
+                    type = PData.Type.STRING;
+                    object = reader.stringValue();
+                    break;
+                case LONG:
+                    type = PData.Type.LONG;
+                    primitive = reader.longValue();
+                    break;
+                case DOUBLE:
+                    type = PData.Type.DOUBLE;
+                    primitive = Double.doubleToRawLongBits(reader.doubleValue());
+                    break;
+                case BOOLEAN:
+                    type = PData.Type.BOOLEAN;
+                    primitive = reader.booleanValue() ? 1 : 0;
+                    break;
+                case NULL:
+                    type = PData.Type.NULL;
+                    break;
+                case BEGIN_OBJECT:
+                    object();
+                    break;
+                case BEGIN_ARRAY:
+                    type = PData.Type.LIST;
+                    break;
+                default:
+                    throw new InvalidDataException("Unsupported type: " + token);
+            }
+        }
+
+        /**
+         * Reads the first key of an object to find out whether it is a section or a tagged value (see
+         * {@link #isTag(String)}). The key of a section is held back until the section is read
+         */
+        private void object() throws IOException {
+            type = PData.Type.DATA;
+            JsonStreamReader.Token token = reader.next();
+            if (token == JsonStreamReader.Token.END_OBJECT) {
+                heldEnd = true;
+                return;
+            }
+            if (token != JsonStreamReader.Token.NAME)
+                throw new InvalidDataException("Unexpected " + token + " in an object");
+            String first = reader.name();
+            if (!isTag(first)) {
+                heldName = first;
+                return;
+            }
+            JsonStreamReader.Token value = reader.next();
+            if (first.equals(SECTION_TAG)) {
+                if (value != JsonStreamReader.Token.BOOLEAN)
+                    throw new InvalidDataException("Expected a boolean after " + first + " but found " + value);
+                // everything after the marker is an ordinary section
+                return;
+            }
+            Object tagged = readTagged(first, value, reader);
+            if (tagged instanceof Long) {
+                type = PData.Type.REFERENCE;
+                primitive = (Long) tagged;
+            } else {
+                type = arrayType(tagged);
+                object = tagged;
+            }
+        }
+
+        @Override
+        void close() throws IOException {
+            input.close();
+        }
     }
 }
@@ -0,0 +1,391 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.InvalidDataException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A pull parser for Json that works directly on UTF-8 bytes. The reader never builds up a tree; instead each call to
+ * {@link #next()} moves to the next token in the document and the value of that token can then be read out. Numbers
+ * without a fraction or exponent are parsed straight from the bytes, and names are looked up in a small cache so the
+ * same key showing up many times (such as "__classname") only has one String allocated for it.
+ */
+final class JsonStreamReader {
+
+    enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, LONG, DOUBLE, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int NAME_CACHE_SIZE = 256;
+
+    private final InputStream input;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    /** how many bytes before the current buffer have been consumed (used for error messages) */
+    private long consumed;
+
+    /** true for each enclosing object, false for each enclosing array */
+    private boolean[] stack = new boolean[32];
+    private int depth;
+    /** true if the next token in an object must be a name */
+    private boolean expectName;
+    /** true if a value has been read in the current container (and so the next one must have a comma) */
+    private boolean hasValue;
+
+    private char[] chars = new char[64];
+    private int charCount;
+    private final String[] names = new String[NAME_CACHE_SIZE];
+
+    private String string;
+    private long longValue;
+    private double doubleValue;
+    private boolean booleanValue;
+
+    JsonStreamReader(InputStream input) {
+        this.input = input;
+        this.buffer = new byte[8192];
+    }
+
+    JsonStreamReader(byte[] bytes, int offset, int length) {
+        this.input = null;
+        this.buffer = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Advances to the next token in the document
+     * @return the token now at
+     * @throws InvalidDataException if the document is not valid Json
+     */
+    Token next() throws IOException {
+        int c = skipWhitespace();
+        if (depth > 0 && stack[depth - 1] && expectName) {
+            if (c == '}')
+                return endContainer(true);
+            if (hasValue) {
+                if (c != ',')
+                    throw error("Expected ',' or '}'");
+                c = skipWhitespace();
+            }
+            if (c != '"')
+                throw error("Expected a name");
+            readString(true);
+            if (skipWhitespace() != ':')
+                throw error("Expected ':'");
+            expectName = false;
+            return Token.NAME;
+        }
+
+        if (depth > 0 && !stack[depth - 1]) {
+            if (c == ']')
+                return endContainer(false);
+            if (hasValue) {
+                if (c != ',')
+                    throw error("Expected ',' or ']'");
+                c = skipWhitespace();
+            }
+        }
+
+        if (c == -1) {
+            if (depth != 0)
+                throw error("Unexpected end of document");
+            return Token.END_DOCUMENT;
+        }
+        valueRead();
+        switch (c) {
+            case '{':
+                push(true);
+                return Token.BEGIN_OBJECT;
+            case '[':
+                push(false);
+                return Token.BEGIN_ARRAY;
+            case '"':
+                readString(false);
+                return Token.STRING;
+            case 't':
+                expectWord("rue");
+                booleanValue = true;
+                return Token.BOOLEAN;
+            case 'f':
+                expectWord("alse");
+                booleanValue = false;
+                return Token.BOOLEAN;
+            case 'n':
+                expectWord("ull");
+                return Token.NULL;
+            case 'N':
+                expectWord("aN");
+                doubleValue = Double.NaN;
+                return Token.DOUBLE;
+            case 'I':
+                expectWord("nfinity");
+                doubleValue = Double.POSITIVE_INFINITY;
+                return Token.DOUBLE;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9'))
+                    return readNumber(c);
+                throw error("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /** The name of the last {@link Token#NAME} token */
+    String name() {
+        return string;
+    }
+
+    /** The value of the last {@link Token#STRING} token */
+    String stringValue() {
+        return string;
+    }
+
+    long longValue() {
+        return longValue;
+    }
+
+    double doubleValue() {
+        return doubleValue;
+    }
+
+    boolean booleanValue() {
+        return booleanValue;
+    }
+
+    private void valueRead() {
+        hasValue = true;
+        if (depth > 0 && stack[depth - 1])
+            expectName = true;
+    }
+
+    private void push(boolean object) {
+        if (depth == stack.length) {
+            boolean[] bigger = new boolean[depth * 2];
+            System.arraycopy(stack, 0, bigger, 0, depth);
+            stack = bigger;
+        }
+        stack[depth++] = object;
+        expectName = object;
+        hasValue = false;
+    }
+
+    private Token endContainer(boolean object) {
+        depth--;
+        hasValue = true;
+        expectName = depth > 0 && stack[depth - 1];
+        return object ? Token.END_OBJECT : Token.END_ARRAY;
+    }
+
+    private Token readNumber(int c) throws IOException {
+        boolean negative = c == '-';
+        if (negative) {
+            c = read();
+            if (c == 'I') {
+                expectWord("nfinity");
+                doubleValue = Double.NEGATIVE_INFINITY;
+                return Token.DOUBLE;
+            }
+        }
+        // fast path: plain integers are accumulated without going through a String
+        long value = 0;
+        int digits = 0;
+        charCount = 0;
+        if (negative)
+            appendChar('-');
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            digits++;
+            appendChar((char) c);
+            c = peek();
+            if (c >= '0' && c <= '9')
+                position++;
+            else
+                break;
+        }
+        if (digits == 0)
+            throw error("Malformed number");
+        if (c != '.' && c != 'e' && c != 'E') {
+            if (digits < 19) {
+                longValue = negative ? -value : value;
+                return Token.LONG;
+            }
+            // might have overflowed, let the jdk work it out
+            String text = new String(chars, 0, charCount);
+            try {
+                longValue = Long.parseLong(text);
+                return Token.LONG;
+            } catch (NumberFormatException e) {
+                doubleValue = Double.parseDouble(text);
+                return Token.DOUBLE;
+            }
+        }
+        // slow path: fractions and exponents
+        while (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' || (c >= '0' && c <= '9')) {
+            appendChar((char) c);
+            position++;
+            c = peek();
+        }
+        try {
+            doubleValue = Double.parseDouble(new String(chars, 0, charCount));
+        } catch (NumberFormatException e) {
+            throw error("Malformed number");
+        }
+        return Token.DOUBLE;
+    }
+
+    private void readString(boolean name) throws IOException {
+        charCount = 0;
+        boolean simple = true;
+        while (true) {
+            int c = read();
+            if (c == '"')
+                break;
+            if (c == -1)
+                throw error("Unterminated string");
+            if (c == '\\') {
+                simple = false;
+                appendChar(readEscape());
+            } else if (c < 0x80) {
+                appendChar((char) c);
+            } else {
+                simple = false;
+                readMultiByte(c);
+            }
+        }
+        if (name && simple)
+            string = cachedName();
+        else
+            string = new String(chars, 0, charCount);
+    }
+
+    /**
+     * Looks up the chars in the name cache. Only names without escapes or multi byte chars are cached since they are
+     * the only ones the fast path in the parser handles.
+     */
+    private String cachedName() {
+        int hash = 0;
+        for (int i = 0; i < charCount; i++)
+            hash = 31 * hash + chars[i];
+        int slot = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+        String cached = names[slot];
+        if (cached != null && cached.length() == charCount) {
+            int i = 0;
+            while (i < charCount && cached.charAt(i) == chars[i])
+                i++;
+            if (i == charCount)
+                return cached;
+        }
+        String name = new String(chars, 0, charCount);
+        names[slot] = name;
+        return name;
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"': return '"';
+            case '\\': return '\\';
+            case '/': return '/';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int h = read();
+                    int digit = Character.digit(h, 16);
+                    if (h == -1 || digit < 0)
+                        throw error("Malformed unicode escape");
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw error("Unknown escape '\\" + (char) c + "'");
+        }
+    }
+
+    private void readMultiByte(int c) throws IOException {
+        int extra;
+        int code;
+        if ((c & 0xE0) == 0xC0) {
+            extra = 1;
+            code = c & 0x1F;
+        } else if ((c & 0xF0) == 0xE0) {
+            extra = 2;
+            code = c & 0x0F;
+        } else if ((c & 0xF8) == 0xF0) {
+            extra = 3;
+            code = c & 0x07;
+        } else {
+            throw error("Malformed UTF-8");
+        }
+        for (int i = 0; i < extra; i++) {
+            int next = read();
+            if ((next & 0xC0) != 0x80)
+                throw error("Malformed UTF-8");
+            code = (code << 6) | (next & 0x3F);
+        }
+        if (code >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            appendChar(Character.highSurrogate(code));
+            appendChar(Character.lowSurrogate(code));
+        } else {
+            appendChar((char) code);
+        }
+    }
+
+    private void expectWord(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i))
+                throw error("Unknown literal");
+        }
+    }
+
+    private void appendChar(char c) {
+        if (charCount == chars.length) {
+            char[] bigger = new char[charCount * 2];
+            System.arraycopy(chars, 0, bigger, 0, charCount);
+            chars = bigger;
+        }
+        chars[charCount++] = c;
+    }
+
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            int c = read();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                return c;
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill())
+            return -1;
+        return buffer[position++] & 0xFF;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill())
+            return -1;
+        return buffer[position] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (input == null)
+            return false;
+        consumed += limit;
+        position = 0;
+        limit = 0;
+        int read = input.read(buffer, 0, buffer.length);
+        if (read <= 0)
+            return false;
+        limit = read;
+        return true;
+    }
+
+    private InvalidDataException error(String message) {
+        return new InvalidDataException(message + " at byte " + (consumed + position));
+    }
+}
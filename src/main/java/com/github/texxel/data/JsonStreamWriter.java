@@ -0,0 +1,223 @@
+package com.github.texxel.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A forward only Json writer that encodes straight into a UTF-8 byte buffer. Whenever the buffer fills up it is flushed
+ * to the underlying stream, so the memory used never depends on how big the document is. The writer does no checking
+ * that the Json it produces is well formed - that is left up to the caller.
+ */
+final class JsonStreamWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+    private final OutputStream output;
+    private final byte[] buffer;
+    private int position;
+    /** true if the next value/name needs a comma in front of it */
+    private boolean separate;
+
+    JsonStreamWriter(OutputStream output) {
+        this(output, 8192);
+    }
+
+    JsonStreamWriter(OutputStream output, int bufferSize) {
+        this.output = output;
+        this.buffer = new byte[bufferSize];
+    }
+
+    void beginObject() throws IOException {
+        separator();
+        put((byte) '{');
+        separate = false;
+    }
+
+    void endObject() throws IOException {
+        put((byte) '}');
+        separate = true;
+    }
+
+    void beginArray() throws IOException {
+        separator();
+        put((byte) '[');
+        separate = false;
+    }
+
+    void endArray() throws IOException {
+        put((byte) ']');
+        separate = true;
+    }
+
+    void name(String name) throws IOException {
+        separator();
+        string(name);
+        put((byte) ':');
+        separate = false;
+    }
+
+    void value(long value) throws IOException {
+        separator();
+        if (value == Long.MIN_VALUE) {
+            // cannot be negated below
+            put(MIN_LONG);
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        // write the digits backwards then shuffle them into place
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte temp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = temp;
+        }
+    }
+
+    void value(double value) throws IOException {
+        separator();
+        String text = Double.toString(value);
+        int length = text.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) text.charAt(i);
+        }
+    }
+
+    void value(boolean value) throws IOException {
+        separator();
+        put(value ? TRUE : FALSE);
+    }
+
+    void value(String value) throws IOException {
+        separator();
+        string(value);
+    }
+
+    /**
+     * Writes bytes as a string of base 64 (see {@link Base64}). The bytes are encoded straight into the buffer.
+     */
+    void base64Value(byte[] bytes) throws IOException {
+        separator();
+        put((byte) '"');
+        byte[] alphabet = Base64.ALPHABET;
+        int whole = bytes.length / 3 * 3;
+        for (int i = 0; i < whole; i += 3) {
+            ensure(4);
+            int bits = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+            buffer[position++] = alphabet[bits >> 18];
+            buffer[position++] = alphabet[(bits >> 12) & 0x3F];
+            buffer[position++] = alphabet[(bits >> 6) & 0x3F];
+            buffer[position++] = alphabet[bits & 0x3F];
+        }
+        int left = bytes.length - whole;
+        if (left > 0) {
+            ensure(4);
+            int bits = (bytes[whole] & 0xFF) << 16 | (left == 2 ? (bytes[whole + 1] & 0xFF) << 8 : 0);
+            buffer[position++] = alphabet[bits >> 18];
+            buffer[position++] = alphabet[(bits >> 12) & 0x3F];
+            buffer[position++] = left == 2 ? alphabet[(bits >> 6) & 0x3F] : (byte) '=';
+            buffer[position++] = '=';
+        }
+        put((byte) '"');
+    }
+
+    void nullValue() throws IOException {
+        separator();
+        put(NULL);
+    }
+
+    /**
+     * Pushes everything buffered so far out to the stream
+     */
+    void flush() throws IOException {
+        if (position > 0) {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+        output.flush();
+    }
+
+    private void separator() throws IOException {
+        if (separate)
+            put((byte) ',');
+        separate = true;
+    }
+
+    private void string(String value) throws IOException {
+        put((byte) '"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            // the worst case is a \\uXXXX escape
+            ensure(6);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\')
+                    buffer[position++] = '\\';
+                buffer[position++] = (byte) c;
+            } else if (c < 0x20) {
+                buffer[position++] = '\\';
+                switch (c) {
+                    case '\n': buffer[position++] = 'n'; break;
+                    case '\r': buffer[position++] = 'r'; break;
+                    case '\t': buffer[position++] = 't'; break;
+                    case '\b': buffer[position++] = 'b'; break;
+                    case '\f': buffer[position++] = 'f'; break;
+                    default:
+                        buffer[position++] = 'u';
+                        buffer[position++] = '0';
+                        buffer[position++] = '0';
+                        buffer[position++] = HEX[c >> 4];
+                        buffer[position++] = HEX[c & 0xF];
+                }
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (code >> 18));
+                buffer[position++] = (byte) (0x80 | ((code >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (code & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // an unpaired surrogate cannot be encoded (same as what the jdk encoders do)
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        put((byte) '"');
+    }
+
+    private void put(byte b) throws IOException {
+        ensure(1);
+        buffer[position++] = b;
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /** makes sure there is space for the given number of bytes in the buffer */
+    private void ensure(int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.DataSerializationException;
+import com.github.texxel.data.exceptions.MissingDataException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The object index at the end of binary PData (see {@link BinaryFormat}). It lets a {@link BinaryLoader#view} find the
+ * section of an object from its id without decoding any of the other sections. The index is only read the first time
+ * it is used.
+ */
+final class MappedIndex {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final String[] keys;
+    private ReferenceTable.Slots offsets;
+    private ReferenceTable.Slots elementNames;
+
+    /**
+     * @param buffer the buffer holding the whole document
+     * @param offset where the index is in the buffer
+     * @param keys the key cache shared by every section in the document
+     */
+    MappedIndex(ByteBuffer buffer, int offset, String[] keys) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.keys = keys;
+    }
+
+    /**
+     * Creates an undecoded section for an object
+     * @throws MissingDataException if no object has the id
+     */
+    PData section(long id) {
+        load();
+        Long at = (Long) offsets.get(id);
+        if (at == null)
+            throw new MissingDataException("No object with the id " + id);
+        PData section = new PData();
+        section.pending = new MappedSection(buffer, (int) (long) at, keys, null);
+        return section;
+    }
+
+    /**
+     * @return the class recorded for the object by the list it is in or null if there is none
+     */
+    String elementClass(long id) {
+        load();
+        return (String) elementNames.get(id);
+    }
+
+    private void load() {
+        if (offsets != null)
+            return;
+        ReferenceTable.Slots found = new ReferenceTable.Slots();
+        ReferenceTable.Slots names = new ReferenceTable.Slots();
+        try {
+            BinaryStreamReader reader = new BinaryStreamReader(buffer, offset, keys);
+            int count = reader.readLength();
+            for (int i = 0; i < count; i++) {
+                long id = reader.readLong();
+                found.put(id, reader.readVarint());
+                // the same few class names are repeated throughout, so they go through the key cache
+                String name = reader.readKey();
+                if (!name.isEmpty())
+                    names.put(id, name);
+            }
+        } catch (IOException e) {
+            throw new DataSerializationException("Couldn't decode the object index", e);
+        }
+        offsets = found;
+        elementNames = names;
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.DataSerializationException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A section of binary PData that has not been decoded yet. See {@link BinaryLoader#map(java.io.File)}.
+ */
+final class MappedSection extends PendingEntries {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final String[] keys;
+    /** where the objects in the document are. Only set for the root section and null if the document has no index */
+    final MappedIndex index;
+
+    /**
+     * @param buffer the buffer holding the whole document
+     * @param offset where the section (starting at its length) is in the buffer
+     * @param keys the key cache shared by every section in the document
+     * @param index the object index of the document if this is the root section
+     */
+    MappedSection(ByteBuffer buffer, int offset, String[] keys, MappedIndex index) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.keys = keys;
+        this.index = index;
+    }
+
+    MappedSection child(long offset) {
+        return new MappedSection(buffer, (int) offset, keys, null);
+    }
+
+    /**
+     * Decodes all the entries of this section into the data. Any sub sections are left undecoded.
+     */
+    @Override
+    boolean decodeNext(PData pData) {
+        try {
+            BinaryStreamReader reader = new BinaryStreamReader(buffer, offset, keys);
+            reader.readLength();
+            BinaryLoader.readEntries(pData, reader, this);
+            return false;
+        } catch (IOException e) {
+            throw new DataSerializationException("Couldn't decode the data", e);
+        }
+    }
+}
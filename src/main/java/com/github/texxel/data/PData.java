@@ -14,23 +14,98 @@ import java.util.*;
  * data does exist but is of the incorrect type, then a WrongTypeException will be thrown</p>
  *
  * <p>Null values in PData is supported. Null values will be taken as Type.NULL</p>
+ *
+ * <p>Keys are kept in the order they were first added. Internally the entries are stored in parallel arrays with longs,
+ * doubles (as their raw bits), references and booleans kept unboxed in a long[]. Most sections only have a handful of
+ * keys, so small sections are searched linearly. Once a section grows past {@link #LINEAR_LIMIT} entries an open
+ * addressed index into the arrays is built to look up keys.</p>
  */
 public final class PData {
 
     /**
-     * All the primitive types that might be in a PData
+     * All the primitive types that might be in a PData. A REFERENCE is the id of an object that has been written
+     * somewhere else in the data. The ARRAY types are packed arrays of primitives. A LIST is a {@link PList}.
      */
     public enum Type {
-        DOUBLE, LONG, STRING, BOOLEAN, DATA, NULL;
+        DOUBLE, LONG, STRING, BOOLEAN, DATA, NULL, REFERENCE, LONG_ARRAY, DOUBLE_ARRAY, BYTE_ARRAY, LIST;
+
+    }
+
+    private static final Type[] TYPES = Type.values();
+    private static final int INITIAL_CAPACITY = 4;
+    /** the most entries a section can hold before it starts using an index to find keys */
+    private static final int LINEAR_LIMIT = 8;
+
+    /** the keys of each entry in the order they were added. Deleted entries have a null key. Null until used */
+    private String[] keys;
+    /** the ordinal of the type of each entry */
+    private byte[] types;
+    /** the value of each long, double and boolean entry */
+    private long[] primitives;
+    /** the value of each string and data entry */
+    private Object[] objects;
+    /** the number of entries used in the arrays (including deleted entries) */
+    private int used;
+    /** the number of entries that have not been deleted */
+    private int size;
+    /**
+     * Maps from the key's hash to the position in the entry arrays (plus one so zero can mean an empty slot). Uses
+     * linear probing. The length is always a power of two and at least double the entry capacity. Small sections do
+     * not have an index.
+     */
+    private int[] index;
+    private Set<String> publicKeys;
+    /** if not null, the entries of this data are still waiting to be decoded out of a mapped file or a stream */
+    PendingEntries pending;
+    /** true if the entry arrays are shared with another PData (see {@link #share()}) */
+    private boolean shared;
+
+    /** decodes any entries that have not been read in yet. Must be called before the entries are touched */
+    void decode() {
+        while (decodeNext()) {
+        }
+    }
 
+    /**
+     * Decodes some more of the entries that have not been read in yet
+     * @return true if there are still entries left to decode
+     */
+    boolean decodeNext() {
+        PendingEntries entries = pending;
+        if (entries == null)
+            return false;
+        pending = null;
+        boolean more = true;
+        try {
+            more = entries.decodeNext(this);
+        } finally {
+            // entries that failed to decode are kept so the failure is seen again instead of the data looking complete
+            if (more)
+                pending = entries;
+        }
+        return more;
     }
 
-    final Map<String, Object> data = new HashMap<>();
-    final Set<String> publicKeys = Collections.unmodifiableSet(data.keySet());
+    /**
+     * Finds the position of a key, only decoding as many entries as are needed to find it
+     * @return the position or -1 if the key is not present
+     */
+    private int lookup(String key) {
+        int i = find(key);
+        while (i < 0 && pending != null && pending.mightHave(this, key)) {
+            int before = used;
+            decodeNext();
+            if (used > before && key.equals(keys[used - 1]))
+                i = used - 1;
+            else if (pending == null)
+                i = find(key);
+        }
+        return i;
+    }
 
     /** always throws an exception. The method determine the cause of the error and throw a tasteful error message */
     private <T> T crash(String key, Type expected) {
-        if (data.containsKey(key)) {
+        if (find(key) >= 0) {
             throw new WrongTypeException("Expected '" + expected + "' from key '" + key + "' but had '" + getType(key) + "'");
         } else {
             throw new MissingDataException("No data mapped to '" + key + "'");
@@ -42,9 +117,9 @@ public final class PData {
      * data is missing)
      */
     public long getLong( String key ) {
-        Object obj = data.get( key );
-        if (obj instanceof Long)
-            return (Long)obj;
+        int i = lookup(key);
+        if (i >= 0 && types[i] == Type.LONG.ordinal())
+            return primitives[i];
 
         return crash(key, Type.LONG);
     }
@@ -53,85 +128,371 @@ public final class PData {
      * Gets a double value from the data. Integer values will be converted to double values
      */
     public double getDouble( String key ) {
-        Object obj = data.get( key );
-        if (obj instanceof Double)
-            return (Double)obj;
-        else if (obj instanceof Long)
-            return (long)obj;
+        int i = lookup(key);
+        if (i >= 0) {
+            if (types[i] == Type.DOUBLE.ordinal())
+                return Double.longBitsToDouble(primitives[i]);
+            else if (types[i] == Type.LONG.ordinal())
+                return primitives[i];
+        }
 
         return crash(key, Type.DOUBLE);
     }
 
     public String getString( String key ) {
-        Object obj = data.get( key );
-        if (obj instanceof String)
-            return (String)obj;
+        int i = lookup(key);
+        if (i >= 0 && types[i] == Type.STRING.ordinal())
+            return (String)objects[i];
 
         return crash(key, Type.STRING);
     }
 
     public boolean getBoolean( String key ) {
-        Object obj = data.get( key );
-        if (obj instanceof Boolean)
-            return (Boolean)obj;
+        int i = lookup(key);
+        if (i >= 0 && types[i] == Type.BOOLEAN.ordinal())
+            return primitives[i] != 0;
 
         return crash(key, Type.BOOLEAN);
     }
 
+    /**
+     * Gets the id of the object that a reference points to
+     */
+    public long getReference( String key ) {
+        int i = lookup(key);
+        if (i >= 0 && types[i] == Type.REFERENCE.ordinal())
+            return primitives[i];
+
+        return crash(key, Type.REFERENCE);
+    }
+
+    /**
+     * Gets a packed array of longs. A list of only longs (such as a plain Json array) is converted to a new array.
+     * The array is not copied so it must not be changed.
+     */
+    public long[] getLongArray( String key ) {
+        int i = lookup(key);
+        if (i >= 0) {
+            if (types[i] == Type.LONG_ARRAY.ordinal())
+                return (long[])objects[i];
+            if (types[i] == Type.LIST.ordinal()) {
+                long[] longs = ((PList) objects[i]).toLongArray();
+                if (longs != null)
+                    return longs;
+            }
+        }
+
+        return crash(key, Type.LONG_ARRAY);
+    }
+
+    /**
+     * Gets a packed array of doubles. Arrays of longs and lists of only numbers will be converted to a new array of
+     * doubles. The array is not copied so it must not be changed.
+     */
+    public double[] getDoubleArray( String key ) {
+        int i = lookup(key);
+        if (i >= 0) {
+            if (types[i] == Type.DOUBLE_ARRAY.ordinal())
+                return (double[])objects[i];
+            else if (types[i] == Type.LONG_ARRAY.ordinal()) {
+                long[] longs = (long[])objects[i];
+                double[] doubles = new double[longs.length];
+                for (int j = 0; j < longs.length; j++)
+                    doubles[j] = longs[j];
+                return doubles;
+            } else if (types[i] == Type.LIST.ordinal()) {
+                double[] doubles = ((PList) objects[i]).toDoubleArray();
+                if (doubles != null)
+                    return doubles;
+            }
+        }
+
+        return crash(key, Type.DOUBLE_ARRAY);
+    }
+
+    /**
+     * Gets a packed array of bytes. The array is not copied so it must not be changed.
+     */
+    public byte[] getByteArray( String key ) {
+        int i = lookup(key);
+        if (i >= 0 && types[i] == Type.BYTE_ARRAY.ordinal())
+            return (byte[])objects[i];
+
+        return crash(key, Type.BYTE_ARRAY);
+    }
+
     public PData getSection( String key ) {
-        Object obj = data.get( key );
-        if (obj instanceof PData)
-            return (PData)obj;
+        // the sections are still shared so they cannot be handed out
+        unshare();
+        return section(key);
+    }
+
+    /**
+     * Gets a section without taking a copy of shared entries. Only for code that will never change the section.
+     */
+    PData section( String key ) {
+        int i = lookup(key);
+        if (i >= 0 && types[i] == Type.DATA.ordinal())
+            return (PData)objects[i];
 
         return crash(key, Type.DATA);
     }
 
+    /**
+     * Gets a list. Packed arrays of longs or doubles are given as a new list holding the same values (since text formats
+     * may not be able to tell the two apart).
+     */
+    public PList getList( String key ) {
+        // the lists are still shared so they cannot be handed out
+        unshare();
+        return list(key);
+    }
+
+    /**
+     * Gets a list without taking a copy of shared entries. Only for code that will never change the list.
+     */
+    PList list( String key ) {
+        int i = lookup(key);
+        if (i >= 0) {
+            if (types[i] == Type.LIST.ordinal())
+                return (PList)objects[i];
+            if (types[i] == Type.LONG_ARRAY.ordinal() || types[i] == Type.DOUBLE_ARRAY.ordinal())
+                return PList.fromArray(objects[i]);
+        }
+
+        return crash(key, Type.LIST);
+    }
+
     public PData set( String key, long value ) {
-        data.put( key, value );
+        decode();
+        unshare();
+        put(key, Type.LONG, value, null);
         return this;
     }
 
     public PData set( String key, double value ) {
-        data.put( key, value );
+        decode();
+        unshare();
+        put(key, Type.DOUBLE, Double.doubleToRawLongBits(value), null);
         return this;
     }
 
     public PData set( String key, String value ) {
-        data.put( key, value );
+        decode();
+        unshare();
+        if (value == null)
+            put(key, Type.NULL, 0, null);
+        else
+            put(key, Type.STRING, 0, value);
         return this;
     }
 
     public PData set( String key, boolean value ) {
-        data.put( key, value );
+        decode();
+        unshare();
+        put(key, Type.BOOLEAN, value ? 1 : 0, null);
+        return this;
+    }
+
+    public PData setReference( String key, long id ) {
+        decode();
+        unshare();
+        put(key, Type.REFERENCE, id, null);
+        return this;
+    }
+
+    /**
+     * Sets a packed array of longs. The array is not copied, so it must not be changed after it has been set.
+     */
+    public PData setArray( String key, long[] values ) {
+        return setObject(key, Type.LONG_ARRAY, values);
+    }
+
+    /**
+     * Sets a packed array of doubles. The array is not copied, so it must not be changed after it has been set.
+     */
+    public PData setArray( String key, double[] values ) {
+        return setObject(key, Type.DOUBLE_ARRAY, values);
+    }
+
+    /**
+     * Sets a packed array of bytes. The array is not copied, so it must not be changed after it has been set.
+     */
+    public PData setArray( String key, byte[] values ) {
+        return setObject(key, Type.BYTE_ARRAY, values);
+    }
+
+    private PData setObject( String key, Type type, Object value ) {
+        decode();
+        unshare();
+        if (value == null)
+            put(key, Type.NULL, 0, null);
+        else
+            put(key, type, 0, value);
         return this;
     }
 
     public PData setNull( String key ) {
-        data.put(key, null);
+        decode();
+        unshare();
+        put(key, Type.NULL, 0, null);
         return this;
     }
 
     public PData createSection( String key ) {
+        decode();
+        unshare();
         PData child = new PData();
-        data.put( key, child );
+        put(key, Type.DATA, 0, child);
         return child;
     }
 
+    public PList createList( String key ) {
+        decode();
+        unshare();
+        PList list = new PList();
+        put(key, Type.LIST, 0, list);
+        return list;
+    }
+
+    /**
+     * Places an existing section into this data
+     */
+    PData setSection( String key, PData section ) {
+        decode();
+        unshare();
+        put(key, Type.DATA, 0, section);
+        return this;
+    }
+
+    /**
+     * Places an existing list into this data
+     */
+    PData setList( String key, PList list ) {
+        decode();
+        unshare();
+        put(key, Type.LIST, 0, list);
+        return this;
+    }
+
+    /**
+     * Sets an entry read out of another data (see {@link #entry(String)}). Sections and lists are copied
+     */
+    PData setEntry( String key, Type type, long primitive, Object object ) {
+        decode();
+        unshare();
+        if (type == Type.DATA)
+            object = ((PData) object).copy();
+        else if (type == Type.LIST)
+            object = ((PList) object).copy();
+        put(key, type, primitive, object);
+        return this;
+    }
+
+    /**
+     * Moves an entry to be the first entry in the data
+     */
+    void moveToFront( String key ) {
+        decode();
+        unshare();
+        int entry = find(key);
+        if (entry <= 0)
+            return;
+        String movedKey = keys[entry];
+        byte movedType = types[entry];
+        long movedPrimitive = primitives[entry];
+        Object movedObject = objects[entry];
+        System.arraycopy(keys, 0, keys, 1, entry);
+        System.arraycopy(types, 0, types, 1, entry);
+        System.arraycopy(primitives, 0, primitives, 1, entry);
+        System.arraycopy(objects, 0, objects, 1, entry);
+        keys[0] = movedKey;
+        types[0] = movedType;
+        primitives[0] = movedPrimitive;
+        objects[0] = movedObject;
+        if (index != null) {
+            // every entry up to the moved one has changed position
+            Arrays.fill(index, 0);
+            int mask = index.length - 1;
+            for (int i = 0; i < used; i++) {
+                if (keys[i] == null)
+                    continue;
+                int slot = hash(keys[i]) & mask;
+                while (index[slot] != 0)
+                    slot = (slot + 1) & mask;
+                index[slot] = i + 1;
+            }
+        }
+    }
+
     public PData delete( String key ) {
-        data.remove( key );
+        decode();
+        unshare();
+        int entry = find(key);
+        if (entry < 0)
+            return this;
+        if (index != null)
+            removeSlot(slotOf(entry));
+        keys[entry] = null;
+        objects[entry] = null;
+        size--;
+        // the class recorded for the value must not be applied to whatever is written to the key next
+        String recorded = PrimitiveConverter.ELEMENT_CLASS_PREFIX + key;
+        if (find(recorded) >= 0)
+            delete(recorded);
         return this;
     }
 
+    /**
+     * Removes every entry
+     */
+    void clear() {
+        pending = null;
+        keys = null;
+        types = null;
+        primitives = null;
+        objects = null;
+        index = null;
+        used = 0;
+        size = 0;
+        shared = false;
+    }
+
+    /**
+     * Removes every entry except for the given keys. Keeps the pending entries but does not decode any of them
+     */
+    void retain( String... keep ) {
+        String[] oldKeys = keys;
+        byte[] oldTypes = types;
+        long[] oldPrimitives = primitives;
+        Object[] oldObjects = objects;
+        int oldUsed = used;
+        PendingEntries oldPending = pending;
+        clear();
+        for (int i = 0; i < oldUsed; i++) {
+            if (oldKeys[i] == null)
+                continue;
+            for (String key : keep) {
+                if (key.equals(oldKeys[i]))
+                    put(key, TYPES[oldTypes[i]], oldPrimitives[i], oldObjects[i]);
+            }
+        }
+        pending = oldPending;
+    }
+
     /**
      * Gets an unmodifiable list of all the keys in this Data
      * @return the keys of this data
      */
     public Set<String> keys() {
+        decode();
+        if (publicKeys == null)
+            publicKeys = new KeySet();
         return publicKeys;
     }
 
     public boolean contains (String key) {
-        return data.containsKey(key);
+        return lookup(key) >= 0;
     }
 
     /**
@@ -141,40 +502,119 @@ public final class PData {
      * @return the type at the key
      */
     public Type getType (String key) {
-        Object obj = data.get( key );
-        if ( obj == null )
-            return data.containsKey(key) ? Type.NULL : null;
-        if ( obj instanceof String )
-            return Type.STRING;
-        if ( obj instanceof Long )
-            return Type.LONG;
-        if ( obj instanceof Double )
-            return Type.DOUBLE;
-        if ( obj instanceof Boolean )
-            return Type.BOOLEAN;
-        if ( obj instanceof PData )
-            return Type.DATA;
-        throw new RuntimeException( "This should ever happen" );
-    }
-
-    /**
-     * Creates a full copy of this data object.
+        int i = lookup(key);
+        if (i < 0)
+            return null;
+        return TYPES[types[i]];
+    }
+
+    /**
+     * Creates a full copy of this data object. Packed arrays cannot be changed so they are shared with the copy.
      * @return a clone
      */
     public PData copy () {
+        decode();
         PData clone = new PData();
-        for (Map.Entry<String, Object> entry : data.entrySet()) {
-            String key = entry.getKey();
-            Object value = entry.getValue();
-            if (value instanceof PData) {
-                clone.data.put(key, ((PData) value).copy());
-            } else {
-                clone.data.put(key, value);
-            }
-        }
+        clone.copyEntries(this);
         return clone;
     }
 
+    /**
+     * Creates a PData that shares the entries of this data without copying any of them. The returned data takes its
+     * own copy of the entries the first time it is changed or one of its sections is asked for. The owner of this data
+     * must call {@link #detach()} on the returned data before it changes this data or any of its sections.
+     * @return data that looks the same as this data
+     */
+    PData share () {
+        decode();
+        PData shared = new PData();
+        shared.keys = keys;
+        shared.types = types;
+        shared.primitives = primitives;
+        shared.objects = objects;
+        shared.index = index;
+        shared.used = used;
+        shared.size = size;
+        shared.shared = true;
+        return shared;
+    }
+
+    /**
+     * Takes a private copy of the entries if they are still shared with another PData. Does nothing otherwise. Only this
+     * level is copied: sections and lists are replaced by shared views of themselves (see {@link #share()}), which
+     * take their own copy only when they are used in turn.
+     */
+    void unshare () {
+        if (!shared)
+            return;
+        shared = false;
+        if (size == 0)
+            return;
+        keys = keys.clone();
+        types = types.clone();
+        primitives = primitives.clone();
+        objects = objects.clone();
+        if (index != null)
+            index = index.clone();
+        for (int i = 0; i < used; i++) {
+            if (keys[i] == null)
+                continue;
+            if (types[i] == Type.DATA.ordinal())
+                objects[i] = ((PData) objects[i]).share();
+            else if (types[i] == Type.LIST.ordinal())
+                objects[i] = ((PList) objects[i]).share();
+        }
+    }
+
+    /**
+     * Stops this data and everything in it from sharing entries with any other data. Must be called on a data made by
+     * {@link #share()} before the data it was shared from is changed.
+     */
+    void detach () {
+        unshare();
+        for (int i = 0; i < used; i++) {
+            if (keys[i] == null)
+                continue;
+            if (types[i] == Type.DATA.ordinal())
+                ((PData) objects[i]).detach();
+            else if (types[i] == Type.LIST.ordinal())
+                ((PList) objects[i]).detach();
+        }
+    }
+
+    /**
+     * Replaces the entries of this data with a deep copy of the entries of another data
+     */
+    private void copyEntries (PData source) {
+        if (source.size == 0) {
+            keys = null;
+            types = null;
+            primitives = null;
+            objects = null;
+            index = null;
+            used = 0;
+            size = 0;
+            return;
+        }
+        String[] newKeys = source.keys.clone();
+        Object[] newObjects = source.objects.clone();
+        for (int i = 0; i < source.used; i++) {
+            if (newKeys[i] == null)
+                continue;
+            if (source.types[i] == Type.DATA.ordinal())
+                newObjects[i] = ((PData) newObjects[i]).copy();
+            else if (source.types[i] == Type.LIST.ordinal())
+                newObjects[i] = ((PList) newObjects[i]).copy();
+        }
+        keys = newKeys;
+        types = source.types.clone();
+        primitives = source.primitives.clone();
+        objects = newObjects;
+        index = source.index == null ? null : source.index.clone();
+        used = source.used;
+        size = source.size;
+    }
+
     /**
      * Creates a human readable dump of the data in this structure. Should only be used for debugging
      */
@@ -184,15 +624,44 @@ public final class PData {
         toString(0, builder);
         return builder.toString();
     }
-    private void toString( int depth, StringBuilder builder ) {
+    void toString( int depth, StringBuilder builder ) {
         builder.append("{\n");
         for (String key : keys()) {
             addSpace(depth+1, builder);
             builder.append(key + ": ");
-            if (getType(key) == Type.DATA) {
-                getSection(key).toString(depth+1, builder);
-            } else {
-                builder.append(data.get(key));
+            switch (getType(key)) {
+                case DATA:
+                    section(key).toString(depth+1, builder);
+                    break;
+                case LIST:
+                    list(key).toString(depth+1, builder);
+                    break;
+                case LONG:
+                    builder.append(getLong(key));
+                    break;
+                case DOUBLE:
+                    builder.append(getDouble(key));
+                    break;
+                case BOOLEAN:
+                    builder.append(getBoolean(key));
+                    break;
+                case STRING:
+                    builder.append(getString(key));
+                    break;
+                case REFERENCE:
+                    builder.append("__#").append(getReference(key));
+                    break;
+                case LONG_ARRAY:
+                    builder.append(Arrays.toString(getLongArray(key)));
+                    break;
+                case DOUBLE_ARRAY:
+                    builder.append(Arrays.toString(getDoubleArray(key)));
+                    break;
+                case BYTE_ARRAY:
+                    builder.append(Arrays.toString(getByteArray(key)));
+                    break;
+                default:
+                    builder.append("null");
             }
             builder.append(",\n");
         }
@@ -204,4 +673,212 @@ public final class PData {
             builder.append("  ");
         }
     }
+
+    /**
+     * Finds the position of a key so its value can be read straight out with {@link #typeAt(int)},
+     * {@link #primitiveAt(int)} and {@link #objectAt(int)}
+     * @return the position or -1 if the key is not present
+     */
+    int entry(String key) {
+        return lookup(key);
+    }
+
+    Type typeAt(int entry) {
+        return TYPES[types[entry]];
+    }
+
+    /** the raw bits of a long, double, reference or boolean */
+    long primitiveAt(int entry) {
+        return primitives[entry];
+    }
+
+    /** the string, array, section or list */
+    Object objectAt(int entry) {
+        return objects[entry];
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Finds the position of a key in the entry arrays
+     * @return the position or -1 if the key is not present
+     */
+    private int find(String key) {
+        if (key == null || size == 0)
+            return -1;
+        if (index == null) {
+            for (int i = 0; i < used; i++) {
+                String k = keys[i];
+                if (k == key || (k != null && k.equals(key)))
+                    return i;
+            }
+            return -1;
+        }
+        int mask = index.length - 1;
+        int slot = hash(key) & mask;
+        while (true) {
+            int entry = index[slot] - 1;
+            if (entry < 0)
+                return -1;
+            if (key.equals(keys[entry]))
+                return entry;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Finds the slot in the index that points to an entry
+     */
+    private int slotOf(int entry) {
+        int mask = index.length - 1;
+        int slot = hash(keys[entry]) & mask;
+        while (index[slot] != entry + 1)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void put(String key, Type type, long primitive, Object object) {
+        if (key == null)
+            throw new NullPointerException("PData keys cannot be null");
+        int entry = find(key);
+        if (entry >= 0) {
+            types[entry] = (byte) type.ordinal();
+            primitives[entry] = primitive;
+            objects[entry] = object;
+            return;
+        }
+
+        if (keys == null) {
+            keys = new String[INITIAL_CAPACITY];
+            types = new byte[INITIAL_CAPACITY];
+            primitives = new long[INITIAL_CAPACITY];
+            objects = new Object[INITIAL_CAPACITY];
+        } else if (used == keys.length) {
+            resize();
+        }
+        keys[used] = key;
+        types[used] = (byte) type.ordinal();
+        primitives[used] = primitive;
+        objects[used] = object;
+        used++;
+        size++;
+        if (index != null) {
+            int mask = index.length - 1;
+            int slot = hash(key) & mask;
+            while (index[slot] != 0)
+                slot = (slot + 1) & mask;
+            index[slot] = used;
+        }
+    }
+
+    /**
+     * Makes room for another entry. If enough entries have been deleted then the entries are just compacted, otherwise
+     * the arrays are doubled in size. The index is built once the section becomes too big to search linearly.
+     */
+    private void resize() {
+        int capacity = size < used * 3 / 4 ? keys.length : keys.length * 2;
+        String[] newKeys = new String[capacity];
+        byte[] newTypes = new byte[capacity];
+        long[] newPrimitives = new long[capacity];
+        Object[] newObjects = new Object[capacity];
+        int count = 0;
+        for (int i = 0; i < used; i++) {
+            if (keys[i] == null)
+                continue;
+            newKeys[count] = keys[i];
+            newTypes[count] = types[i];
+            newPrimitives[count] = primitives[i];
+            newObjects[count] = objects[i];
+            count++;
+        }
+        keys = newKeys;
+        types = newTypes;
+        primitives = newPrimitives;
+        objects = newObjects;
+        used = count;
+
+        if (capacity <= LINEAR_LIMIT) {
+            index = null;
+            return;
+        }
+        index = new int[capacity * 2];
+        int mask = index.length - 1;
+        for (int i = 0; i < used; i++) {
+            int slot = hash(keys[i]) & mask;
+            while (index[slot] != 0)
+                slot = (slot + 1) & mask;
+            index[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Empties a slot in the index and shifts back any later entries in the probe sequence that would no longer be
+     * reachable
+     */
+    private void removeSlot(int slot) {
+        int mask = index.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (index[next] != 0) {
+            int home = hash(keys[index[next] - 1]) & mask;
+            // move the entry back if its home is not between the hole and where it currently is
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                index[hole] = index[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        index[hole] = 0;
+    }
+
+    /**
+     * An unmodifiable view of the keys that iterates in the order the keys were added
+     */
+    private final class KeySet extends AbstractSet<String> {
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                int next = skipDeleted(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next < used;
+                }
+
+                @Override
+                public String next() {
+                    if (next >= used)
+                        throw new NoSuchElementException();
+                    String key = keys[next];
+                    next = skipDeleted(next + 1);
+                    return key;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        private int skipDeleted(int i) {
+            while (i < used && keys[i] == null)
+                i++;
+            return i;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String && find((String) o) >= 0;
+        }
+    }
 }
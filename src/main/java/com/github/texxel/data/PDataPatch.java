@@ -0,0 +1,181 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.InvalidDataException;
+
+import java.util.Arrays;
+
+/**
+ * <p>Finds the differences between two {@link PData} trees so that only the changes need to be saved. A patch is
+ * itself a PData so it can be written with any {@link DataLoader}. A patch has up to three entries:</p>
+ * <ul>
+ *     <li>"set": a section holding every key that was added or changed along with its new value</li>
+ *     <li>"delete": a list of every key that was removed</li>
+ *     <li>"patch": a section holding a patch for every section that is in both trees but has changed</li>
+ * </ul>
+ * <p>Lists and packed arrays are compared as a whole and are replaced as a whole when they change. A patch with no
+ * entries means the two trees were the same.</p>
+ */
+public final class PDataPatch {
+
+    private PDataPatch() {
+    }
+
+    /**
+     * Finds the changes that turn one tree into another. Neither tree is changed
+     * @param base the tree before the changes
+     * @param target the tree after the changes
+     * @return a patch that turns base into target when given to {@link #apply(PData, PData)}
+     */
+    public static PData diff(PData base, PData target) {
+        PData patch = new PData();
+        diffInto(base, target, patch);
+        return patch;
+    }
+
+    /**
+     * Changes a tree in place by applying a patch made by {@link #diff(PData, PData)} to it. The patch is not changed
+     * and none of its sections or lists end up in the tree.
+     * @param base the tree to change
+     * @param patch the changes to make
+     * @return base
+     * @throws InvalidDataException if the patch changes a section that is not in the tree
+     */
+    public static PData apply(PData base, PData patch) {
+        if (patch.contains("delete")) {
+            PList deleted = patch.list("delete");
+            for (int i = 0; i < deleted.size(); i++)
+                base.delete(deleted.getString(i));
+        }
+        if (patch.contains("set")) {
+            PData set = patch.section("set");
+            boolean header = false;
+            for (String key : set.keys()) {
+                int entry = set.entry(key);
+                base.setEntry(key, set.typeAt(entry), set.primitiveAt(entry), set.objectAt(entry));
+                header |= isHeader(key);
+            }
+            // new keys go on the end, but streamed readers expect the header of an object before any other key
+            if (header) {
+                String[] keys = StreamedEntries.HEADER;
+                for (int i = keys.length - 1; i >= 0; i--) {
+                    if (base.contains(keys[i]))
+                        base.moveToFront(keys[i]);
+                }
+            }
+        }
+        if (patch.contains("patch")) {
+            PData sections = patch.section("patch");
+            for (String key : sections.keys()) {
+                if (base.getType(key) != PData.Type.DATA)
+                    throw new InvalidDataException("Cannot patch the section '" + key + "' since the data has no such section");
+                apply(base.getSection(key), sections.section(key));
+            }
+        }
+        return base;
+    }
+
+    /**
+     * @return true if the patch makes no changes
+     */
+    public static boolean isEmpty(PData patch) {
+        return patch.keys().isEmpty();
+    }
+
+    /**
+     * Writes the changes from base to target into patch
+     * @return true if anything changed
+     */
+    private static boolean diffInto(PData base, PData target, PData patch) {
+        boolean changed = false;
+        for (String key : target.keys()) {
+            int t = target.entry(key);
+            PData.Type type = target.typeAt(t);
+            int b = base.entry(key);
+            if (b >= 0 && base.typeAt(b) == type) {
+                if (type == PData.Type.DATA) {
+                    PData sectionPatch = new PData();
+                    if (diffInto((PData) base.objectAt(b), (PData) target.objectAt(t), sectionPatch)) {
+                        part(patch, "patch").setSection(key, sectionPatch);
+                        changed = true;
+                    }
+                    continue;
+                }
+                if (same(type, base.primitiveAt(b), base.objectAt(b), target.primitiveAt(t), target.objectAt(t)))
+                    continue;
+            }
+            part(patch, "set").setEntry(key, type, target.primitiveAt(t), target.objectAt(t));
+            changed = true;
+        }
+        PList deleted = null;
+        for (String key : base.keys()) {
+            if (target.entry(key) >= 0)
+                continue;
+            if (deleted == null)
+                deleted = patch.createList("delete");
+            deleted.add(key);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static boolean isHeader(String key) {
+        for (String header : StreamedEntries.HEADER) {
+            if (header.equals(key))
+                return true;
+        }
+        return false;
+    }
+
+    private static PData part(PData patch, String key) {
+        return patch.contains(key) ? patch.section(key) : patch.createSection(key);
+    }
+
+    private static boolean same(PData.Type type, long primitiveA, Object objectA, long primitiveB, Object objectB) {
+        switch (type) {
+            case STRING:
+                return objectA.equals(objectB);
+            case LONG_ARRAY:
+                return Arrays.equals((long[]) objectA, (long[]) objectB);
+            case DOUBLE_ARRAY:
+                return Arrays.equals((double[]) objectA, (double[]) objectB);
+            case BYTE_ARRAY:
+                return Arrays.equals((byte[]) objectA, (byte[]) objectB);
+            case DATA:
+                return same((PData) objectA, (PData) objectB);
+            case LIST:
+                return same((PList) objectA, (PList) objectB);
+            case NULL:
+                return true;
+            default:
+                // doubles are compared by their bits so that only values that save the same are the same
+                return primitiveA == primitiveB;
+        }
+    }
+
+    private static boolean same(PData a, PData b) {
+        if (a.keys().size() != b.keys().size())
+            return false;
+        for (String key : b.keys()) {
+            int entryA = a.entry(key);
+            int entryB = b.entry(key);
+            if (entryA < 0 || a.typeAt(entryA) != b.typeAt(entryB))
+                return false;
+            if (!same(a.typeAt(entryA), a.primitiveAt(entryA), a.objectAt(entryA), b.primitiveAt(entryB), b.objectAt(entryB)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean same(PList a, PList b) {
+        if (a.size() != b.size())
+            return false;
+        for (int i = 0; i < a.size(); i++) {
+            PData.Type type = a.getType(i);
+            if (type != b.getType(i))
+                return false;
+            if (!same(type, a.primitiveAt(i), a.objectAt(i), b.primitiveAt(i), b.objectAt(i)))
+                return false;
+        }
+        return true;
+    }
+}
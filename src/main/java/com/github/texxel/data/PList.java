@@ -0,0 +1,495 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.MissingDataException;
+import com.github.texxel.data.exceptions.WrongTypeException;
+
+import java.util.Arrays;
+
+/**
+ * <p>An ordered list of primitive values that lives inside {@link PData}. Values are found by their index and can only
+ * be added to the end of the list.</p>
+ *
+ * <p>A list can hold everything a PData can except for packed arrays (that is, longs, doubles, strings, booleans,
+ * nulls, references, sections and other lists). As with PData, asking for a value of the wrong type throws a
+ * WrongTypeException and asking for an index outside of the list throws a MissingDataException.</p>
+ */
+public final class PList {
+
+    private static final PData.Type[] TYPES = PData.Type.values();
+    private static final int INITIAL_CAPACITY = 8;
+
+    /** the ordinal of the type of each value. Null until used */
+    private byte[] types;
+    /** the value of each long, double, reference and boolean */
+    private long[] primitives;
+    /** the value of each string, section and list */
+    private Object[] objects;
+    /** the number of values held in the arrays */
+    private int size;
+    /** if not null, the values at the end of the list are still waiting to be decoded out of a stream */
+    StreamedEntries pending;
+    /**
+     * true if the list can only be read forwards. Reading a value forgets all the values before it. Only set for lists
+     * read out of a stream
+     */
+    boolean forward;
+    /** the number of values at the start of the list that have been forgotten */
+    private int offset;
+    /** true if the arrays are shared with another PList (see {@link #share()}) */
+    private boolean shared;
+
+    public int size() {
+        decode();
+        return offset + size;
+    }
+
+    /**
+     * Tests if the list has a value at an index. Unlike {@link #size()}, only the values up to the index are decoded
+     * for lists that are being read out of a stream.
+     */
+    boolean has( int index ) {
+        while (index >= offset + size && decodeNext()) {
+        }
+        return index >= 0 && index < offset + size;
+    }
+
+    /**
+     * Gets the type of the value at an index
+     * @throws MissingDataException if the index is outside of the list
+     */
+    public PData.Type getType( int index ) {
+        return TYPES[types[slot(index)]];
+    }
+
+    public long getLong( int index ) {
+        int i = slot(index);
+        if (types[i] == PData.Type.LONG.ordinal())
+            return primitives[i];
+        return crash(index, PData.Type.LONG);
+    }
+
+    /**
+     * Gets a double value. Integer values will be converted to double values
+     */
+    public double getDouble( int index ) {
+        int i = slot(index);
+        if (types[i] == PData.Type.DOUBLE.ordinal())
+            return Double.longBitsToDouble(primitives[i]);
+        else if (types[i] == PData.Type.LONG.ordinal())
+            return primitives[i];
+        return crash(index, PData.Type.DOUBLE);
+    }
+
+    public String getString( int index ) {
+        int i = slot(index);
+        if (types[i] == PData.Type.STRING.ordinal())
+            return (String)objects[i];
+        return crash(index, PData.Type.STRING);
+    }
+
+    public boolean getBoolean( int index ) {
+        int i = slot(index);
+        if (types[i] == PData.Type.BOOLEAN.ordinal())
+            return primitives[i] != 0;
+        return crash(index, PData.Type.BOOLEAN);
+    }
+
+    /**
+     * Gets the id of the object that a reference points to
+     */
+    public long getReference( int index ) {
+        int i = slot(index);
+        if (types[i] == PData.Type.REFERENCE.ordinal())
+            return primitives[i];
+        return crash(index, PData.Type.REFERENCE);
+    }
+
+    public PData getSection( int index ) {
+        // the sections are still shared so they cannot be handed out
+        unshare();
+        int i = slot(index);
+        if (types[i] == PData.Type.DATA.ordinal())
+            return (PData)objects[i];
+        return crash(index, PData.Type.DATA);
+    }
+
+    public PList getList( int index ) {
+        // the lists are still shared so they cannot be handed out
+        unshare();
+        int i = slot(index);
+        if (types[i] == PData.Type.LIST.ordinal())
+            return (PList)objects[i];
+        return crash(index, PData.Type.LIST);
+    }
+
+    public PList add( long value ) {
+        append(PData.Type.LONG, value, null);
+        return this;
+    }
+
+    public PList add( double value ) {
+        append(PData.Type.DOUBLE, Double.doubleToRawLongBits(value), null);
+        return this;
+    }
+
+    public PList add( String value ) {
+        if (value == null)
+            append(PData.Type.NULL, 0, null);
+        else
+            append(PData.Type.STRING, 0, value);
+        return this;
+    }
+
+    public PList add( boolean value ) {
+        append(PData.Type.BOOLEAN, value ? 1 : 0, null);
+        return this;
+    }
+
+    public PList addNull() {
+        append(PData.Type.NULL, 0, null);
+        return this;
+    }
+
+    public PList addReference( long id ) {
+        append(PData.Type.REFERENCE, id, null);
+        return this;
+    }
+
+    /**
+     * Creates a list holding the values of a packed array
+     * @param packed a long[], double[] or byte[]. Bytes are added as longs
+     */
+    static PList fromArray( Object packed ) {
+        PList list = new PList();
+        if (packed instanceof long[]) {
+            for (long value : (long[]) packed)
+                list.add(value);
+        } else if (packed instanceof double[]) {
+            for (double value : (double[]) packed)
+                list.add(value);
+        } else {
+            for (byte value : (byte[]) packed)
+                list.add(value);
+        }
+        return list;
+    }
+
+    /**
+     * @return the values of the list as a new array or null if the list holds anything other than longs
+     */
+    long[] toLongArray() {
+        int size = size();
+        long[] values = new long[size];
+        for (int i = 0; i < size; i++) {
+            if (getType(i) != PData.Type.LONG)
+                return null;
+            values[i] = primitiveAt(i);
+        }
+        return values;
+    }
+
+    /**
+     * @return the values of the list as a new array or null if the list holds anything other than numbers
+     */
+    double[] toDoubleArray() {
+        int size = size();
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            PData.Type type = getType(i);
+            if (type == PData.Type.DOUBLE)
+                values[i] = Double.longBitsToDouble(primitiveAt(i));
+            else if (type == PData.Type.LONG)
+                values[i] = primitiveAt(i);
+            else
+                return null;
+        }
+        return values;
+    }
+
+    /**
+     * Adds a new section to the end of the list
+     * @return the new section
+     */
+    public PData addSection() {
+        PData section = new PData();
+        append(PData.Type.DATA, 0, section);
+        return section;
+    }
+
+    /**
+     * Adds a new list to the end of this list
+     * @return the new list
+     */
+    public PList addList() {
+        PList list = new PList();
+        append(PData.Type.LIST, 0, list);
+        return list;
+    }
+
+    /**
+     * Places an existing section at the end of the list
+     */
+    PList addSection( PData section ) {
+        append(PData.Type.DATA, 0, section);
+        return this;
+    }
+
+    /**
+     * Places an existing list at the end of this list
+     */
+    PList addList( PList list ) {
+        append(PData.Type.LIST, 0, list);
+        return this;
+    }
+
+    /**
+     * Replaces the value at an index with a reference
+     */
+    PList setReference( int index, long id ) {
+        unshare();
+        int i = slot(index);
+        types[i] = (byte) PData.Type.REFERENCE.ordinal();
+        primitives[i] = id;
+        objects[i] = null;
+        return this;
+    }
+
+    /**
+     * Removes every value
+     */
+    PList clear() {
+        types = null;
+        primitives = null;
+        objects = null;
+        size = 0;
+        offset = 0;
+        pending = null;
+        shared = false;
+        return this;
+    }
+
+    /** the raw bits of a long, double, reference or boolean. The index must already have been checked */
+    long primitiveAt( int index ) {
+        return primitives[index - offset];
+    }
+
+    /** the string, section or list. The index must already have been checked */
+    Object objectAt( int index ) {
+        return objects[index - offset];
+    }
+
+    /** decodes any values that have not been read in yet */
+    private void decode() {
+        while (decodeNext()) {
+        }
+    }
+
+    /**
+     * Decodes the next value that has not been read in yet
+     * @return true if there are still values left to decode
+     */
+    boolean decodeNext() {
+        StreamedEntries entries = pending;
+        if (entries == null)
+            return false;
+        pending = null;
+        boolean more = true;
+        try {
+            more = entries.decodeNext(this);
+        } finally {
+            // entries that failed to decode are kept so the failure is seen again instead of the data looking complete
+            if (more)
+                pending = entries;
+        }
+        return more;
+    }
+
+    /**
+     * Creates a list that shares the values of this list without copying any of them. The returned list takes its own
+     * copy the first time it is changed or one of its sections or lists is asked for. The owner of this list must call
+     * {@link #detach()} on the returned list before it changes this list or anything in it.
+     * @return a list that looks the same as this list
+     */
+    PList share() {
+        decode();
+        PList shared = new PList();
+        shared.types = types;
+        shared.primitives = primitives;
+        shared.objects = objects;
+        shared.size = size;
+        shared.offset = offset;
+        shared.forward = forward;
+        shared.shared = true;
+        return shared;
+    }
+
+    /**
+     * Takes a private copy of the values if they are still shared with another PList. Sections and lists in it are
+     * replaced by shared views of themselves.
+     */
+    private void unshare() {
+        if (!shared)
+            return;
+        shared = false;
+        if (types == null)
+            return;
+        types = types.clone();
+        primitives = primitives.clone();
+        objects = objects.clone();
+        for (int i = 0; i < size; i++) {
+            if (types[i] == PData.Type.DATA.ordinal())
+                objects[i] = ((PData) objects[i]).share();
+            else if (types[i] == PData.Type.LIST.ordinal())
+                objects[i] = ((PList) objects[i]).share();
+        }
+    }
+
+    /**
+     * Stops this list and everything in it from sharing values with any other list. See {@link PData#detach()}
+     */
+    void detach() {
+        unshare();
+        for (int i = 0; i < size; i++) {
+            if (types[i] == PData.Type.DATA.ordinal())
+                ((PData) objects[i]).detach();
+            else if (types[i] == PData.Type.LIST.ordinal())
+                ((PList) objects[i]).detach();
+        }
+    }
+
+    /**
+     * Creates a full copy of this list
+     * @return a clone
+     */
+    public PList copy() {
+        decode();
+        PList clone = new PList();
+        if (size == 0)
+            return clone;
+        clone.types = types.clone();
+        clone.primitives = primitives.clone();
+        clone.objects = objects.clone();
+        clone.size = size;
+        for (int i = 0; i < size; i++) {
+            if (types[i] == PData.Type.DATA.ordinal())
+                clone.objects[i] = ((PData) objects[i]).copy();
+            else if (types[i] == PData.Type.LIST.ordinal())
+                clone.objects[i] = ((PList) objects[i]).copy();
+        }
+        return clone;
+    }
+
+    /**
+     * Creates a human readable dump of the list. Should only be used for debugging
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        toString(0, builder);
+        return builder.toString();
+    }
+
+    void toString( int depth, StringBuilder builder ) {
+        decode();
+        builder.append('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                builder.append(", ");
+            switch (TYPES[types[i]]) {
+                case DATA:
+                    ((PData) objects[i]).toString(depth + 1, builder);
+                    break;
+                case LIST:
+                    ((PList) objects[i]).toString(depth + 1, builder);
+                    break;
+                case LONG:
+                    builder.append(primitives[i]);
+                    break;
+                case DOUBLE:
+                    builder.append(Double.longBitsToDouble(primitives[i]));
+                    break;
+                case BOOLEAN:
+                    builder.append(primitives[i] != 0);
+                    break;
+                case STRING:
+                    builder.append(objects[i]);
+                    break;
+                case REFERENCE:
+                    builder.append("__#").append(primitives[i]);
+                    break;
+                default:
+                    builder.append("null");
+            }
+        }
+        builder.append(']');
+    }
+
+    /**
+     * Finds where the value at an index is kept in the arrays. Values are decoded up to the index, and lists that can
+     * only be read forwards forget every value before the index.
+     * @throws MissingDataException if the index is outside of the list
+     */
+    private int slot( int index ) {
+        while (index >= offset + size && decodeNext()) {
+        }
+        if (index < offset)
+            throw new MissingDataException("Index " + index + " has already been streamed past");
+        if (index >= offset + size)
+            throw new MissingDataException("Index " + index + " is outside of the list of size " + (offset + size));
+        if (forward && index > offset)
+            forget(index - offset);
+        return index - offset;
+    }
+
+    /**
+     * Forgets values at the front of the list. Sections and lists that are still being streamed in are thrown away
+     * as they are read.
+     */
+    private void forget( int count ) {
+        for (int i = 0; i < count; i++) {
+            Object object = objects[i];
+            if (object instanceof PData) {
+                PendingEntries entries = ((PData) object).pending;
+                if (entries instanceof StreamedEntries)
+                    ((StreamedEntries) entries).abandon();
+            } else if (object instanceof PList && ((PList) object).pending != null) {
+                ((PList) object).pending.abandon();
+            }
+        }
+        System.arraycopy(types, count, types, 0, size - count);
+        System.arraycopy(primitives, count, primitives, 0, size - count);
+        System.arraycopy(objects, count, objects, 0, size - count);
+        Arrays.fill(objects, size - count, size, null);
+        size -= count;
+        offset += count;
+    }
+
+    /** always throws an exception. The value must be of the wrong type since the index was checked already */
+    private <T> T crash( int index, PData.Type expected ) {
+        throw new WrongTypeException("Expected '" + expected + "' at index " + index + " but had '" + getType(index) + "'");
+    }
+
+    private void append( PData.Type type, long primitive, Object object ) {
+        unshare();
+        if (types == null) {
+            types = new byte[INITIAL_CAPACITY];
+            primitives = new long[INITIAL_CAPACITY];
+            objects = new Object[INITIAL_CAPACITY];
+        } else if (size == types.length) {
+            int capacity = size * 2;
+            byte[] newTypes = new byte[capacity];
+            long[] newPrimitives = new long[capacity];
+            Object[] newObjects = new Object[capacity];
+            System.arraycopy(types, 0, newTypes, 0, size);
+            System.arraycopy(primitives, 0, newPrimitives, 0, size);
+            System.arraycopy(objects, 0, newObjects, 0, size);
+            types = newTypes;
+            primitives = newPrimitives;
+            objects = newObjects;
+        }
+        types[size] = (byte) type.ordinal();
+        primitives[size] = primitive;
+        objects[size] = object;
+        size++;
+    }
+}
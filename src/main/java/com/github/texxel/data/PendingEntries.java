@@ -0,0 +1,21 @@
+package com.github.texxel.data;
+
+/**
+ * Entries of a {@link PData} that have not been decoded yet. The entries are decoded into the data the first time
+ * they are needed.
+ */
+abstract class PendingEntries {
+
+    /**
+     * Decodes more of the entries into the data. The data has no pending entries while this is called.
+     * @return true if there are still entries left to decode
+     */
+    abstract boolean decodeNext(PData pData);
+
+    /**
+     * Tests if a key might still be found in the entries that have not been decoded yet
+     */
+    boolean mightHave(PData pData, String key) {
+        return true;
+    }
+}
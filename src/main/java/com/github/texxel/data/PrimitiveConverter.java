@@ -6,13 +6,21 @@ import com.github.texxel.data.exceptions.MissingDataException;
 import com.github.texxel.data.exceptions.WrongTypeException;
 import com.github.texxel.data.serializers.ArrayConverter;
 
+import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A helper class for conversion between Data and Primitive data
  */
 class PrimitiveConverter {
 
+    /**
+     * Prefixes the key of a list to find where the class of the objects in the list is recorded. The first object
+     * added to a list decides the class, and every object of that class is then written without its own classname.
+     */
+    static final String ELEMENT_CLASS_PREFIX = "__classname:";
+
     private static Map<Class, Class> wrappedTypes = new HashMap<>();
     static {
         wrappedTypes.put(boolean.class, Boolean.class);
@@ -24,53 +32,101 @@ class PrimitiveConverter {
         wrappedTypes.put(float.class, Float.class);
         wrappedTypes.put(double.class, Double.class);
     }
+    /** the classes found by name so far. Primitive classes cannot be found with Class.forName so are added here */
+    private static final ConcurrentHashMap<String, Class> classes = new ConcurrentHashMap<>();
+    static {
+        for (Class primitive : wrappedTypes.keySet())
+            classes.put(primitive.getName(), primitive);
+        classes.put(void.class.getName(), void.class);
+    }
 
     public static void write (String key, Object obj, DataOut data) {
-        PData pData = data.pData;
+        write(obj, data, data.pData, key, null, data.depth);
+    }
+
+    static void add (Object obj, DataOutList list) {
+        write(obj, list.owner, null, null, list, list.depth);
+    }
+
+    /**
+     * Writes an object into either a key of a PData or onto the end of a PList
+     * @param data any DataOut of the data being written
+     * @param depth the depth of the PData/PList being written to
+     */
+    private static void write (Object obj, DataOut data, PData pData, String key, DataOutList outList, int depth) {
+        PList list = outList == null ? null : outList.list;
         if (obj == null) {
-            pData.setNull(key);
+            if (list == null)
+                pData.setNull(key);
+            else
+                list.addNull();
             return;
         }
-        if (obj instanceof String) {
-            data.write(key, (String)obj);
+        Class clazz = obj.getClass();
+        if (writeScalar(obj, clazz, data, pData, key, outList))
+            return;
+        // recorded before the section is made so that streamed data has the class before the list. This is done
+        // before the plan is recorded so that both passes of a planned write agree on which scalars fit in the list.
+        // Scalars only get here when they do not fit in the list so must never decide its class
+        if (outList != null && outList.key != null && outList.elementClass == null && kindOf(clazz) == null) {
+            outList.elementClass = clazz;
+            outList.owner.recordClass(outList.key, clazz);
+        }
+        GraphPlan plan = data.plan;
+        if (plan != null && plan.isRecording()) {
+            plan.record(obj, depth + 1);
             return;
         }
-        Class clazz = obj.getClass();
 
-        long id = System.identityHashCode(obj);
-        String idKey = "__#" + id;
         // check if the data has already been written
-        DataOut previous = data.global.get(id);
-        if (previous != null) {
-            if ( previous.depth <= data.depth ) {
-                // write a reference to the other location
-                pData.set(key, idKey);
-                // add a reference to the top level
-                if (!data.root.contains(idKey)) {
-                    PData section = data.root.createSection(idKey);
-                    for (String path : previous.path) {
-                        section = section.createSection(path);
-                    }
+        int id = data.written.get(obj);
+        if (plan != null) {
+            // when planned, objects are only ever written in the shallowest place they are found
+            if ((id >= 0 && data.global.get(id) != null) || depth + 1 > plan.depthOf(obj)) {
+                if (id < 0) {
+                    id = data.written.add(obj);
+                    data.global.add(null);
                 }
+                if (list == null)
+                    pData.setReference(key, id);
+                else
+                    list.addReference(id);
+                return;
+            }
+        } else if (id >= 0) {
+            DataOut previous = data.global.get(id);
+            if ( previous.depth <= depth ) {
+                // write a reference to the other location
+                if (list == null)
+                    pData.setReference(key, id);
+                else
+                    list.addReference(id);
             } else {
                 // move the contents to over here
-                PData oldPContainer = data.containers.get(id);
-                PData newPContainer = data.pData;
                 PData objPData = previous.pData;
+                // the class may only have been recorded by the list the object was in
+                if (!hasOwnClass(objPData)) {
+                    writeClass(objPData, clazz);
+                    // the class must come first so that streamed data can find it before the rest of the object
+                    objPData.moveToFront(ConverterRegistry.typeIdOf(clazz) >= 0 ? "__type" : "__classname");
+                }
 
                 //rewire the primitive containers
-                oldPContainer.set(previous.path[previous.path.length - 1], idKey);
-                newPContainer.data.put(key, objPData);
+                if (previous.container instanceof PList)
+                    ((PList) previous.container).setReference(previous.index, id);
+                else
+                    ((PData) previous.container).setReference(previous.key, id);
+                int index = -1;
+                if (list == null) {
+                    pData.setSection(key, objPData);
+                } else {
+                    index = list.size();
+                    list.addSection(objPData);
+                }
 
                 // correct the data container
-                DataOut moved = new DataOut(data.getPath(key), objPData, data.global, data.containers, data.root, data.depth+1);
-                data.global.put(id, moved);
-
-                // correct the top level reference
-                PData section = data.root.createSection(idKey);
-                for (String path : moved.path) {
-                    section = section.createSection(path);
-                }
+                DataOut moved = data.child(objPData, list == null ? pData : list, key, index, depth + 1);
+                data.global.set(id, moved);
             }
             return;
         }
@@ -81,159 +137,492 @@ class PrimitiveConverter {
             throw new InvalidDataException("No converter registered for '" + clazz.getName() + "'");
 
         // write the data here
-        DataOut objData = data.createSection(key);
-        data.global.put(id, objData);
-        data.containers.put(id, data.pData);
-        objData.write("__classname", clazz.getName());
-        objData.write("__id", idKey);
+        DataOut objData;
+        if (list == null) {
+            objData = data.child(pData.createSection(key), pData, key, -1, depth + 1);
+        } else {
+            int index = list.size();
+            objData = data.child(list.addSection(), list, null, index, depth + 1);
+        }
+        if (id < 0) {
+            id = data.written.add(obj);
+            data.global.add(objData);
+        } else {
+            // a reference to the object was written before its planned place was found
+            data.global.set(id, objData);
+        }
+        if (outList == null || outList.elementClass != clazz)
+            writeClass(objData.pData, clazz);
+        objData.write("__id", id);
+        SectionCache cache = data.cache;
+        if (cache != null) {
+            PData cached = cache.get(obj);
+            if (cached != null) {
+                objData.modify();
+                for (String entryKey : cached.keys()) {
+                    int entry = cached.entry(entryKey);
+                    objData.pData.setEntry(entryKey, cached.typeAt(entry), cached.primitiveAt(entry),
+                            cached.objectAt(entry));
+                }
+                return;
+            }
+        }
+        // the version is taken first so that changes made while the object is being written are never missed
+        long version = cache != null && obj instanceof Versioned ? ((Versioned) obj).dataVersion() : 0;
         try {
             converter.serialize(obj, objData);
         } catch (Throwable thr) {
             throw new DataSerializationException("Failed to serialize '" + clazz.getName() + "'", thr);
         }
+        // streamed sections have already been sent off
+        if (cache != null && obj instanceof Versioned && data.stream == null)
+            cache.put(obj, version, objData.pData);
+    }
+
+    /**
+     * Records the class of an object in its section. Classes with a registered type id are written as the id in
+     * "__type", all other classes are written by name in "__classname"
+     */
+    private static void writeClass(PData section, Class clazz) {
+        long typeId = ConverterRegistry.typeIdOf(clazz);
+        if (typeId >= 0)
+            section.set("__type", typeId);
+        else
+            section.set("__classname", clazz.getName());
+    }
+
+    /**
+     * @return true if the section records the class of its object itself
+     */
+    static boolean hasOwnClass(PData section) {
+        return section.contains("__classname") || section.contains("__type");
+    }
+
+    /**
+     * Finds the class recorded in a section by {@link #writeClass(PData, Class)}
+     * @throws MissingDataException if the section has no class
+     * @throws InvalidDataException if the class does not exist
+     */
+    private static Class classOf(PData section) {
+        int entry = section.entry("__type");
+        if (entry >= 0 && section.typeAt(entry) == PData.Type.LONG) {
+            long typeId = section.primitiveAt(entry);
+            Class clazz = ConverterRegistry.typeOf(typeId);
+            if (clazz == null)
+                throw new InvalidDataException("No class registered with the type id " + typeId);
+            return clazz;
+        }
+        return findClass(section.getString("__classname"));
+    }
+
+    /**
+     * Writes strings, boxed primitives, enums and classes straight into the PData/PList as plain values. Strings,
+     * longs, doubles and booleans are read back as themselves. Ints, shorts, bytes and chars are written as longs,
+     * floats as doubles, and enums and classes as their name, and their class is recorded next to the key or, for a
+     * list, once for the whole list in the same place as the class of the {@link #ELEMENT_CLASS_PREFIX objects in the
+     * list}. A value that would be read back as the wrong type (a long in a list of ints, an int in a list of longs or
+     * in a list inside another list) is written as a normal object instead, as is any scalar whose converter has been
+     * replaced by a registered one. Scalars are values so they are never tracked and no references are ever made to
+     * them.
+     * @return false if the object must be written as a normal object
+     */
+    private static boolean writeScalar(Object obj, Class clazz, DataOut data, PData pData, String key,
+                                       DataOutList outList) {
+        PData.Type kind;
+        long number = 0;
+        double decimal = 0;
+        String string = null;
+        if (clazz == String.class) {
+            kind = PData.Type.STRING;
+            string = (String) obj;
+        } else if (clazz == Long.class || clazz == Integer.class || clazz == Short.class || clazz == Byte.class) {
+            kind = PData.Type.LONG;
+            number = ((Number) obj).longValue();
+        } else if (clazz == Character.class) {
+            kind = PData.Type.LONG;
+            number = (Character) obj;
+        } else if (clazz == Double.class || clazz == Float.class) {
+            kind = PData.Type.DOUBLE;
+            decimal = ((Number) obj).doubleValue();
+        } else if (clazz == Boolean.class) {
+            kind = PData.Type.BOOLEAN;
+            number = (Boolean) obj ? 1 : 0;
+        } else if (clazz == Class.class) {
+            kind = PData.Type.STRING;
+            string = ((Class) obj).getName();
+        } else if (obj instanceof Enum) {
+            kind = PData.Type.STRING;
+            clazz = ((Enum) obj).getDeclaringClass();
+            string = ((Enum) obj).name();
+        } else {
+            return false;
+        }
+        if (!ConverterRegistry.isBuiltIn(ConverterRegistry.find(clazz)))
+            return false;
+
+        // these are read back as themselves so never need their class recorded
+        boolean plain = clazz == String.class || clazz == Long.class || clazz == Double.class || clazz == Boolean.class;
+        PList list = outList == null ? null : outList.list;
+        if (list == null) {
+            if (!plain)
+                data.recordClass(key, clazz);
+        } else if (outList.elementClass != clazz) {
+            if (outList.key == null && !plain)
+                return false;
+            if (outList.elementClass != null && kindOf(outList.elementClass) == kind)
+                return false;
+            if (!plain) {
+                if (outList.elementClass != null || outList.hasKind(kind))
+                    return false;
+                outList.elementClass = clazz;
+                outList.owner.recordClass(outList.key, clazz);
+            }
+            outList.addKind(kind);
+        }
+
+        switch (kind) {
+            case STRING:
+                if (list == null)
+                    pData.set(key, string);
+                else
+                    list.add(string);
+                break;
+            case LONG:
+                if (list == null)
+                    pData.set(key, number);
+                else
+                    list.add(number);
+                break;
+            case DOUBLE:
+                if (list == null)
+                    pData.set(key, decimal);
+                else
+                    list.add(decimal);
+                break;
+            default:
+                if (list == null)
+                    pData.set(key, number != 0);
+                else
+                    list.add(number != 0);
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * @return the type that {@link #writeScalar(Object, Class, DataOut, PData, String, DataOutList)} writes a class as
+     * or null if the class is not a scalar
+     */
+    private static PData.Type kindOf(Class clazz) {
+        if (clazz == Long.class || clazz == Integer.class || clazz == Short.class || clazz == Byte.class
+                || clazz == Character.class)
+            return PData.Type.LONG;
+        if (clazz == Double.class || clazz == Float.class)
+            return PData.Type.DOUBLE;
+        if (clazz == Boolean.class)
+            return PData.Type.BOOLEAN;
+        if (clazz == String.class || clazz == Class.class || clazz.isEnum())
+            return PData.Type.STRING;
+        return null;
+    }
+
+    /**
+     * Reads a plain value back as the scalar class that was recorded for it
+     * @param recorded the class recorded by {@link #writeScalar(Object, Class, DataOut, PData, String, DataOutList)}
+     * @return the value or null if the class was not recorded for this type of value
+     * @throws InvalidDataException if the value does not fit the class
+     */
+    private static Object readScalar(PData.Type type, long primitive, Object object, Class recorded) {
+        if (kindOf(recorded) != type)
+            return null;
+        switch (type) {
+            case LONG:
+                if (recorded == Integer.class)
+                    return (int) primitive;
+                if (recorded == Short.class)
+                    return (short) primitive;
+                if (recorded == Byte.class)
+                    return (byte) primitive;
+                if (recorded == Character.class)
+                    return (char) primitive;
+                return primitive;
+            case DOUBLE:
+                if (recorded == Float.class)
+                    return (float) Double.longBitsToDouble(primitive);
+                return Double.longBitsToDouble(primitive);
+            case STRING:
+                if (recorded == Class.class)
+                    return findClass((String) object);
+                if (recorded.isEnum())
+                    return enumOf(recorded, (String) object);
+                return object;
+            default:
+                return primitive != 0;
+        }
+    }
+
+    /**
+     * @throws InvalidDataException if the enum has no such constant
+     */
+    private static Object enumOf(Class type, String name) {
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidDataException("No enum constant '" + type.getName() + "." + name + "'", e);
+        }
+    }
+
+    /**
+     * Finds a class by its name. Classes that this library cannot see are looked up with the thread's context class
+     * loader. Only the classes this library can see are cached since the context class loader may change.
+     * @throws InvalidDataException if there is no class with the name
+     */
+    static Class findClass(String name) {
+        Class found = classes.get(name);
+        if (found != null)
+            return found;
+        try {
+            found = Class.forName(name);
+            classes.put(name, found);
+            return found;
+        } catch (ClassNotFoundException e) {
+            ClassLoader context = Thread.currentThread().getContextClassLoader();
+            if (context != null) {
+                try {
+                    return Class.forName(name, true, context);
+                } catch (ClassNotFoundException ignored) {
+                }
+            }
+            throw new InvalidDataException("No class named '" + name + "'", e);
+        }
     }
 
     public static <T> T read(String key, Class<T> expected, DataIn data) {
         PData pData = data.pData;
-        PData.Type type = pData.getType(key);
-
-        if (type == null)
+        int entry = pData.entry(key);
+        if (entry < 0)
             throw new MissingDataException("No value mapped to '" + key + "'");
+        PData.Type type = pData.typeAt(entry);
+        if (type == PData.Type.LIST && expected.isAssignableFrom(DataInList.class))
+            return (T) list(pData, key, (PList) pData.objectAt(entry), data.references);
+        if (type != PData.Type.DATA)
+            return convert(type, pData.primitiveAt(entry), pData.objectAt(entry), expected, data.references, pData, key, null, -1);
+
+        // look up the cache for the object
+        Object cached = data.cache.get(key);
+        if (cached != null) {
+            return (T) cached;
+        }
+        T value = convert(type, 0, pData.objectAt(entry), expected, data.references, pData, key, null, -1);
+        // store in cache and continue
+        data.cache.put(key, value);
+        return value;
+    }
+
+    static <T> T read(int index, Class<T> expected, DataInList data) {
+        PList list = data.list;
+        PData.Type type = list.getType(index);
+        return convert(type, list.primitiveAt(index), list.objectAt(index), expected, data.references, null, null, data, index);
+    }
+
+    /**
+     * Creates a readable view of a list that is stored in a section
+     */
+    static DataInList list(PData parent, String key, PList list, ReferenceTable references) {
+        return new DataInList(list, references, elementName(parent, key));
+    }
+
+    /**
+     * @return the class name recorded for the objects in a list or null if there is none
+     */
+    static String elementName(PData parent, String key) {
+        int entry = parent.entry(ELEMENT_CLASS_PREFIX + key);
+        if (entry < 0 || parent.typeAt(entry) != PData.Type.STRING)
+            return null;
+        return (String) parent.objectAt(entry);
+    }
+
+    /**
+     * Converts a single value out of PData or a PList
+     * @param parent the section the value was stored in or null if it came from a list
+     * @param key the key the value was stored at or null if it came from a list
+     * @param list the list the value came from or null if it came from a key
+     * @param index the index the value was stored at in a list
+     */
+    private static <T> T convert(PData.Type type, long primitive, Object object, Class<T> expected,
+                                 ReferenceTable references, PData parent, String key, DataInList list, int index) {
         if (expected.isPrimitive())
             expected = wrappedTypes.get(expected);
         switch (type) {
             case NULL:
                 return null;
+            case BOOLEAN:
+            case LONG:
+            case DOUBLE:
+            case STRING:
+                // data from before references had their own type wrote them as strings
+                if (type == PData.Type.STRING && references.isLegacy()) {
+                    long id = ReferenceTable.legacyId((String) object);
+                    if (id >= 0)
+                        return getObjectReference(id, references, expected);
+                }
+                // the recorded class is only needed when the expected class does not already say what to read
+                if (!Modifier.isFinal(expected.getModifiers()) && !expected.isEnum()) {
+                    Class recorded = recordedClass(parent, key, list);
+                    Object scalar = recorded == null ? null : readScalar(type, primitive, object, recorded);
+                    if (scalar != null) {
+                        if (expected.isInstance(scalar))
+                            return (T) scalar;
+                        throw new WrongTypeException(expected, scalar.getClass());
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+        switch (type) {
             case BOOLEAN:
                 if (expected.isAssignableFrom(Boolean.class))
-                    return (T) (Boolean) pData.getBoolean(key);
-                throw badType(expected, Boolean.class, key);
+                    return (T) (Boolean) (primitive != 0);
+                throw badType(expected, Boolean.class, key, index);
             case LONG:
                 if (expected.isAssignableFrom(Long.class))
-                    return (T)(Long)pData.getLong(key);
+                    return (T)(Long)primitive;
                 if (expected.isAssignableFrom(Integer.class))
-                    return (T)(Integer)(int)pData.getLong(key);
+                    return (T)(Integer)(int)primitive;
+                if (expected.isAssignableFrom(Short.class))
+                    return (T)(Short)(short)primitive;
+                if (expected.isAssignableFrom(Byte.class))
+                    return (T)(Byte)(byte)primitive;
+                if (expected.isAssignableFrom(Character.class))
+                    return (T)(Character)(char)primitive;
                 if (expected.isAssignableFrom(Float.class))
-                    return (T)(Float)(float)pData.getLong(key);
+                    return (T)(Float)(float)primitive;
                 if (expected.isAssignableFrom(Double.class))
-                    return (T)(Double)(double)pData.getLong(key);
-                throw badType(expected, Long.class, key);
+                    return (T)(Double)(double)primitive;
+                throw badType(expected, Long.class, key, index);
             case DOUBLE:
                 if (expected.isAssignableFrom(Double.class))
-                    return (T)(Double)pData.getDouble(key);
+                    return (T)(Double)Double.longBitsToDouble(primitive);
                 if (expected.isAssignableFrom(Float.class))
-                    return (T)(Float)(float)pData.getDouble(key);
-                throw badType(expected, Double.class, key);
+                    return (T)(Float)(float)Double.longBitsToDouble(primitive);
+                throw badType(expected, Double.class, key, index);
             case STRING:
-                String contents = pData.getString(key);
-                if (contents.startsWith("__#")) {
-                    // this is actually an object reference
-                    return getObjectReference(contents, data, expected);
-                }
                 if (expected.isAssignableFrom(String.class))
-                    return (T)contents;
-                throw badType(expected, String.class, key);
+                    return (T)object;
+                if (expected.isEnum())
+                    return (T) enumOf(expected, (String) object);
+                if (expected == Class.class)
+                    return (T) findClass((String) object);
+                throw badType(expected, String.class, key, index);
+            case REFERENCE:
+                return getObjectReference(primitive, references, expected);
+            case LONG_ARRAY:
+                if (expected.isAssignableFrom(long[].class))
+                    return (T)((long[])object).clone();
+                throw badType(expected, long[].class, key, index);
+            case DOUBLE_ARRAY:
+                if (expected.isAssignableFrom(double[].class))
+                    return (T)((double[])object).clone();
+                throw badType(expected, double[].class, key, index);
+            case BYTE_ARRAY:
+                if (expected.isAssignableFrom(byte[].class))
+                    return (T)((byte[])object).clone();
+                throw badType(expected, byte[].class, key, index);
+            case LIST:
+                if (expected.isAssignableFrom(DataInList.class))
+                    return (T)new DataInList((PList)object, references, null);
+                throw badType(expected, DataInList.class, key, index);
             case DATA:
-                // continue;
                 break;
             default:
                 throw new RuntimeException("Unknown type " + type);
         }
-        if (type == PData.Type.NULL)
-            return null;
-        if (type == PData.Type.STRING) {
-            String contents = pData.getString(key);
-            // it might be a reference type?
-            if (contents.startsWith("__#")) {
-                return getObjectReference(contents, data, expected);
-            }
-            // maybe we want a string?
-            if (expected.isInstance(contents)) {
-                return (T)contents;
-            }
-        }
-        if (type != PData.Type.DATA)
-            throw new WrongTypeException("Expected an object type but found '" + type + "' at key '" + key + "'");
 
-        // look up the cache for the object
-        Object cached = data.cache.get(key);
-        if (cached != null) {
-            return (T) cached;
-        }
-
-        T value;
-        PData pDataSec = pData.getSection(key);
-        DataIn dataSec = new DataIn(pDataSec, data.references, data.root);
-        if (!pDataSec.contains("__classname")) {
+        PData pDataSec = (PData)object;
+        DataIn dataSec = new DataIn(pDataSec, references);
+        Class elementClass = null;
+        boolean ownClass = hasOwnClass(pDataSec);
+        if (!ownClass && list != null && pDataSec.contains("__id"))
+            elementClass = list.elementClass();
+        if (elementClass == null && !ownClass) {
             // this is just a simple sub bundle
             if (expected.isAssignableFrom(DataIn.class))
-                value = (T) dataSec;
+                return (T) dataSec;
             else
-                throw badType(expected, DataIn.class, key);
-        } else {
-            String id = pDataSec.getString("__id");
-            Object maybe = data.references.get(id);
-            if (maybe != null) {
-                Class actual = maybe.getClass();
-                if (expected.isAssignableFrom(actual))
-                    return (T) maybe;
-                else
-                    throw new WrongTypeException(expected, actual);
-            }
-            value = createObject(dataSec, expected);
+                throw badType(expected, DataIn.class, key, index);
+        }
+        long id = ReferenceTable.idOf(pDataSec);
+        Object maybe = references.get(id);
+        if (maybe != null) {
+            Class actual = maybe.getClass();
+            if (expected.isAssignableFrom(actual))
+                return (T) maybe;
+            else
+                throw new WrongTypeException(expected, actual);
         }
+        if (elementClass != null)
+            return createObject(dataSec, expected, elementClass, (DataConverter<T>) list.elementConverter());
+        return createObject(dataSec, expected, null);
+    }
 
-        // store in cache and continue
-        data.cache.put(key, value);
-        return (T)value;
+    /**
+     * @return the class recorded for a value that was written without one or null if there is none
+     */
+    private static Class recordedClass(PData parent, String key, DataInList list) {
+        if (list != null)
+            return list.elementClass();
+        String name = parent == null ? null : elementName(parent, key);
+        return name == null ? null : findClass(name);
     }
 
-    private static RuntimeException badType( Class expected, Class actual, String key ) {
-        throw new WrongTypeException("Expected " + expected.getName() + " but found " + actual + " in key " + key);
+    private static RuntimeException badType( Class expected, Class actual, String key, int index ) {
+        String where = key != null ? "key " + key : "index " + index;
+        throw new WrongTypeException("Expected " + expected.getName() + " but found " + actual + " in " + where);
     }
 
-    private static <T> T getObjectReference(String id, DataIn data, Class<T> expected) {
-        if (data.references.containsKey(id)) {
-            Object value = data.references.get(id);
-            if (value == null)
-                return null;
+    private static <T> T getObjectReference(long id, ReferenceTable references, Class<T> expected) {
+        Object value = references.get(id);
+        if (value != null) {
             Class actual = value.getClass();
             if (expected.isAssignableFrom(actual))
                 return (T)value;
             else
-                throw badType(expected, actual, id);
+                throw new WrongTypeException(expected, actual);
         }
 
-        PData path = data.root.getSection(id);
-        Set<String> keys = path.keys();
-        PData objPData = data.root;
-        while (!keys.isEmpty()) {
-            String key = keys.iterator().next();
-            path = path.getSection(key);
-            objPData = objPData.getSection(key);
-            keys = path.keys();
-        }
-        DataIn objData = new DataIn(objPData, data.references, data.root);
-        return createObject(objData, expected);
+        PData objPData = references.section(id);
+        DataIn objData = new DataIn(objPData, references);
+        return createObject(objData, expected, references.elementClass(id));
     }
 
-    private static <T> T createObject(DataIn data, Class<T> expected) {
+    /**
+     * @param elementName the class recorded by the list the object is in or null if it has its own classname
+     */
+    private static <T> T createObject(DataIn data, Class<T> expected, String elementName) {
         PData pData = data.pData;
-        String actualName = pData.getString("__classname");
-        Class actual;
-        try {
-            actual = Class.forName(actualName);
-        } catch (ClassNotFoundException e) {
-            throw new InvalidDataException("No class named '" + actualName + "'", e);
-        }
-        if (!expected.isAssignableFrom(actual))
-            throw new WrongTypeException(expected, actual);
+        Class actual = elementName != null && !hasOwnClass(pData) ? findClass(elementName) : classOf(pData);
         DataConverter<T> converter = ConverterRegistry.find(actual);
         if (converter == null)
             throw new InvalidDataException("No converter registered for " + actual);
-        T value = converter.create(data, (Class<T>)actual);
-        data.references.put(pData.getString("__id"), value);
+        return createObject(data, expected, actual, converter);
+    }
+
+    private static <T> T createObject(DataIn data, Class<T> expected, Class actual, DataConverter<T> converter) {
+        PData pData = data.pData;
+        if (!expected.isAssignableFrom(actual))
+            throw new WrongTypeException(expected, actual);
+        long id = ReferenceTable.idOf(pData);
+        data.references.creating(id, actual);
+        T value;
+        try {
+            value = converter.create(data, (Class<T>)actual);
+        } finally {
+            data.references.created(id);
+        }
+        data.references.put(id, value);
         converter.initialise(data, value);
+        data.references.release(pData, id);
         return value;
     }
 }
@@ -0,0 +1,239 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.InvalidDataException;
+import com.github.texxel.data.exceptions.MissingDataException;
+
+import java.util.HashMap;
+
+/**
+ * Keeps track of the objects that have been read in by their ids, and finds the section an object was written into
+ * from its id. The whole tree is walked once to find every object the first time a section is looked up, so documents
+ * that never reference an object before it is read never pay for the walk. Documents that are being read out of a
+ * stream are never walked; the {@link StreamedDocument} keeps track of the objects it has found instead. Nor are
+ * binary documents viewed with {@link BinaryLoader#view}, since walking them would decode every section; their
+ * {@link MappedIndex} says where each object is instead.
+ */
+final class ReferenceTable {
+
+    final PData root;
+    private final Slots objects = new Slots();
+    private Slots sections;
+    /** the class names of objects found in lists that record the class once for the whole list */
+    private Slots elementClasses;
+    /** the document the data is being streamed out of or null if the data is all in memory */
+    private final StreamedDocument document;
+    /** the index of the objects in mapped binary data or null if the data has no index */
+    private final MappedIndex index;
+    /** the classes of the objects whose converters are still creating them */
+    private Slots creating;
+    /** see {@link #isLegacy()}. Null until checked */
+    private Boolean legacy;
+
+    ReferenceTable(PData root) {
+        this.root = root;
+        this.document = root.pending instanceof StreamedEntries ? ((StreamedEntries) root.pending).document : null;
+        this.index = root.pending instanceof MappedSection ? ((MappedSection) root.pending).index : null;
+    }
+
+    /** the start of the string ids and references written before ids were numbers */
+    static final String LEGACY_PREFIX = "__#";
+
+    /**
+     * Gets the id of the object stored in a section
+     * @throws InvalidDataException if the section has no valid id
+     */
+    static long idOf(PData section) {
+        PData.Type type = section.getType("__id");
+        if (type == PData.Type.LONG)
+            return section.getLong("__id");
+        // data written before ids were numbers
+        if (type == PData.Type.STRING) {
+            String id = section.getString("__id");
+            long legacy = legacyId(id);
+            if (legacy < 0)
+                throw new InvalidDataException("Invalid object id '" + id + "'");
+            return legacy;
+        }
+        throw new InvalidDataException("Object has no id");
+    }
+
+    /**
+     * Reads an id written before ids were numbers, which was {@link #LEGACY_PREFIX} followed by the number
+     * @return the id or -1 if the string is not an id
+     */
+    static long legacyId(String value) {
+        int length = value.length();
+        if (length <= LEGACY_PREFIX.length() || length > LEGACY_PREFIX.length() + 18
+                || !value.startsWith(LEGACY_PREFIX))
+            return -1;
+        long id = 0;
+        for (int i = LEGACY_PREFIX.length(); i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    /**
+     * Checks if the data was written before references had their own type. References were then written as strings
+     * and every reference also added a key starting with {@link #LEGACY_PREFIX} to the root, so only the strings in
+     * such data can be references.
+     */
+    boolean isLegacy() {
+        if (document != null)
+            return document.hasStringIds();
+        if (legacy == null) {
+            legacy = false;
+            for (String key : root.keys()) {
+                if (key.startsWith(LEGACY_PREFIX)) {
+                    legacy = true;
+                    break;
+                }
+            }
+        }
+        return legacy;
+    }
+
+    /**
+     * @return the object read in with the id or null if it has not been read yet
+     */
+    Object get(long id) {
+        return objects.get(id);
+    }
+
+    void put(long id, Object value) {
+        objects.put(id, value);
+    }
+
+    /**
+     * Called before a converter creates an object. References to the object cannot be read until it has been created,
+     * so reading the object again before {@link #created(long)} is called is an error rather than endless recursion.
+     * @throws InvalidDataException if the object is already being created
+     */
+    void creating(long id, Class clazz) {
+        if (creating == null)
+            creating = new Slots();
+        else if (creating.get(id) != null)
+            throw new InvalidDataException("A reference back to the " + clazz.getName() + " with id " + id
+                    + " was read while it was being created. The converter must read such references in initialise");
+        creating.put(id, clazz);
+    }
+
+    /**
+     * Called once a converter has created an object, whether or not it succeeded
+     */
+    void created(long id) {
+        creating.put(id, null);
+    }
+
+    /**
+     * Finds the section that an object was written into
+     * @param id the object's id
+     * @return the section holding the object's data
+     * @throws MissingDataException if no object has the id
+     */
+    PData section(long id) {
+        if (document != null)
+            return document.section(id);
+        if (sections == null) {
+            sections = new Slots();
+            if (index == null)
+                collect(root, true);
+        }
+        PData section = (PData) sections.get(id);
+        if (section == null && index != null) {
+            section = index.section(id);
+            sections.put(id, section);
+        }
+        if (section == null)
+            throw new MissingDataException("No object with the id " + id);
+        return section;
+    }
+
+    /**
+     * Gets the class of an object that was written into a list without its classname. Must only be called after the
+     * object's section has been found with {@link #section(long)}
+     * @return the class name or null if the list did not record one
+     */
+    String elementClass(long id) {
+        if (document != null)
+            return document.elementClass(id);
+        if (index != null)
+            return index.elementClass(id);
+        return elementClasses == null ? null : (String) elementClasses.get(id);
+    }
+
+    /**
+     * Called once an object has been read in from its section. Streamed documents forget the section
+     */
+    void release(PData section, long id) {
+        if (document != null)
+            document.release(section, id);
+    }
+
+    private void collect(PData data, boolean top) {
+        if (data.contains("__id"))
+            sections.put(idOf(data), data);
+        for (String key : data.keys()) {
+            // the top level reference paths of older data never hold objects
+            if (top && key.startsWith(LEGACY_PREFIX))
+                continue;
+            PData.Type type = data.getType(key);
+            if (type == PData.Type.DATA)
+                collect(data.section(key), false);
+            else if (type == PData.Type.LIST)
+                collect(data.list(key), PrimitiveConverter.elementName(data, key));
+        }
+    }
+
+    private void collect(PList list, String elementName) {
+        for (int i = 0; i < list.size(); i++) {
+            PData.Type type = list.getType(i);
+            if (type == PData.Type.DATA) {
+                PData section = list.getSection(i);
+                if (elementName != null && section.contains("__id") && !PrimitiveConverter.hasOwnClass(section)) {
+                    if (elementClasses == null)
+                        elementClasses = new Slots();
+                    elementClasses.put(idOf(section), elementName);
+                }
+                collect(section, false);
+            } else if (type == PData.Type.LIST) {
+                collect(list.getList(i), null);
+            }
+        }
+    }
+
+    /**
+     * Maps ids to values. The ids written by {@link DataOut} are dense so they are kept in an array, but ids that are
+     * far too big for the amount of data (such as those in older data) fall back to a map.
+     */
+    static final class Slots {
+        private Object[] dense = new Object[16];
+        private HashMap<Long, Object> sparse;
+
+        Object get(long id) {
+            Object value = id >= 0 && id < dense.length ? dense[(int) id] : null;
+            // the id may have been put in the map before the array grew big enough to hold it
+            if (value == null && sparse != null)
+                value = sparse.get(id);
+            return value;
+        }
+
+        void put(long id, Object value) {
+            if (id >= 0 && id < dense.length) {
+                dense[(int) id] = value;
+            } else if (id >= 0 && id < Math.max(dense.length * 2L, 1024)) {
+                Object[] bigger = new Object[(int) Math.max(dense.length * 2L, id + 1)];
+                System.arraycopy(dense, 0, bigger, 0, dense.length);
+                dense = bigger;
+                dense[(int) id] = value;
+            } else {
+                if (sparse == null)
+                    sparse = new HashMap<>();
+                sparse.put(id, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.texxel.data;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * <p>Remembers the sections that {@link Versioned} objects were written into so that the next save can reuse them.
+ * When an object's version has not changed since it was last written, its converter is not called and the section
+ * is copied in from the cache instead. This makes the time taken to save depend on how many objects changed rather
+ * than on how many objects there are.</p>
+ *
+ * <p>Only objects whose sections did not hold any other objects (or references to them) are cached, since those
+ * objects have to be found and given ids every time the data is written. Sections holding only primitives, strings,
+ * scalars (such as enums and boxed ints) and plain sections and lists are fine.</p>
+ *
+ * <p>The same cache should be handed to each {@link DataOutRoot} the objects are saved with. The objects that were not
+ * written in a save are forgotten when the next save starts. A cache can only be used by one save at a time.</p>
+ */
+public final class SectionCache {
+
+    private static final class Entry {
+        final long version;
+        /** the entries the object wrote, without its class and id */
+        final PData section;
+        /** the save the entry was last used in */
+        int save;
+
+        Entry(long version, PData section, int save) {
+            this.version = version;
+            this.section = section;
+            this.save = save;
+        }
+    }
+
+    private final IdentityHashMap<Object, Entry> entries = new IdentityHashMap<>();
+    /** counts the saves that have used this cache */
+    private int save;
+
+    /**
+     * @return the number of objects with a cached section
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Forgets every cached section
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Called when a save starts. Forgets the objects that were not written in the last save
+     */
+    void beginSave() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().save != save)
+                it.remove();
+        }
+        save++;
+    }
+
+    /**
+     * @return the section the object was last written into if the object has not changed since, otherwise null
+     */
+    PData get(Object obj) {
+        if (!(obj instanceof Versioned))
+            return null;
+        Entry entry = entries.get(obj);
+        if (entry == null)
+            return null;
+        if (entry.version != ((Versioned) obj).dataVersion()) {
+            entries.remove(obj);
+            return null;
+        }
+        entry.save = save;
+        return entry.section;
+    }
+
+    /**
+     * Remembers the section an object was just written into if the object can be cached
+     * @param version the version of the object from before it was written
+     * @param written the section, including the object's class and id
+     */
+    void put(Object obj, long version, PData written) {
+        if (holdsObjects(written, true))
+            return;
+        PData section = written.copy();
+        section.delete("__classname");
+        section.delete("__type");
+        section.delete("__id");
+        entries.put(obj, new Entry(version, section, save));
+    }
+
+    /**
+     * @param top true for the object's own section, which always has an id
+     * @return true if the data holds an object or a reference to one
+     */
+    private static boolean holdsObjects(PData data, boolean top) {
+        for (String key : data.keys()) {
+            int entry = data.entry(key);
+            switch (data.typeAt(entry)) {
+                case REFERENCE:
+                    return true;
+                case DATA:
+                    if (holdsObjects((PData) data.objectAt(entry), false))
+                        return true;
+                    break;
+                case LIST:
+                    if (holdsObjects((PList) data.objectAt(entry)))
+                        return true;
+                    break;
+                default:
+                    if (!top && key.equals("__id"))
+                        return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean holdsObjects(PList list) {
+        for (int i = 0; i < list.size(); i++) {
+            switch (list.getType(i)) {
+                case REFERENCE:
+                    return true;
+                case DATA:
+                    if (holdsObjects(list.getSection(i), false))
+                        return true;
+                    break;
+                case LIST:
+                    if (holdsObjects(list.getList(i)))
+                        return true;
+                    break;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.DataSerializationException;
+import com.github.texxel.data.exceptions.InvalidDataException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Sends the sections of a {@link DataOut} to a {@link DataSink} while they are being written instead of keeping the
+ * whole tree in memory. Only the sections from the root down to the one currently being written are open. Writing to
+ * an open section finishes every section that was opened inside of it, and a finished section can never be written to
+ * again. Each open section holds on to the values written into it until a section is opened inside of it or it is
+ * finished, so the memory used by the data only depends on how deep the data is. Since the values have been sent
+ * by then, a key that was written before a section was opened inside of it cannot be written again either; only the
+ * names of such keys are remembered.
+ *
+ * <p>A list is only started once something is written into it. That way the class recorded next to the list when its
+ * first object is added (see {@link DataOutList#elementClass}) reaches the sink before the list does, which lets
+ * streamed readers know the class before they read the list.</p>
+ */
+final class SectionStream {
+
+    private final DataSink sink;
+    /** the open sections (DataOuts and DataOutLists) from the root down */
+    private final ArrayList<Object> open = new ArrayList<>();
+
+    SectionStream(DataSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Opens the root section
+     */
+    void begin(DataOut root) {
+        try {
+            sink.beginSection();
+        } catch (IOException e) {
+            throw new DataSerializationException("Couldn't write the data", e);
+        }
+        open.add(root);
+    }
+
+    /**
+     * Must be called before a section is changed. Finishes all the sections inside of it.
+     * @param section the DataOut or DataOutList about to be changed
+     * @throws InvalidDataException if the section has already been finished
+     */
+    void enter(Object section) {
+        int at = open.lastIndexOf(section);
+        if (at < 0)
+            throw new InvalidDataException("Cannot write to a section that has already been streamed out");
+        try {
+            while (open.size() > at + 1)
+                close();
+        } catch (IOException e) {
+            throw new DataSerializationException("Couldn't write the data", e);
+        }
+    }
+
+    /**
+     * Opens a section that was just added to the innermost open section
+     * @param section the new DataOut or DataOutList
+     */
+    void open(Object section) {
+        Object parent = open.get(open.size() - 1);
+        try {
+            start();
+            if (section instanceof DataOut) {
+                DataOut data = (DataOut) section;
+                flush(parent, data.pData);
+                if (data.container instanceof PData)
+                    sink.key(data.key);
+                sink.beginSection();
+            } else {
+                DataOutList list = (DataOutList) section;
+                flush(parent, list.list);
+            }
+        } catch (IOException e) {
+            throw new DataSerializationException("Couldn't write the data", e);
+        }
+        open.add(section);
+    }
+
+    /**
+     * Finishes every open section including the root and flushes the sink
+     */
+    void finish() {
+        try {
+            while (!open.isEmpty())
+                close();
+            sink.flush();
+        } catch (IOException e) {
+            throw new DataSerializationException("Couldn't write the data", e);
+        }
+    }
+
+    private void close() throws IOException {
+        start();
+        Object section = open.remove(open.size() - 1);
+        flush(section, null);
+        if (section instanceof DataOut)
+            sink.endSection();
+        else
+            sink.endList();
+    }
+
+    /**
+     * Starts every open list that has not been started yet
+     */
+    private void start() throws IOException {
+        for (int i = 1; i < open.size(); i++) {
+            Object section = open.get(i);
+            if (section instanceof DataOutList && !((DataOutList) section).started) {
+                DataOutList list = (DataOutList) section;
+                list.started = true;
+                // the list is still the last thing in its parent, so anything written to the parent since can go first
+                flush(open.get(i - 1), list.list);
+                if (list.key != null)
+                    sink.key(list.key);
+                sink.beginList();
+            }
+        }
+    }
+
+    /**
+     * Sends the values held by a section to the sink and then forgets them
+     * @param skip the PData or PList of a section that has just been added and is about to be opened
+     */
+    private void flush(Object section, Object skip) throws IOException {
+        if (section instanceof DataOut) {
+            DataOut out = (DataOut) section;
+            PData data = out.pData;
+            for (String key : data.keys()) {
+                // the section stays open, so it must remember the key to stop it from being written again
+                if (skip != null) {
+                    if (out.streamed == null)
+                        out.streamed = new HashSet<>();
+                    out.streamed.add(key);
+                }
+                PData.Type type = data.getType(key);
+                if ((type == PData.Type.DATA && data.section(key) == skip)
+                        || (type == PData.Type.LIST && data.list(key) == skip))
+                    continue;
+                sink.key(key);
+                write(data, key, type);
+            }
+            data.clear();
+        } else {
+            DataOutList list = (DataOutList) section;
+            PList values = list.list;
+            int size = values.size();
+            for (int i = 0; i < size; i++) {
+                // a new section is always the last value
+                if (i == size - 1 && values.objectAt(i) == skip && skip != null)
+                    break;
+                write(values, i);
+            }
+            list.flushed += size;
+            values.clear();
+        }
+    }
+
+    private void write(PData data, String key, PData.Type type) throws IOException {
+        switch (type) {
+            case DOUBLE:
+                sink.value(data.getDouble(key));
+                break;
+            case LONG:
+                sink.value(data.getLong(key));
+                break;
+            case STRING:
+                sink.value(data.getString(key));
+                break;
+            case BOOLEAN:
+                sink.value(data.getBoolean(key));
+                break;
+            case NULL:
+                sink.nullValue();
+                break;
+            case REFERENCE:
+                sink.reference(data.getReference(key));
+                break;
+            case LONG_ARRAY:
+                sink.array(data.getLongArray(key));
+                break;
+            case DOUBLE_ARRAY:
+                sink.array(data.getDoubleArray(key));
+                break;
+            case BYTE_ARRAY:
+                sink.array(data.getByteArray(key));
+                break;
+            case DATA: {
+                PData section = data.section(key);
+                sink.beginSection();
+                for (String inner : section.keys()) {
+                    sink.key(inner);
+                    write(section, inner, section.getType(inner));
+                }
+                sink.endSection();
+                break;
+            }
+            case LIST: {
+                PList list = data.list(key);
+                sink.beginList();
+                for (int i = 0; i < list.size(); i++)
+                    write(list, i);
+                sink.endList();
+                break;
+            }
+            default:
+                throw new InvalidDataException("Unsupported type " + type);
+        }
+    }
+
+    private void write(PList list, int index) throws IOException {
+        switch (list.getType(index)) {
+            case DOUBLE:
+                sink.value(list.getDouble(index));
+                break;
+            case LONG:
+                sink.value(list.getLong(index));
+                break;
+            case STRING:
+                sink.value(list.getString(index));
+                break;
+            case BOOLEAN:
+                sink.value(list.getBoolean(index));
+                break;
+            case NULL:
+                sink.nullValue();
+                break;
+            case REFERENCE:
+                sink.reference(list.getReference(index));
+                break;
+            case DATA: {
+                PData section = list.getSection(index);
+                sink.beginSection();
+                for (String key : section.keys()) {
+                    sink.key(key);
+                    write(section, key, section.getType(key));
+                }
+                sink.endSection();
+                break;
+            }
+            case LIST: {
+                PList inner = list.getList(index);
+                sink.beginList();
+                for (int i = 0; i < inner.size(); i++)
+                    write(inner, i);
+                sink.endList();
+                break;
+            }
+            default:
+                throw new InvalidDataException("Unsupported type " + list.getType(index));
+        }
+    }
+}
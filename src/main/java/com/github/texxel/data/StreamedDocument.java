@@ -0,0 +1,216 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.DataSerializationException;
+import com.github.texxel.data.exceptions.MissingDataException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * <p>Reads a document out of a stream only as far as the data has been asked for. Every section and list is read in
+ * lazily (see {@link PendingEntries}) so looking up a key only reads up to that key. Since the stream can only be read
+ * forwards, only the sections from the root down to the one last read from are still being read in. Reading from a
+ * section further up first reads in the rest of the sections below it.</p>
+ *
+ * <p>Objects that have been read in are forgotten, along with the rest of their section. Lists are read forwards only
+ * (see {@link PList#forward}). References to objects further on in the document are found by reading ahead until the
+ * object is found; everything passed over on the way is kept so it can still be read.</p>
+ */
+final class StreamedDocument {
+
+    private final DocumentCursor cursor;
+    /** the sections and lists that are part way through being read, from the root down */
+    private final ArrayList<StreamedEntries> open = new ArrayList<>();
+    /** the sections of objects that have been found but not read in yet */
+    private final ReferenceTable.Slots sections = new ReferenceTable.Slots();
+    /** the class names of those objects that were in lists that recorded the class once for the whole list */
+    private final ReferenceTable.Slots elementClasses = new ReferenceTable.Slots();
+    /** true once an object with a string id (from before ids were numbers) has been found */
+    private boolean stringIds;
+
+    /**
+     * @param cursor a cursor that has just entered the root section
+     */
+    StreamedDocument(DocumentCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return the root of the document. Nothing is read until the root is used
+     */
+    PData root() {
+        PData root = new PData();
+        StreamedEntries entries = new StreamedEntries(this, root, null, false);
+        root.pending = entries;
+        open.add(entries);
+        return root;
+    }
+
+    /**
+     * Finds the section an object was written into, reading ahead if the section has not been read yet
+     * @throws MissingDataException if no object has the id
+     */
+    PData section(long id) {
+        PData section = (PData) sections.get(id);
+        while (section == null && !open.isEmpty()) {
+            StreamedEntries last = open.get(open.size() - 1);
+            if (last.owner instanceof PData)
+                ((PData) last.owner).decodeNext();
+            else
+                ((PList) last.owner).decodeNext();
+            section = (PData) sections.get(id);
+        }
+        if (section == null)
+            throw new MissingDataException("No object with the id " + id);
+        return section;
+    }
+
+    /**
+     * Gets the class of an object that was written into a list without its classname. Must only be called after the
+     * object's section has been found with {@link #section(long)}
+     */
+    String elementClass(long id) {
+        return (String) elementClasses.get(id);
+    }
+
+    /**
+     * @return true if the document has been found to be written before ids were numbers (see
+     * {@link ReferenceTable#isLegacy()})
+     */
+    boolean hasStringIds() {
+        return stringIds;
+    }
+
+    /**
+     * Forgets the section of an object that has been read in. The rest of the section is read past without being kept
+     * and only the header is left so that reading the section again finds the object that was already read in
+     */
+    void release(PData section, long id) {
+        sections.put(id, null);
+        elementClasses.put(id, null);
+        if (section.pending instanceof StreamedEntries)
+            ((StreamedEntries) section.pending).discard();
+        else
+            section.retain(StreamedEntries.HEADER);
+    }
+
+    /**
+     * Reads the next value of a section or list
+     * @return true if there are more values to read
+     */
+    boolean decodeNext(StreamedEntries entries) {
+        try {
+            // the sections below have to be read past first
+            while (open.get(open.size() - 1) != entries) {
+                StreamedEntries last = open.get(open.size() - 1);
+                if (last.owner instanceof PData)
+                    ((PData) last.owner).decode();
+                else
+                    ((PList) last.owner).size();
+            }
+            if (!cursor.next(entries.owner instanceof PList)) {
+                open.remove(open.size() - 1);
+                if (open.isEmpty())
+                    cursor.close();
+                return false;
+            }
+            read(entries);
+            return true;
+        } catch (IOException e) {
+            throw new DataSerializationException("Couldn't load the data", e);
+        }
+    }
+
+    /**
+     * Stores the value that the cursor just read
+     */
+    private void read(StreamedEntries entries) {
+        String key = cursor.key;
+        PData.Type type = cursor.type;
+        if (key != null && !entries.pastHeader && !key.startsWith("__")) {
+            entries.pastHeader = true;
+            // only objects are worth keeping when nothing else holds onto the section
+            if (entries.orphan && entries.id < 0)
+                entries.discard();
+        }
+
+        if (type == PData.Type.DATA || type == PData.Type.LIST) {
+            boolean orphan = entries.discard;
+            Object child;
+            StreamedEntries childEntries;
+            if (type == PData.Type.DATA) {
+                PData section = new PData();
+                child = section;
+                childEntries = new StreamedEntries(this, section, entries.elementName, orphan);
+                section.pending = childEntries;
+            } else {
+                PList list = new PList();
+                list.forward = true;
+                child = list;
+                String elementName = entries.owner instanceof PData && !orphan
+                        ? PrimitiveConverter.elementName((PData) entries.owner, key) : null;
+                childEntries = new StreamedEntries(this, list, elementName, orphan);
+                // lists have nothing to keep when nothing holds onto them, but objects in them may still be kept
+                childEntries.discard = orphan;
+                list.pending = childEntries;
+            }
+            open.add(childEntries);
+            if (!entries.discard) {
+                if (entries.owner instanceof PData) {
+                    if (type == PData.Type.DATA)
+                        ((PData) entries.owner).setSection(key, (PData) child);
+                    else
+                        ((PData) entries.owner).setList(key, (PList) child);
+                } else {
+                    if (type == PData.Type.DATA)
+                        ((PList) entries.owner).addSection((PData) child);
+                    else
+                        ((PList) entries.owner).addList((PList) child);
+                }
+            }
+            return;
+        }
+        if (entries.discard)
+            return;
+
+        if (entries.owner instanceof PList) {
+            PList list = (PList) entries.owner;
+            switch (type) {
+                case LONG: list.add(cursor.primitive); break;
+                case DOUBLE: list.add(Double.longBitsToDouble(cursor.primitive)); break;
+                case BOOLEAN: list.add(cursor.primitive != 0); break;
+                case STRING: list.add((String) cursor.object); break;
+                case REFERENCE: list.addReference(cursor.primitive); break;
+                // lists cannot hold packed arrays
+                case LONG_ARRAY:
+                case DOUBLE_ARRAY:
+                case BYTE_ARRAY: list.addList(PList.fromArray(cursor.object)); break;
+                default: list.addNull();
+            }
+            return;
+        }
+
+        PData pData = (PData) entries.owner;
+        switch (type) {
+            case LONG: pData.set(key, cursor.primitive); break;
+            case DOUBLE: pData.set(key, Double.longBitsToDouble(cursor.primitive)); break;
+            case BOOLEAN: pData.set(key, cursor.primitive != 0); break;
+            case STRING: pData.set(key, (String) cursor.object); break;
+            case REFERENCE: pData.setReference(key, cursor.primitive); break;
+            case LONG_ARRAY: pData.setArray(key, (long[]) cursor.object); break;
+            case DOUBLE_ARRAY: pData.setArray(key, (double[]) cursor.object); break;
+            case BYTE_ARRAY: pData.setArray(key, (byte[]) cursor.object); break;
+            default: pData.setNull(key);
+        }
+        if (key.equals("__id")) {
+            // the class is always written before the id
+            long id = ReferenceTable.idOf(pData);
+            entries.id = id;
+            if (type == PData.Type.STRING)
+                stringIds = true;
+            sections.put(id, pData);
+            if (entries.elementName != null && !PrimitiveConverter.hasOwnClass(pData))
+                elementClasses.put(id, entries.elementName);
+        }
+    }
+}
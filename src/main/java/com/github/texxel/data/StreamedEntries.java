@@ -0,0 +1,81 @@
+package com.github.texxel.data;
+
+/**
+ * The entries of a section or list that are still waiting to be read out of a {@link StreamedDocument}.
+ */
+final class StreamedEntries extends PendingEntries {
+
+    /** the keys that are always written before any other key of an object */
+    static final String[] HEADER = { "__type", "__classname", "__id" };
+
+    final StreamedDocument document;
+    /** the PData or PList that the entries are read into */
+    final Object owner;
+    /** for lists, the class recorded for the objects in the list that have no classname of their own */
+    final String elementName;
+    /**
+     * true if nothing holds onto the section, so it is only kept if it turns out to be an object that may be
+     * referenced later
+     */
+    final boolean orphan;
+    /** true if the rest of the values are read past without being kept */
+    boolean discard;
+    /** true once a key that is not part of the header has been read */
+    boolean pastHeader;
+    /** the id of the object in the section or -1 */
+    long id = -1;
+
+    StreamedEntries(StreamedDocument document, Object owner, String elementName, boolean orphan) {
+        this.document = document;
+        this.owner = owner;
+        this.elementName = elementName;
+        this.orphan = orphan;
+    }
+
+    @Override
+    boolean decodeNext(PData pData) {
+        return document.decodeNext(this);
+    }
+
+    boolean decodeNext(PList list) {
+        return document.decodeNext(this);
+    }
+
+    @Override
+    boolean mightHave(PData pData, String key) {
+        if (discard)
+            return false;
+        if (pastHeader) {
+            for (String header : HEADER) {
+                if (header.equals(key))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops keeping the values. Called once nothing will read the section or list again. Objects are still kept
+     * until they have been read in since they may be referenced somewhere further on.
+     */
+    void abandon() {
+        if (id < 0)
+            discard();
+    }
+
+    /**
+     * Forgets all the values read so far, except for the header, and stops keeping the rest of them
+     */
+    void discard() {
+        discard = true;
+        if (owner instanceof PData) {
+            // the header is kept so the section can still be matched to the object that was read in from it
+            ((PData) owner).retain(HEADER);
+        } else {
+            PList list = (PList) owner;
+            StreamedEntries pending = list.pending;
+            list.clear();
+            list.pending = pending;
+        }
+    }
+}
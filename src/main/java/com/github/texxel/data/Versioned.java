@@ -0,0 +1,17 @@
+package com.github.texxel.data;
+
+/**
+ * Lets an object tell a {@link SectionCache} when it has changed, so that saves can reuse the section that the object
+ * was last written into instead of writing it again. The object must still have a converter (for example, by being
+ * {@link DataSerializable}).
+ */
+public interface Versioned {
+
+    /**
+     * Gets a number that changes every time the data the object would write changes. The simplest way is to increase
+     * a counter every time one of the object's fields is set.
+     * @return the current version of the object
+     */
+    long dataVersion();
+
+}
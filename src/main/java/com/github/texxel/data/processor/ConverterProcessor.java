@@ -0,0 +1,166 @@
+package com.github.texxel.data.processor;
+
+import com.github.texxel.data.GenerateConverter;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates a {@link com.github.texxel.data.GeneratedConverter} for every class marked with {@link GenerateConverter}
+ * and lists them in {@code META-INF/services} so the {@link com.github.texxel.data.ConverterRegistry} can find them.
+ * The converter for {@code pkg.Outer.Inner} is called {@code pkg.Outer_Inner_DataConverter}.
+ */
+@SupportedAnnotationTypes("com.github.texxel.data.GenerateConverter")
+public class ConverterProcessor extends AbstractProcessor {
+
+    static final String SERVICE_FILE = "META-INF/services/com.github.texxel.data.GeneratedConverter";
+    private static final String SUFFIX = "_DataConverter";
+
+    private final List<String> generated = new ArrayList<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateConverter.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@GenerateConverter can only be used on classes");
+                continue;
+            }
+            generate((TypeElement) element);
+        }
+        if (roundEnv.processingOver() && !generated.isEmpty())
+            writeServiceFile();
+        return true;
+    }
+
+    private void generate(TypeElement type) {
+        TypeMirror serializable = processingEnv.getElementUtils()
+                .getTypeElement("com.github.texxel.data.DataSerializable").asType();
+        if (!processingEnv.getTypeUtils().isAssignable(type.asType(), serializable)) {
+            error(type, type + " must implement DataSerializable");
+            return;
+        }
+        Set<Modifier> modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)) {
+            error(type, type + " cannot be abstract or private");
+            return;
+        }
+        if (type.getNestingKind() != NestingKind.TOP_LEVEL && !modifiers.contains(Modifier.STATIC)) {
+            error(type, type + " must be static");
+            return;
+        }
+
+        // use the DataIn constructor if there is one, otherwise the empty constructor
+        ExecutableElement dataConstructor = null;
+        ExecutableElement emptyConstructor = null;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            if (parameters.size() == 1
+                    && parameters.get(0).asType().toString().equals("com.github.texxel.data.DataIn"))
+                dataConstructor = constructor;
+            else if (parameters.isEmpty())
+                emptyConstructor = constructor;
+        }
+        ExecutableElement constructor = dataConstructor != null ? dataConstructor : emptyConstructor;
+        if (constructor == null) {
+            error(type, type + " needs a constructor that accepts DataIn or an empty constructor");
+            return;
+        }
+        if (constructor.getModifiers().contains(Modifier.PRIVATE)) {
+            error(constructor, "The constructor of " + type + " cannot be private");
+            return;
+        }
+
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String typeName = type.getQualifiedName().toString();
+        String simpleName = packageName.isEmpty() ? typeName : typeName.substring(packageName.length() + 1);
+        String converterName = simpleName.replace('.', '_') + SUFFIX;
+        String qualifiedConverter = packageName.isEmpty() ? converterName : packageName + "." + converterName;
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedConverter, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source(packageName, converterName, typeName, dataConstructor != null));
+            }
+        } catch (IOException e) {
+            error(type, "Failed to write " + qualifiedConverter + ": " + e);
+            return;
+        }
+        generated.add(qualifiedConverter);
+    }
+
+    /**
+     * Creates the source of a converter. Subclasses of the type are passed on to the usual
+     * {@link com.github.texxel.data.serializers.DataSerializer}
+     */
+    static String source(String packageName, String converterName, String typeName, boolean takesData) {
+        StringBuilder out = new StringBuilder();
+        if (!packageName.isEmpty())
+            out.append("package ").append(packageName).append(";\n\n");
+        out.append("/**\n")
+           .append(" * Generated for {@link ").append(typeName).append("}. Do not edit.\n")
+           .append(" */\n")
+           .append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+           .append("public final class ").append(converterName)
+           .append(" implements com.github.texxel.data.GeneratedConverter<").append(typeName).append("> {\n\n")
+           .append("    private static final com.github.texxel.data.serializers.DataSerializer fallback =\n")
+           .append("            new com.github.texxel.data.serializers.DataSerializer();\n\n")
+           .append("    @Override\n")
+           .append("    public Class<").append(typeName).append("> type() {\n")
+           .append("        return ").append(typeName).append(".class;\n")
+           .append("    }\n\n")
+           .append("    @Override\n")
+           .append("    public void serialize(").append(typeName)
+           .append(" obj, com.github.texxel.data.DataOut bundle) {\n")
+           .append("        obj.bundleInto(bundle);\n")
+           .append("    }\n\n")
+           .append("    @Override\n")
+           .append("    public ").append(typeName).append(" create(com.github.texxel.data.DataIn bundle, Class<? extends ")
+           .append(typeName).append("> stored) {\n")
+           .append("        if (stored != ").append(typeName).append(".class)\n")
+           .append("            return (").append(typeName).append(") fallback.create(bundle, (Class) stored);\n")
+           .append("        return new ").append(typeName).append(takesData ? "(bundle);\n" : "();\n")
+           .append("    }\n\n")
+           .append("    @Override\n")
+           .append("    public void initialise(com.github.texxel.data.DataIn bundle, ").append(typeName).append(" obj) {\n")
+           .append("        if (obj.getClass() != ").append(typeName).append(".class)\n")
+           .append("            fallback.initialise(bundle, obj);\n")
+           .append("    }\n")
+           .append("}\n");
+        return out.toString();
+    }
+
+    private void writeServiceFile() {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (Writer writer = file.openWriter()) {
+                for (String name : generated)
+                    writer.write(name + "\n");
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write " + SERVICE_FILE + ": " + e);
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
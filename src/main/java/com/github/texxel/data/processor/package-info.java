@@ -0,0 +1,6 @@
+/**
+ * An annotation processor that writes converters at compile time for classes marked with
+ * {@link com.github.texxel.data.GenerateConverter}. The processor is opt-in: add it to the compiler with
+ * {@code -processor com.github.texxel.data.processor.ConverterProcessor}.
+ */
+package com.github.texxel.data.processor;
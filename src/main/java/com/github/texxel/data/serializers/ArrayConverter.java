@@ -2,7 +2,9 @@ package com.github.texxel.data.serializers;
 
 import com.github.texxel.data.DataConverter;
 import com.github.texxel.data.DataIn;
+import com.github.texxel.data.DataInList;
 import com.github.texxel.data.DataOut;
+import com.github.texxel.data.DataOutList;
 
 import java.lang.reflect.Array;
 
@@ -13,52 +15,102 @@ public class ArrayConverter implements DataConverter<Object> {
 
     @Override
     public void serialize (Object array, DataOut out) {
-        int size = Array.getLength(array);
-        out.write("size", size);
-        for (int i = 0; i < size; i++) {
-            Class type = array.getClass().getComponentType();
-            String key = Integer.toString(i);
-            if (type.isPrimitive()) {
-                // the class would work without this monstrosity, but it is
-                // needed so that the output gets primitives values written
-                // instead of objects (which looks ugly in the final form)
-                if (array instanceof int[])
-                    out.write(key, ((int[])array)[i]);
-                else if (array instanceof boolean[])
-                    out.write(key, ((boolean[])array)[i]);
-                else if (array instanceof float[])
-                    out.write(key, ((float[])array)[i]);
-                else if (array instanceof double[])
-                    out.write(key, ((double[])array)[i]);
-                else if (array instanceof long[])
-                    out.write(key, ((long[])array)[i]);
-                else if (array instanceof char[])
-                    out.write(key, ((char[])array)[i]);
-                else if (array instanceof short[])
-                    out.write(key, ((short[])array)[i]);
-                else if (array instanceof byte[])
-                    out.write(key, ((byte[])array)[i]);
-                else
-                    throw new RuntimeException("This should never happen");
-            } else {
-                out.write(key, Array.get(array, i));
-            }
+        Class type = array.getClass().getComponentType();
+        if (type.isPrimitive()) {
+            // primitive arrays are bulk copied into a single packed value
+            if (array instanceof int[])
+                out.writeArray("values", (int[]) array);
+            else if (array instanceof boolean[])
+                out.writeArray("values", (boolean[]) array);
+            else if (array instanceof float[])
+                out.writeArray("values", (float[]) array);
+            else if (array instanceof double[])
+                out.writeArray("values", (double[]) array);
+            else if (array instanceof long[])
+                out.writeArray("values", (long[]) array);
+            else if (array instanceof char[])
+                out.writeArray("values", (char[]) array);
+            else if (array instanceof short[])
+                out.writeArray("values", (short[]) array);
+            else if (array instanceof byte[])
+                out.writeArray("values", (byte[]) array);
+            else
+                throw new RuntimeException("This should never happen");
+            return;
         }
+        DataOutList values = out.createList("values");
+        for (Object value : (Object[]) array)
+            values.add(value);
     }
 
     @Override
     public Object create (DataIn in, Class type) {
-        int length = in.readInt("size");
         Class componentType = type.getComponentType();
-        return Array.newInstance(componentType, length);
+        if (!in.has("values")) {
+            // data written before lists were supported
+            return Array.newInstance(componentType, in.readInt("size"));
+        }
+        if (componentType.isPrimitive()) {
+            // primitives cannot reference anything so the whole array can be made here
+            return readPacked(in, componentType);
+        }
+        return Array.newInstance(componentType, in.readList("values").size());
     }
 
     @Override
     public void initialise (DataIn in, Object array) {
-        int length = Array.getLength(array);
         Class componentType = array.getClass().getComponentType();
-        for (int i = 0; i < length; i++) {
-            Array.set(array, i, in.read(componentType, Integer.toString(i)));
+        int length = Array.getLength(array);
+        if (!in.has("values")) {
+            for (int i = 0; i < length; i++) {
+                Array.set(array, i, in.read(componentType, Integer.toString(i)));
+            }
+        } else if (!componentType.isPrimitive()) {
+            DataInList values = in.readList("values");
+            for (int i = 0; i < length; i++) {
+                Array.set(array, i, values.read(componentType, i));
+            }
+        }
+    }
+
+    private static Object readPacked (DataIn in, Class type) {
+        if (type == long.class) {
+            return in.readLongArray("values").clone();
+        } else if (type == double.class) {
+            return in.readDoubleArray("values").clone();
+        } else if (type == byte.class) {
+            return in.readByteArray("values").clone();
+        } else if (type == int.class) {
+            long[] values = in.readLongArray("values");
+            int[] array = new int[values.length];
+            for (int i = 0; i < values.length; i++)
+                array[i] = (int) values[i];
+            return array;
+        } else if (type == short.class) {
+            long[] values = in.readLongArray("values");
+            short[] array = new short[values.length];
+            for (int i = 0; i < values.length; i++)
+                array[i] = (short) values[i];
+            return array;
+        } else if (type == char.class) {
+            long[] values = in.readLongArray("values");
+            char[] array = new char[values.length];
+            for (int i = 0; i < values.length; i++)
+                array[i] = (char) values[i];
+            return array;
+        } else if (type == float.class) {
+            double[] values = in.readDoubleArray("values");
+            float[] array = new float[values.length];
+            for (int i = 0; i < values.length; i++)
+                array[i] = (float) values[i];
+            return array;
+        } else if (type == boolean.class) {
+            byte[] values = in.readByteArray("values");
+            boolean[] array = new boolean[values.length];
+            for (int i = 0; i < values.length; i++)
+                array[i] = values[i] != 0;
+            return array;
         }
+        throw new RuntimeException("This should never happen");
     }
 }
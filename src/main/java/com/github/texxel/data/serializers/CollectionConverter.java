@@ -2,7 +2,9 @@ package com.github.texxel.data.serializers;
 
 import com.github.texxel.data.DataConverter;
 import com.github.texxel.data.DataIn;
+import com.github.texxel.data.DataInList;
 import com.github.texxel.data.DataOut;
+import com.github.texxel.data.DataOutList;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -13,11 +15,9 @@ public class CollectionConverter implements DataConverter<Collection> {
 
     @Override
     public void serialize (Collection set, DataOut bundle) {
-        int i = 0;
-        bundle.write("size", set.size());
+        DataOutList values = bundle.createList("values");
         for (Object obj : set) {
-            bundle.write(Integer.toString(i), obj);
-            i++;
+            values.add(obj);
         }
     }
 
@@ -35,6 +35,14 @@ public class CollectionConverter implements DataConverter<Collection> {
 
     @Override
     public void initialise (DataIn bundle, Collection collection) {
+        if (bundle.has("values")) {
+            DataInList values = bundle.readList("values");
+            for (int i = 0; values.has(i); i++) {
+                collection.add(values.read(Object.class, i));
+            }
+            return;
+        }
+        // data written before lists were supported
         int size = bundle.readInt("size");
         for (int i = 0; i < size; i++) {
             Object o = bundle.read(Object.class, Integer.toString(i));
@@ -11,9 +11,20 @@ import com.github.texxel.data.serializers.ObjectCreator;
  */
 public class DataSerializer implements DataConverter<DataSerializable> {
 
+    /**
+     * Changes how DataSerializables are created. By default, a {@link JniInstantiator} is used which runs constructors
+     * on the allocated object itself, but must load a native library to do so. A {@link ReflectionInstantiator} only
+     * needs the standard JVM, but breaks classes whose constructors leak {@code this}.
+     * @param instantiator the instantiator to use from now on
+     */
+    public static void setInstantiator(Instantiator instantiator) {
+        if (instantiator == null)
+            throw new NullPointerException("instantiator cannot be null");
+        ObjectCreator.instantiator = instantiator;
+    }
+
     @Override
     public void serialize (DataSerializable obj, DataOut bundle) {
-        bundle.write("__classname", obj.getClass().getName());
         obj.bundleInto(bundle);
     }
 
@@ -0,0 +1,269 @@
+package com.github.texxel.data.serializers;
+
+import com.github.texxel.data.DataConverter;
+import com.github.texxel.data.DataIn;
+import com.github.texxel.data.DataOut;
+import com.github.texxel.data.exceptions.DataSerializationException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A converter that saves every field of an object so that plain objects can be saved without writing
+ * {@link com.github.texxel.data.DataSerializable#bundleInto(DataOut)} or a DataIn constructor. It must be registered
+ * for the classes that should use it, for example {@code ConverterRegistry.register(Point.class, new FieldConverter())}.
+ * Registering it for a class also makes it the converter of the class' subclasses.</p>
+ *
+ * <p>All fields that are not static or transient are saved (including those of super classes) under the name of the
+ * field. If a super class has a field with the same name as a subclass, the super class' field is saved as
+ * {@code SuperClass.field}. Objects are created without calling any constructor, and fields that are missing from the
+ * data are left at their default value.</p>
+ *
+ * <p>The fields of each class are found once and then read and written with typed accessors, so primitive fields are
+ * never boxed.</p>
+ */
+public class FieldConverter implements DataConverter<Object> {
+
+    private final ConcurrentHashMap<Class, Accessor[]> accessors = new ConcurrentHashMap<>();
+
+    @Override
+    public void serialize (Object obj, DataOut bundle) {
+        try {
+            for (Accessor accessor : accessorsOf(obj.getClass()))
+                accessor.write(obj, bundle);
+        } catch (IllegalAccessException e) {
+            throw new DataSerializationException("Failed to read fields of " + obj.getClass(), e);
+        }
+    }
+
+    @Override
+    public Object create (DataIn bundle, Class<?> stored) {
+        return ObjectCreator.create(stored);
+    }
+
+    @Override
+    public void initialise (DataIn bundle, Object obj) {
+        try {
+            for (Accessor accessor : accessorsOf(obj.getClass())) {
+                if (bundle.has(accessor.key))
+                    accessor.read(obj, bundle);
+            }
+        } catch (IllegalAccessException e) {
+            throw new DataSerializationException("Failed to set fields of " + obj.getClass(), e);
+        }
+    }
+
+    private Accessor[] accessorsOf (Class clazz) {
+        Accessor[] found = accessors.get(clazz);
+        if (found == null) {
+            found = findAccessors(clazz);
+            accessors.put(clazz, found);
+        }
+        return found;
+    }
+
+    private static Accessor[] findAccessors (Class clazz) {
+        ArrayList<Accessor> found = new ArrayList<>();
+        HashSet<String> keys = new HashSet<>();
+        for (Class c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic())
+                    continue;
+                field.setAccessible(true);
+                String key = field.getName();
+                if (!keys.add(key)) {
+                    key = c.getSimpleName() + "." + key;
+                    keys.add(key);
+                }
+                found.add(accessorFor(field, key));
+            }
+        }
+        return found.toArray(new Accessor[found.size()]);
+    }
+
+    private static Accessor accessorFor (Field field, String key) {
+        Class type = field.getType();
+        if (type == int.class)
+            return new IntAccessor(field, key);
+        if (type == long.class)
+            return new LongAccessor(field, key);
+        if (type == double.class)
+            return new DoubleAccessor(field, key);
+        if (type == float.class)
+            return new FloatAccessor(field, key);
+        if (type == boolean.class)
+            return new BooleanAccessor(field, key);
+        if (type == short.class)
+            return new ShortAccessor(field, key);
+        if (type == byte.class)
+            return new ByteAccessor(field, key);
+        if (type == char.class)
+            return new CharAccessor(field, key);
+        return new ObjectAccessor(field, key);
+    }
+
+    /**
+     * Moves a single field between an object and data
+     */
+    private static abstract class Accessor {
+        final Field field;
+        final String key;
+
+        Accessor (Field field, String key) {
+            this.field = field;
+            this.key = key;
+        }
+
+        abstract void write (Object obj, DataOut data) throws IllegalAccessException;
+
+        abstract void read (Object obj, DataIn data) throws IllegalAccessException;
+    }
+
+    private static final class IntAccessor extends Accessor {
+        IntAccessor (Field field, String key) {
+            super(field, key);
+        }
+
+        @Override
+        void write (Object obj, DataOut data) throws IllegalAccessException {
+            data.write(key, field.getInt(obj));
+        }
+
+        @Override
+        void read (Object obj, DataIn data) throws IllegalAccessException {
+            field.setInt(obj, data.readInt(key));
+        }
+    }
+
+    private static final class LongAccessor extends Accessor {
+        LongAccessor (Field field, String key) {
+            super(field, key);
+        }
+
+        @Override
+        void write (Object obj, DataOut data) throws IllegalAccessException {
+            data.write(key, field.getLong(obj));
+        }
+
+        @Override
+        void read (Object obj, DataIn data) throws IllegalAccessException {
+            field.setLong(obj, data.readLong(key));
+        }
+    }
+
+    private static final class DoubleAccessor extends Accessor {
+        DoubleAccessor (Field field, String key) {
+            super(field, key);
+        }
+
+        @Override
+        void write (Object obj, DataOut data) throws IllegalAccessException {
+            data.write(key, field.getDouble(obj));
+        }
+
+        @Override
+        void read (Object obj, DataIn data) throws IllegalAccessException {
+            field.setDouble(obj, data.readDouble(key));
+        }
+    }
+
+    private static final class FloatAccessor extends Accessor {
+        FloatAccessor (Field field, String key) {
+            super(field, key);
+        }
+
+        @Override
+        void write (Object obj, DataOut data) throws IllegalAccessException {
+            data.write(key, field.getFloat(obj));
+        }
+
+        @Override
+        void read (Object obj, DataIn data) throws IllegalAccessException {
+            field.setFloat(obj, data.readFloat(key));
+        }
+    }
+
+    private static final class BooleanAccessor extends Accessor {
+        BooleanAccessor (Field field, String key) {
+            super(field, key);
+        }
+
+        @Override
+        void write (Object obj, DataOut data) throws IllegalAccessException {
+            data.write(key, field.getBoolean(obj));
+        }
+
+        @Override
+        void read (Object obj, DataIn data) throws IllegalAccessException {
+            field.setBoolean(obj, data.readBoolean(key));
+        }
+    }
+
+    private static final class ShortAccessor extends Accessor {
+        ShortAccessor (Field field, String key) {
+            super(field, key);
+        }
+
+        @Override
+        void write (Object obj, DataOut data) throws IllegalAccessException {
+            data.write(key, field.getShort(obj));
+        }
+
+        @Override
+        void read (Object obj, DataIn data) throws IllegalAccessException {
+            field.setShort(obj, (short) data.readLong(key));
+        }
+    }
+
+    private static final class ByteAccessor extends Accessor {
+        ByteAccessor (Field field, String key) {
+            super(field, key);
+        }
+
+        @Override
+        void write (Object obj, DataOut data) throws IllegalAccessException {
+            data.write(key, field.getByte(obj));
+        }
+
+        @Override
+        void read (Object obj, DataIn data) throws IllegalAccessException {
+            field.setByte(obj, (byte) data.readLong(key));
+        }
+    }
+
+    private static final class CharAccessor extends Accessor {
+        CharAccessor (Field field, String key) {
+            super(field, key);
+        }
+
+        @Override
+        void write (Object obj, DataOut data) throws IllegalAccessException {
+            data.write(key, field.getChar(obj));
+        }
+
+        @Override
+        void read (Object obj, DataIn data) throws IllegalAccessException {
+            field.setChar(obj, (char) data.readLong(key));
+        }
+    }
+
+    private static final class ObjectAccessor extends Accessor {
+        ObjectAccessor (Field field, String key) {
+            super(field, key);
+        }
+
+        @Override
+        void write (Object obj, DataOut data) throws IllegalAccessException {
+            data.write(key, field.get(obj));
+        }
+
+        @Override
+        void read (Object obj, DataIn data) throws IllegalAccessException {
+            field.set(obj, data.read(field.getType(), key));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.texxel.data.serializers;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Creates the objects for {@link DataSerializer}. Objects are created in two steps: first the object is allocated
+ * without calling any constructor so that other objects can reference it, then later a constructor is run on the
+ * allocated object. Use {@link DataSerializer#setInstantiator(Instantiator)} to change which instantiator is used.
+ * Implementations must be safe to use from multiple threads.
+ */
+public interface Instantiator {
+
+    /**
+     * Allocates an object without calling any of its constructors
+     * @param clazz the class of object to create
+     * @return the new object
+     */
+    Object allocate(Class clazz);
+
+    /**
+     * Runs a constructor on an object returned from {@link #allocate(Class)}
+     * @param obj the object to construct
+     * @param constructor either the object's constructor that accepts a DataIn or its empty constructor
+     * @param args the arguments to pass to the constructor
+     * @throws Throwable anything the constructor throws
+     */
+    void construct(Object obj, Constructor constructor, Object[] args) throws Throwable;
+}
@@ -0,0 +1,30 @@
+package com.github.texxel.data.serializers;
+
+import com.badlogic.gdx.utils.SharedLibraryLoader;
+import com.github.texxel.data.DataIn;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * An {@link Instantiator} that uses JNI to allocate objects and to run the constructor on the allocated object itself.
+ * The native library is extracted and loaded the first time this class is used.
+ */
+public final class JniInstantiator implements Instantiator {
+
+    static {
+        new SharedLibraryLoader("libs/data-natives.jar").load("data");
+    }
+
+    @Override
+    public Object allocate (Class clazz) {
+        return ObjectCreator.allocate(clazz);
+    }
+
+    @Override
+    public void construct (Object obj, Constructor constructor, Object[] args) {
+        if (args.length == 1)
+            ObjectCreator.callDataConstructor(obj, (DataIn) args[0]);
+        else
+            ObjectCreator.callEmptyConstructor(obj);
+    }
+}
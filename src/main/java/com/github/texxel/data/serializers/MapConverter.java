@@ -2,23 +2,28 @@ package com.github.texxel.data.serializers;
 
 import com.github.texxel.data.DataConverter;
 import com.github.texxel.data.DataIn;
+import com.github.texxel.data.DataInList;
 import com.github.texxel.data.DataOut;
+import com.github.texxel.data.DataOutList;
+import com.github.texxel.data.exceptions.InvalidDataException;
 
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Writes maps as a single list holding each key followed by its value. One list is used rather than separate lists for
+ * the keys and the values so that the map can be streamed out (see {@link com.github.texxel.data.DataOutRoot#writeStreamed}) while it is written.
+ */
 public class MapConverter implements DataConverter<Map> {
 
     @Override
     public void serialize (Map obj, DataOut bundle) {
-        int index = 0;
+        DataOutList entries = bundle.createList("entries");
         for (Map.Entry entry : (Set<Map.Entry>)obj.entrySet()) {
-            bundle.write(Integer.toString(index) + "-k", entry.getKey());
-            bundle.write(Integer.toString(index) + "-v", entry.getValue());
-            index++;
+            entries.add(entry.getKey());
+            entries.add(entry.getValue());
         }
-        bundle.write("size", index);
     }
 
     @Override
@@ -32,6 +37,25 @@ public class MapConverter implements DataConverter<Map> {
 
     @Override
     public void initialise (DataIn bundle, Map obj) {
+        if (bundle.has("entries")) {
+            DataInList entries = bundle.readList("entries");
+            for (int i = 0; entries.has(i); i += 2) {
+                if (!entries.has(i + 1))
+                    throw new InvalidDataException("The key at " + i + " has no value");
+                obj.put(entries.read(Object.class, i), entries.read(Object.class, i + 1));
+            }
+            return;
+        }
+        // data written before keys and values were written in one list
+        if (bundle.has("keys")) {
+            DataInList keys = bundle.readList("keys");
+            DataInList values = bundle.readList("values");
+            for (int i = 0; keys.has(i); i++) {
+                obj.put(keys.read(Object.class, i), values.read(Object.class, i));
+            }
+            return;
+        }
+        // data written before lists were supported
         int size = bundle.readInt("size");
         for (int i = 0; i < size; i++) {
             Object key = bundle.read(Object.class, Integer.toString(i) + "-k");
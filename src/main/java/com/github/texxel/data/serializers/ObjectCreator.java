@@ -1,11 +1,11 @@
 package com.github.texxel.data.serializers;
 
-import com.badlogic.gdx.utils.SharedLibraryLoader;
 import com.github.texxel.data.DataIn;
 import com.github.texxel.data.exceptions.DataException;
 import com.github.texxel.data.exceptions.DataSerializationException;
 
 import java.lang.reflect.Constructor;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A helper class for separating the task of allocating an object before
@@ -13,8 +13,23 @@ import java.lang.reflect.Constructor;
  */
 class ObjectCreator {
 
-    static {
-        new SharedLibraryLoader("libs/data-natives.jar").load("data");
+    /** the instantiator used to make objects. The native one is used unless another is chosen */
+    static volatile Instantiator instantiator;
+
+    /**
+     * @throws DataSerializationException if no instantiator was chosen and the native library cannot be loaded
+     */
+    private static Instantiator instantiator() {
+        Instantiator current = instantiator;
+        if (current == null) {
+            try {
+                instantiator = current = new JniInstantiator();
+            } catch (LinkageError e) {
+                throw new DataSerializationException("The native library could not be loaded. Use "
+                        + "DataSerializer.setInstantiator to choose another way to create objects", e);
+            }
+        }
+        return current;
     }
 
     /**
@@ -27,7 +42,7 @@ class ObjectCreator {
      * @return the new class
      */
     static <T> T create (Class<T> clazz) {
-        return (T)allocate(clazz);
+        return (T)instantiator().allocate(clazz);
     }
 
     /**
@@ -39,37 +54,67 @@ class ObjectCreator {
         if ( obj == null )
             return;
         Class clazz = obj.getClass();
+        Construction construction = construction(clazz);
+        if (construction.constructor == null)
+            throw new DataException(clazz + " does not have a supported constructor");
+        try {
+            Object[] args = construction.takesData ? new Object[] { data } : NO_ARGS;
+            instantiator().construct(obj, construction.constructor, args);
+        } catch (Throwable thr) {
+            throw new DataSerializationException("Failed to construct " + clazz, thr);
+        }
+    }
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /** how an object of a class is constructed */
+    private static final class Construction {
+        /** the constructor to call or null if the class has no supported constructor */
+        final Constructor constructor;
+        /** true if the constructor accepts DataIn, false if it is the empty constructor */
+        final boolean takesData;
+
+        Construction(Constructor constructor, boolean takesData) {
+            this.constructor = constructor;
+            this.takesData = takesData;
+            if (constructor != null)
+                constructor.setAccessible(true);
+        }
+    }
+
+    /** the construction of each class so the constructors are only searched once per class */
+    private static final ConcurrentHashMap<Class, Construction> constructions = new ConcurrentHashMap<>();
+
+    private static Construction construction(Class clazz) {
+        Construction construction = constructions.get(clazz);
+        if (construction == null) {
+            construction = findConstruction(clazz);
+            constructions.put(clazz, construction);
+        }
+        return construction;
+    }
+
+    private static Construction findConstruction(Class clazz) {
         Constructor[] constructors = clazz.getDeclaredConstructors();
 
         // look for constructor that accepts Data
         for (Constructor c : constructors) {
-            if (c.getParameterCount() != 1)
-                continue;
-            if (c.getParameterTypes()[0].equals(DataIn.class)) {
-                try {
-                    callDataConstructor(obj, data);
-                } catch (Throwable thr) {
-                    throw new DataSerializationException("Failed to construct " + clazz, thr);
-                }
-                return;
-            }
+            Class[] parameters = c.getParameterTypes();
+            if (parameters.length == 1 && parameters[0].equals(DataIn.class))
+                return new Construction(c, true);
         }
 
         // look for empty constructor
         for (Constructor c : constructors) {
-            if (c.getParameterCount() != 0)
-                continue;
-            try {
-                callEmptyConstructor(obj);
-            } catch (Throwable thr) {
-                throw new DataSerializationException("Failed to construct " + clazz, thr);
-            }
-            return;
+            if (c.getParameterTypes().length == 0)
+                return new Construction(c, false);
         }
-
-        throw new DataException(clazz + " does not have a supported constructor");
+        return new Construction(null, false);
     }
 
+    // The natives are only loaded by JniInstantiator. They must stay in this class since the compiled library binds
+    // them by this class' name.
+
     static native Object allocate (Class objClazz); /*
         jobject obj = env->AllocObject(objClazz);
         return obj;
@@ -133,4 +133,20 @@ public class PrimitiveConverters {
         public void initialise (DataIn bundle, Boolean obj) {
         }
     }
+
+    public static class StringConverter implements DataConverter<String> {
+        @Override
+        public void serialize (String obj, DataOut bundle) {
+            bundle.write("value", obj);
+        }
+
+        @Override
+        public String create (DataIn bundle, Class<? extends String> stored) {
+            return bundle.readString("value");
+        }
+
+        @Override
+        public void initialise (DataIn bundle, String obj) {
+        }
+    }
 }
@@ -0,0 +1,119 @@
+package com.github.texxel.data.serializers;
+
+import com.github.texxel.data.exceptions.DataSerializationException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An {@link Instantiator} that only uses the standard JVM, for platforms where {@link JniInstantiator} cannot load its
+ * native library. It is never used unless chosen with {@link DataSerializer#setInstantiator(Instantiator)}. Objects are
+ * allocated with {@code Unsafe.allocateInstance}. Since Java cannot run a constructor on an object that already
+ * exists, the constructor is run on a second object and every field is then copied across to the allocated object.
+ * This means a constructor that leaks {@code this} leaks the second object instead: a child made with
+ * {@code new Child(this)} points back at the wrong parent, as does an anonymous class made in the constructor, and
+ * a constructor that registers itself as a listener registers the wrong object. Only use it for classes whose
+ * constructors never do that.
+ *
+ * <p>The copy would also wipe out anything that other objects wrote into the allocated object while its constructor
+ * ran, such as a child read in by the constructor that sets {@code parent.child = this} on the parent it reads back.
+ * That cannot be made to work, so an exception is thrown instead of losing the change.</p>
+ */
+public final class ReflectionInstantiator implements Instantiator {
+
+    private final Object unsafe;
+    private final Method allocateInstance;
+    /** the instance fields of each class, including those of its super classes */
+    private final ConcurrentHashMap<Class, Field[]> fields = new ConcurrentHashMap<>();
+
+    /**
+     * @throws DataSerializationException if the JVM does not provide a way to allocate objects
+     */
+    public ReflectionInstantiator() {
+        try {
+            Class unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field;
+            try {
+                field = unsafeClass.getDeclaredField("theUnsafe");
+            } catch (NoSuchFieldException e) {
+                // older versions of Android
+                field = unsafeClass.getDeclaredField("THE_ONE");
+            }
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            allocateInstance = unsafeClass.getMethod("allocateInstance", Class.class);
+        } catch (Exception e) {
+            throw new DataSerializationException("Objects cannot be allocated on this JVM", e);
+        }
+    }
+
+    @Override
+    public Object allocate (Class clazz) {
+        try {
+            return allocateInstance.invoke(unsafe, clazz);
+        } catch (InvocationTargetException e) {
+            throw new DataSerializationException("Failed to allocate " + clazz, e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new DataSerializationException("Failed to allocate " + clazz, e);
+        }
+    }
+
+    @Override
+    public void construct (Object obj, Constructor constructor, Object[] args) throws Throwable {
+        Object constructed;
+        try {
+            constructed = constructor.newInstance(args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+        Field[] fields = fieldsOf(obj.getClass());
+        for (Field field : fields) {
+            if (!isDefault(field.get(obj)))
+                throw new DataSerializationException("'" + field + "' was set while " + obj.getClass().getName()
+                        + " was being constructed, so copying the constructed object would undo it. Use "
+                        + "JniInstantiator for this class");
+        }
+        for (Field field : fields)
+            field.set(obj, field.get(constructed));
+    }
+
+    /**
+     * @return true if the value of a field is what it is in an allocated object that has not been constructed
+     */
+    private static boolean isDefault (Object value) {
+        if (value == null)
+            return true;
+        if (value instanceof Boolean)
+            return !(Boolean) value;
+        if (value instanceof Character)
+            return (Character) value == 0;
+        if (value instanceof Double || value instanceof Float)
+            return Double.doubleToRawLongBits(((Number) value).doubleValue()) == 0;
+        if (value instanceof Number)
+            return ((Number) value).longValue() == 0;
+        return false;
+    }
+
+    private Field[] fieldsOf (Class clazz) {
+        Field[] found = fields.get(clazz);
+        if (found == null) {
+            ArrayList<Field> list = new ArrayList<>();
+            for (Class c = clazz; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()))
+                        continue;
+                    field.setAccessible(true);
+                    list.add(field);
+                }
+            }
+            found = list.toArray(new Field[list.size()]);
+            fields.put(clazz, found);
+        }
+        return found;
+    }
+}
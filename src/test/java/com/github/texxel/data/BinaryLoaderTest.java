@@ -0,0 +1,290 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.DataSerializationException;
+import com.github.texxel.data.exceptions.InvalidDataException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BinaryLoaderTest {
+
+    private static PData sample() {
+        PData data = new PData()
+                .set("long", 10)
+                .set("negative", -1234567890123L)
+                .set("max", Long.MAX_VALUE)
+                .set("min", Long.MIN_VALUE)
+                .set("double", 1.2)
+                .set("negZero", -0.0)
+                .set("true", true)
+                .set("false", false)
+                .set("string", "bye")
+                .set("unicode", "café € 😀")
+                .setReference("ref", 42)
+                .setArray("longs", new long[] {-1, 0, Long.MAX_VALUE})
+                .setArray("doubles", new double[] {0.5, -0.0})
+                .setArray("bytes", new byte[] {1, -2, 3})
+                .setNull("null");
+        PData sub1 = data.createSection("sub1")
+                .set("one", 1);
+        PList list = data.createList("list")
+                .add(1)
+                .add(2.5)
+                .add("three")
+                .addNull()
+                .add(true)
+                .addReference(4);
+        list.addSection().set("inList", 5);
+        list.addList().add("nested");
+        sub1.createSection("sub2");
+        return data;
+    }
+
+    private static byte[] write(DataLoader loader, PData data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        loader.write(out, data);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        PData data = sample();
+
+        PData read = new BinaryLoader().read(new ByteArrayInputStream(write(new BinaryLoader(), data)));
+
+        assertEquals(data.toString(), read.toString());
+        assertEquals(PData.Type.LONG, read.getType("long"));
+        assertEquals(Long.MIN_VALUE, read.getLong("min"));
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(read.getDouble("negZero")));
+        assertEquals(42, read.getReference("ref"));
+        assertEquals(PData.Type.NULL, read.getType("null"));
+        assertEquals(1, read.getSection("sub1").getLong("one"));
+        assertTrue(read.getSection("sub1").getSection("sub2").keys().isEmpty());
+        assertEquals(5, read.getList("list").getSection(6).getLong("inList"));
+    }
+
+    @Test
+    public void testSameAsJson() {
+        PData data = sample();
+
+        PData viaJson = new JsonLoader().read(write(new JsonLoader(), data));
+        PData viaBinary = new BinaryLoader().read(write(new BinaryLoader(), data));
+
+        assertArrayEquals(write(new JsonLoader(), viaJson), write(new JsonLoader(), viaBinary));
+    }
+
+    @Test
+    public void testLargeDocument() {
+        PData data = new PData();
+        for (int i = 0; i < 2000; i++) {
+            PData section = data.createSection("section" + i);
+            section.set("index", i).set("name", "item " + i);
+            section.createSection("nested").set("value", i * 0.5);
+        }
+
+        PData read = new BinaryLoader().read(write(new BinaryLoader(), data));
+
+        assertEquals(data.toString(), read.toString());
+    }
+
+    @Test
+    public void testLargeArrays() {
+        byte[] bytes = new byte[100000];
+        new Random(3).nextBytes(bytes);
+        long[] longs = new long[5000];
+        for (int i = 0; i < longs.length; i++)
+            longs[i] = i * 1234567L;
+        PData data = new PData()
+                .setArray("bytes", bytes)
+                .setArray("longs", longs);
+
+        PData read = new BinaryLoader().read(new ByteArrayInputStream(write(new BinaryLoader(), data)));
+
+        assertArrayEquals(bytes, read.getByteArray("bytes"));
+        assertArrayEquals(longs, read.getLongArray("longs"));
+    }
+
+    @Test
+    public void testSmallerThanJson() {
+        PData data = sample();
+
+        assertTrue(write(new BinaryLoader(), data).length < write(new JsonLoader(), data).length);
+    }
+
+    @Test
+    public void testStreamedSink() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataSink sink = new BinaryLoader().sink(out);
+        sink.beginSection();
+        sink.key("long");
+        sink.value(-5);
+        sink.key("ref");
+        sink.reference(3);
+        sink.key("bytes");
+        sink.array(new byte[] {1, 2});
+        sink.key("sub");
+        sink.beginSection();
+        sink.key("string");
+        sink.value("hi");
+        sink.endSection();
+        sink.key("list");
+        sink.beginList();
+        sink.value(1.5);
+        sink.nullValue();
+        sink.beginSection();
+        sink.endSection();
+        sink.beginList();
+        sink.value(true);
+        sink.endList();
+        sink.endList();
+        sink.endSection();
+        sink.flush();
+        sink.close();
+        byte[] bytes = out.toByteArray();
+
+        for (PData read : new PData[] {new BinaryLoader().read(bytes), new BinaryLoader().view(ByteBuffer.wrap(bytes))}) {
+            assertEquals(-5, read.getLong("long"));
+            assertEquals(3, read.getReference("ref"));
+            assertArrayEquals(new byte[] {1, 2}, read.getByteArray("bytes"));
+            assertEquals("hi", read.getSection("sub").getString("string"));
+            PList list = read.getList("list");
+            assertEquals(4, list.size());
+            assertEquals(1.5, list.getDouble(0), 0);
+            assertEquals(PData.Type.NULL, list.getType(1));
+            assertTrue(list.getSection(2).keys().isEmpty());
+            assertTrue(list.getList(3).getBoolean(0));
+        }
+    }
+
+    @Test(expected = DataSerializationException.class)
+    public void testRejectsOtherData() {
+        new BinaryLoader().read("{}".getBytes());
+    }
+
+    @Test(expected = DataSerializationException.class)
+    public void testRejectsTruncatedData() {
+        byte[] bytes = write(new BinaryLoader(), sample());
+        byte[] truncated = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        new BinaryLoader().read(truncated);
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        PData data = sample();
+        File file = File.createTempFile("pdata", ".bin");
+        file.deleteOnExit();
+        new BinaryLoader().write(new FileOutputStream(file), data);
+
+        PData mapped = new BinaryLoader().map(file);
+
+        assertEquals(data.toString(), mapped.toString());
+        assertEquals(5, mapped.getList("list").getSection(6).getLong("inList"));
+    }
+
+    @Test
+    public void testViewOnlyDecodesUsedSections() {
+        PData data = new PData();
+        data.createSection("used").set("value", 3);
+        // a broken section that can only be found if it gets decoded
+        data.createSection("unused").set("value", 4);
+        byte[] bytes = write(new BinaryLoader(), data);
+        int broken = indexOf(bytes, "value".getBytes(), indexOf(bytes, "unused".getBytes(), 0));
+        bytes[broken + "value".length()] = 99;
+
+        PData view = new BinaryLoader().view(ByteBuffer.wrap(bytes));
+
+        assertEquals(3, view.getSection("used").getLong("value"));
+        assertEquals(PData.Type.DATA, view.getType("unused"));
+        try {
+            view.getSection("unused").getLong("value");
+            fail("the broken section should have been decoded");
+        } catch (InvalidDataException e) {
+            // expected
+        }
+    }
+
+    private static class Node implements DataSerializable {
+        String name;
+        Node other;
+
+        Node(String name, Node other) {
+            this.name = name;
+            this.other = other;
+        }
+
+        @Constructor
+        private Node(DataIn in) {
+            name = in.read(String.class, "name");
+            other = in.read(Node.class, "other");
+        }
+
+        @Override
+        public void bundleInto(DataOut out) {
+            out.write("name", name);
+            out.write("other", other);
+        }
+    }
+
+    @Test
+    public void testViewFindsForwardReferencesWithoutDecodingOtherSections() {
+        Node b = new Node("b", null);
+        Node a = new Node("a", b);
+        Node last = new Node("last", null);
+        Node first = new Node("first", last);
+        DataOutRoot out = new DataOutRoot();
+        // both get moved up out of the node that first wrote them, leaving a reference to a section further on
+        out.write("a", a);
+        out.write("b", b);
+        out.createList("list").add(first).add(last);
+        out.createSection("unused").write("value", 4);
+        PData data = out.toPrimitiveData();
+        assertEquals(PData.Type.REFERENCE, data.getSection("a").getType("other"));
+        byte[] bytes = write(new BinaryLoader(), data);
+        int broken = indexOf(bytes, "value".getBytes(), indexOf(bytes, "unused".getBytes(), 0));
+        bytes[broken + "value".length()] = 99;
+
+        DataIn in = new DataIn(new BinaryLoader().view(ByteBuffer.wrap(bytes)));
+
+        assertEquals("b", in.read(Node.class, "a").other.name);
+        DataInList list = in.readList("list");
+        Node readFirst = list.read(Node.class, 0);
+        assertEquals("last", readFirst.other.name);
+        assertSame(readFirst.other, list.read(Node.class, 1));
+        assertSame(in.read(Node.class, "a").other, in.read(Node.class, "b"));
+    }
+
+    @Test
+    public void testViewCanBeChanged() {
+        PData data = sample();
+        PData view = new BinaryLoader().view(ByteBuffer.wrap(write(new BinaryLoader(), data)));
+
+        view.getSection("sub1").set("two", 2);
+        view.delete("string");
+
+        assertEquals(1, view.getSection("sub1").getLong("one"));
+        assertEquals(2, view.getSection("sub1").getLong("two"));
+        assertFalse(view.contains("string"));
+    }
+
+    private static int indexOf(byte[] bytes, byte[] find, int from) {
+        outer:
+        for (int i = from; i <= bytes.length - find.length; i++) {
+            for (int j = 0; j < find.length; j++) {
+                if (bytes[i + j] != find[j])
+                    continue outer;
+            }
+            return i;
+        }
+        throw new AssertionError("not found");
+    }
+}
@@ -4,7 +4,9 @@ import com.github.texxel.data.ClassMap;
 import com.github.texxel.data.PData;
 import org.junit.Test;
 
-import static org.junit.Assert.assertEquals;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
 
 public class ClassMapTest {
 
@@ -134,4 +136,61 @@ public class ClassMapTest {
         assertEquals("enum", map.get(testEnum));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testPutAfterLookup() {
+        ClassMap<Object, String> map = new ClassMap<>();
+        map.put(Animal.class, "animal");
+        assertEquals("animal", map.get(Horse.class));
+        assertEquals("animal", map.get(Squid.class));
+
+        map.put(Horse.class, "horse");
+        map.put(Rideable.class, "rideable");
+
+        assertEquals("horse", map.get(Horse.class));
+        assertEquals("animal", map.get(Squid.class));
+    }
+
+    @Test
+    public void testRemoveAfterLookup() {
+        ClassMap<Object, String> map = new ClassMap<>();
+        map.put(Animal.class, "animal");
+        map.put(Horse.class, "horse");
+        assertEquals("horse", map.get(Horse.class));
+
+        map.remove(Horse.class);
+        assertEquals("animal", map.get(Horse.class));
+
+        map.clear();
+        assertNull(map.get(Horse.class));
+    }
+
+    @Test
+    public void testConcurrentLookups() throws InterruptedException {
+        final ClassMap<Object, String> map = new ClassMap<>();
+        map.put(Animal.class, "animal");
+        final AtomicBoolean failed = new AtomicBoolean();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        String value = map.get(j % 2 == 0 ? Squid.class : Moose.class);
+                        if (!"animal".equals(value) && !"squid".equals(value))
+                            failed.set(true);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < 100; i++)
+            map.put(Alive.class, "alive" + i);
+        map.put(Squid.class, "squid");
+        for (Thread thread : threads)
+            thread.join();
+
+        assertFalse(failed.get());
+        assertEquals("squid", map.get(Squid.class));
+        assertEquals("animal", map.get(Moose.class));
+    }
+}
@@ -4,6 +4,13 @@ import com.github.texxel.data.exceptions.MissingDataException;
 import com.github.texxel.data.exceptions.WrongTypeException;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
 import static org.junit.Assert.*;
 
 public class DataInTest {
@@ -211,14 +218,12 @@ public class DataInTest {
         PData data = new PData();
         data.createSection("A")
                 .set("__classname", TestClass.class.getName())
-                .set("__id", "__#123")
-                .set("value", "__#456");
+                .set("__id", 123)
+                .setReference("value", 456);
         data.createSection("B")
                 .set("__classname", TestClass.class.getName())
-                .set("__id", "__#456")
-                .set("value", "__#123");
-        data.createSection("__#123").createSection("A");
-        data.createSection("__#456").createSection("B");
+                .set("__id", 456)
+                .setReference("value", 123);
 
         DataIn in = new DataIn(data);
 
@@ -230,6 +235,73 @@ public class DataInTest {
         assertSame(a, b.value);
     }
 
+    @Test
+    public void testReadDeepForwardReference() {
+        PData data = new PData();
+        data.createSection("ref")
+                .set("__classname", TestClass.class.getName())
+                .set("__id", 1)
+                .setReference("value", 2);
+        data.createSection("deep").createSection("deeper").createSection("object")
+                .set("__classname", TestClass.class.getName())
+                .set("__id", 2)
+                .set("value", "found");
+
+        DataIn in = new DataIn(data);
+        TestClass ref = in.read(TestClass.class, "ref");
+
+        assertEquals("found", ((TestClass) ref.value).value);
+        assertSame(ref.value, in.readSection("deep").readSection("deeper").read(TestClass.class, "object"));
+    }
+
+    @Test(expected = MissingDataException.class)
+    public void testReadMissingReference() {
+        PData data = new PData()
+                .setReference("ref", 99);
+
+        new DataIn(data).read(TestClass.class, "ref");
+    }
+
+    @Test
+    public void testReadOldStringIds() {
+        // data from before ids were numbers
+        String json = "{\"A\":{\"__classname\":\"" + TestClass.class.getName() + "\",\"__id\":\"__#123\",\"value\":\"__#456\"},"
+                + "\"B\":{\"__classname\":\"" + TestClass.class.getName() + "\",\"__id\":\"__#456\",\"value\":\"__#123\"},"
+                + "\"__#123\":{\"A\":{}},\"__#456\":{\"B\":{}}}";
+        DataIn in = new DataIn(new JsonLoader().read(json.getBytes()));
+
+        TestClass a = in.read(TestClass.class, "A");
+        TestClass b = in.read(TestClass.class, "B");
+
+        assertSame(b, a.value);
+        assertSame(a, b.value);
+    }
+
+    @Test
+    public void testStringsAreNotReferences() {
+        PData data = new PData()
+                .set("string", "__#1");
+
+        assertEquals("__#1", new DataIn(data).read(String.class, "string"));
+    }
+
+    @Test
+    public void testSavedStringsAreNotReferences() {
+        final ArrayList<String> list = new ArrayList<>();
+        list.add("item");
+        DataOutRoot out = new DataOutRoot();
+        out.write("list", list);
+        out.write("string", "__#0");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new JsonLoader().write(bytes, out.toPrimitiveData());
+
+        DataIn in = new DataIn(new JsonLoader().read(bytes.toByteArray()));
+
+        assertEquals("__#0", in.readString("string"));
+        assertEquals("__#0", in.read(String.class, "string"));
+        assertEquals("__#0", in.read(Object.class, "string"));
+    }
+
     @Test
     public void testReadBupPrimitives() {
         PData data = new PData()
@@ -258,4 +330,118 @@ public class DataInTest {
         assertEquals(true, in.readBoolean("int", true));
     }
 
-}
\ No newline at end of file
+
+    /** counts how many bytes have been read out of a stream */
+    private static class CountingStream extends FilterInputStream {
+
+        int count;
+
+        CountingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0)
+                count += read;
+            return read;
+        }
+    }
+
+    @Test
+    public void testStreamedRead() {
+        final ArrayList<DataOutTest.TestRef> refs = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            refs.add(new DataOutTest.TestRef(Integer.toString(i), null));
+        // every object references the one after it, so most references are to objects further on in the stream
+        for (int i = 0; i < refs.size(); i++)
+            refs.get(i).reference = refs.get((i + 1) % refs.size());
+        DataSerializable content = new DataSerializable() {
+            @Override
+            public void bundleInto(DataOut out) {
+                out.write("refs", refs);
+                out.write("after", 5);
+            }
+        };
+
+        for (int pass = 0; pass < 2; pass++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ByteArrayInputStream input;
+            PData data;
+            if (pass == 0) {
+                DataOutRoot.writeStreamed(content, new JsonLoader().sink(bytes));
+                data = new JsonLoader().stream(new ByteArrayInputStream(bytes.toByteArray()));
+            } else {
+                DataOutRoot.writeStreamed(content, new BinaryLoader().sink(bytes));
+                data = new BinaryLoader().stream(new ByteArrayInputStream(bytes.toByteArray()));
+            }
+            DataIn in = new DataIn(data);
+
+            ArrayList<DataOutTest.TestRef> read = in.read(ArrayList.class, "refs");
+            assertEquals(100, read.size());
+            for (int i = 0; i < read.size(); i++) {
+                assertEquals(Integer.toString(i), read.get(i).id);
+                assertSame(read.get((i + 1) % read.size()), read.get(i).reference);
+            }
+            assertEquals(5, in.readLong("after"));
+        }
+    }
+
+    @Test
+    public void testStreamedReadOnlyReadsWhatIsUsed() {
+        PData pData = new PData().set("first", 1);
+        PList list = pData.createList("big");
+        for (int i = 0; i < 10000; i++)
+            list.addSection().set("value", i);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new JsonLoader().write(bytes, pData);
+        CountingStream input = new CountingStream(new ByteArrayInputStream(bytes.toByteArray()));
+
+        DataIn in = new DataIn(new JsonLoader().stream(input));
+        assertEquals(1, in.readLong("first"));
+        assertTrue(input.count < bytes.size() / 10);
+
+        DataInList big = in.readList("big");
+        for (int i = 0; big.has(i); i++)
+            assertEquals(i, big.readSection(i).readLong("value"));
+        assertEquals(bytes.size(), input.count);
+    }
+
+    @Test(expected = MissingDataException.class)
+    public void testStreamedListsOnlyGoForwards() {
+        PData pData = new PData();
+        pData.createList("list").add(1).add(2).add(3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new BinaryLoader().write(bytes, pData);
+
+        DataInList list = new DataIn(new BinaryLoader().stream(new ByteArrayInputStream(bytes.toByteArray())))
+                .readList("list");
+        assertEquals(2, list.readLong(1));
+        list.readLong(0);
+    }
+
+    @Test
+    public void testStreamedForwardReference() {
+        String json = "{\"A\":{\"__classname\":\"" + TestClass.class.getName() + "\",\"__id\":1,\"value\":{\"__ref\":2}},"
+                + "\"skipped\":{\"big\":[1,2,3]},"
+                + "\"B\":{\"__classname\":\"" + TestClass.class.getName() + "\",\"__id\":2,\"value\":{\"__ref\":1}}}";
+        DataIn in = new DataIn(new JsonLoader().stream(new ByteArrayInputStream(json.getBytes())));
+
+        TestClass a = in.read(TestClass.class, "A");
+        TestClass b = in.read(TestClass.class, "B");
+
+        assertSame(b, a.value);
+        assertSame(a, b.value);
+        // everything read past to find B is still there
+        assertArrayEquals(new long[] {1, 2, 3}, in.readSection("skipped").readLongArray("big"));
+    }
+}
@@ -4,7 +4,14 @@ import com.github.texxel.data.exceptions.DataSerializationException;
 import com.github.texxel.data.exceptions.InvalidDataException;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 // Note: these tests are highly intertwined with the internal details of the class and may change at any time.
 // Generally, the way the data is written to is supported, however, how the actions are then verified is completely
@@ -105,7 +112,7 @@ public class DataOutTest {
 
         PData thingData = pData.getSection("thing");
         assertEquals(TestSerializable.class.getName(), thingData.getString("__classname"));
-        assertEquals("__#"+System.identityHashCode(test), thingData.getString("__id"));
+        assertEquals(0, thingData.getLong("__id"));
         assertEquals("Fish", thingData.getString("value"));
     }
 
@@ -152,14 +159,10 @@ public class DataOutTest {
         assertEquals("hi", contents.getString("value"));
 
         // the second should only reference the first
-        String idCode = "__#" + System.identityHashCode(test);
+        long id = contents.getLong("__id");
         PData section = pData.getSection("enter");
-        assertEquals(idCode, section.getString("boo"));
-
-        // the top level should contain the reference location
-        assertNotNull(pData.getSection(idCode));
-        assertNotNull(pData.getSection(idCode).getSection("hello") );
-        assertArrayEquals(new String[0], pData.getSection(idCode).getSection("hello").keys().toArray());
+        assertEquals(PData.Type.REFERENCE, section.getType("boo"));
+        assertEquals(id, section.getReference("boo"));
     }
 
     @Test
@@ -200,16 +203,180 @@ public class DataOutTest {
         // assert the reference is in the right place
         PData aData = data.getSection("A");
         PData bData = aData.getSection("value");
-        String dDataRef = bData.getString("value");
-        assertEquals("__#" + System.identityHashCode(d), dDataRef);
+        long dDataRef = bData.getReference("value");
 
         // assert the data is in the right place
         PData cData = data.getSection("C");
         PData dData = cData.getSection("value");
         assertEquals("D", dData.getString("id"));
+        assertEquals(dDataRef, dData.getLong("__id"));
+    }
+
+    @Test
+    public void testPlannedWriteWritesObjectsAtHighestLocation() {
+        // same structure as above, but D is written straight into C
+        final TestRef d = new TestRef("D", null);
+        final TestRef c = new TestRef("C", d);
+        final TestRef b = new TestRef("B", d);
+        final TestRef a = new TestRef("A", b);
+        PData data = DataOutRoot.writePlanned(new DataSerializable() {
+            @Override
+            public void bundleInto(DataOut out) {
+                out.write("A", a);
+                out.write("C", c);
+            }
+        });
+
+        PData bData = data.getSection("A").getSection("value");
+        PData dData = data.getSection("C").getSection("value");
+        assertEquals("D", dData.getString("id"));
+        assertEquals(bData.getReference("value"), dData.getLong("__id"));
+
+        DataIn in = new DataIn(data);
+        TestRef readA = in.read(TestRef.class, "A");
+        TestRef readC = in.read(TestRef.class, "C");
+        assertSame(readA.reference.reference, readC.reference);
+        assertEquals("D", readC.reference.id);
+    }
+
+    @Test
+    public void testStreamedWriteMatchesPlannedWrite() {
+        final TestRef d = new TestRef("D", null);
+        final TestRef c = new TestRef("C", d);
+        final TestRef b = new TestRef("B", d);
+        final TestRef a = new TestRef("A", b);
+        final Map<Object, Object> map = new LinkedHashMap<>();
+        map.put("key", "value");
+        map.put(d, c);
+        DataSerializable content = new DataSerializable() {
+            @Override
+            public void bundleInto(DataOut out) {
+                out.write("A", a);
+                out.write("number", 3);
+                out.createList("list").add(c).add(b).add(7).addSection().write("inner", true);
+                out.write("C", c);
+                out.writeArray("array", new int[] {1, 2});
+                out.write("map", map);
+            }
+        };
+        PData planned = DataOutRoot.writePlanned(content);
+
+        for (DataLoader loader : new DataLoader[] {new JsonLoader(), new BinaryLoader()}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataSink sink = loader instanceof JsonLoader
+                    ? ((JsonLoader) loader).sink(bytes) : ((BinaryLoader) loader).sink(bytes);
+            DataOutRoot.writeStreamed(content, sink);
+            PData read = loader.read(new ByteArrayInputStream(bytes.toByteArray()));
+            // the element class of a list is streamed before the list, so only the order of the keys differs
+            assertTrue(PDataPatch.isEmpty(PDataPatch.diff(planned, read)));
+            assertEquals(TestRef.class.getName(), read.getString("__classname:list"));
+            assertArrayEquals(new long[] {1, 2}, read.getLongArray("array"));
+
+            DataIn in = new DataIn(read);
+            TestRef readA = in.read(TestRef.class, "A");
+            assertSame(readA.reference.reference, in.read(TestRef.class, "C").reference);
+            Map<Object, Object> readMap = in.read(Map.class, "map");
+            assertEquals("value", readMap.get("key"));
+            assertSame(readA.reference.reference, readMap.keySet().toArray()[1]);
+        }
+    }
+
+    @Test(expected = InvalidDataException.class)
+    public void testStreamedWriteRejectsFinishedSections() {
+        DataOutRoot.writeStreamed(new DataSerializable() {
+            @Override
+            public void bundleInto(DataOut out) {
+                DataOut first = out.createSection("first");
+                out.createSection("second");
+                first.write("late", 1);
+            }
+        }, new JsonLoader().sink(new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void testStreamedWriteRejectsKeysThatWereStreamedOut() {
+        final String[] keys = { "a", "s" };
+        for (final String key : keys) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                DataOutRoot.writeStreamed(new DataSerializable() {
+                    @Override
+                    public void bundleInto(DataOut out) {
+                        out.write("a", 1);
+                        out.createSection("s").write("inner", true);
+                        out.write(key, 2);
+                    }
+                }, new JsonLoader().sink(bytes));
+                fail("'" + key + "' was sent to the sink twice");
+            } catch (InvalidDataException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testPlannedWriteHandlesCycles() {
+        final TestRef a = new TestRef("A", null);
+        final TestRef b = new TestRef("B", a);
+        a.reference = b;
+        PData data = DataOutRoot.writePlanned(new DataSerializable() {
+            @Override
+            public void bundleInto(DataOut out) {
+                out.write("A", a);
+            }
+        });
+
+        PData aData = data.getSection("A");
+        PData bData = aData.getSection("value");
+        assertEquals(aData.getLong("__id"), bData.getReference("value"));
+
+        TestRef read = new DataIn(data).read(TestRef.class, "A");
+        assertSame(read, read.reference.reference);
+    }
+
+    @Test
+    public void testListsInData() {
+        DataOutRoot out = new DataOutRoot();
+        DataOutList list = out.createList("list");
+        list.add(1).add("two").add(new TestSerializable("three"));
+        list.addSection().write("four", 4);
+
+        PList pList = out.toPrimitiveData().getList("list");
+        assertEquals(4, pList.size());
+        assertEquals(1, pList.getLong(0));
+        assertEquals("two", pList.getString(1));
+        assertEquals("three", pList.getSection(2).getString("value"));
+        assertEquals(4, pList.getSection(3).getLong("four"));
+    }
+
+    @Test
+    public void testReferencesMovedIntoLists() {
+        DataOutRoot out = new DataOutRoot();
+        TestRef shared = new TestRef("shared", null);
+        out.createSection("deep").createSection("deeper").write("ref", shared);
+        out.createList("list").add(shared);
 
-        // assert the reference is correct
-        assertArrayEquals(new String[0], data.getSection(dDataRef).getSection("C").getSection("value").keys().toArray());
+        PData data = out.toPrimitiveData();
+        PData sharedData = data.getList("list").getSection(0);
+        assertEquals("shared", sharedData.getString("id"));
+        long ref = data.getSection("deep").getSection("deeper").getReference("ref");
+        assertEquals(sharedData.getLong("__id"), ref);
+    }
+
+    @Test
+    public void testReferencesMovedOutOfLists() {
+        DataOutRoot out = new DataOutRoot();
+        TestRef shared = new TestRef("shared", null);
+        out.createSection("deep").createList("list").add(shared);
+        out.write("top", shared);
+
+        PData data = out.toPrimitiveData();
+        PData sharedData = data.getSection("top");
+        assertEquals("shared", sharedData.getString("id"));
+        long ref = data.getSection("deep").getList("list").getReference(0);
+        assertEquals(sharedData.getLong("__id"), ref);
+        DataIn in = new DataIn(data);
+        assertSame(in.read(TestRef.class, "top"), in.readSection("deep").readList("list").read(TestRef.class, 0));
     }
 
     @Test
@@ -223,4 +390,133 @@ public class DataOutTest {
         PData pData2 = out.toPrimitiveData();
         assertFalse(pData2.contains("bye"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSnapshotDoesNotSeeLaterWrites() {
+        DataOutRoot out = new DataOutRoot();
+        DataOut section = out.createSection("section");
+        section.write("value", 1);
+
+        PData pData = out.toPrimitiveData();
+        out.write("later", "yes");
+        section.write("value", 2);
+        section.write("another", 3);
+
+        assertFalse(pData.contains("later"));
+        assertEquals(1, pData.getSection("section").getLong("value"));
+        assertFalse(pData.getSection("section").contains("another"));
+        assertEquals(2, out.toPrimitiveData().getSection("section").getLong("value"));
+    }
+
+    @Test
+    public void testChangingSnapshotSectionDoesNotAlterData() {
+        DataOutRoot out = new DataOutRoot();
+        out.createSection("section").write("value", 1);
+
+        PData pData = out.toPrimitiveData();
+        pData.getSection("section").set("value", 5);
+        PData pData2 = out.toPrimitiveData();
+
+        assertEquals(5, pData.getSection("section").getLong("value"));
+        assertEquals(1, pData2.getSection("section").getLong("value"));
+    }
+
+    @Test
+    public void testReadingSnapshotSectionsOnlyCopiesWhatIsRead() {
+        DataOutRoot out = new DataOutRoot();
+        DataOut outer = out.createSection("outer");
+        DataOut inner = outer.createSection("inner");
+        inner.write("value", 1);
+        DataOutList list = outer.createList("list");
+        DataOut element = list.addSection();
+        element.write("value", 2);
+
+        PData pData = out.toPrimitiveData();
+        PData outerRead = pData.getSection("outer");
+        // nothing below the section that was read has been copied
+        assertSame(inner.pData, outerRead.section("inner"));
+        assertSame(list.list, outerRead.list("list"));
+
+        PList listRead = outerRead.getList("list");
+        assertSame(element.pData, listRead.objectAt(0));
+
+        inner.write("value", 3);
+        element.write("value", 4);
+        outer.write("later", 5);
+        assertEquals(1, outerRead.getSection("inner").getLong("value"));
+        assertEquals(2, listRead.getSection(0).getLong("value"));
+        assertFalse(outerRead.contains("later"));
+        assertEquals(3, out.toPrimitiveData().getSection("outer").getSection("inner").getLong("value"));
+    }
+
+    @Test
+    public void testDroppedSnapshotsAreForgotten() {
+        DataOutRoot out = new DataOutRoot();
+        out.write("value", 1);
+        WeakReference<PData> dropped = new WeakReference<>(out.toPrimitiveData());
+        for (int i = 0; i < 10 && dropped.get() != null; i++)
+            System.gc();
+        assumeTrue(dropped.get() == null);
+
+        PData kept = out.toPrimitiveData();
+        // only the snapshot that is still used has to take a copy
+        assertEquals(1, out.snapshots.size());
+        out.write("later", 2);
+        assertFalse(kept.contains("later"));
+    }
+
+    @Test
+    public void testSnapshotCanBeSaved() {
+        DataOutRoot out = new DataOutRoot();
+        out.write("hello", "hi");
+        out.write("object", new TestSerializable("value"));
+
+        PData pData = out.toPrimitiveData();
+        String json = new String(write(pData));
+        out.write("bye", "ole");
+
+        assertEquals(json, new String(write(pData)));
+        assertEquals("value", new DataIn(pData).read(TestSerializable.class, "object").value);
+    }
+
+    @Test
+    public void testEqualObjectsAreNotReferences() {
+        DataOutRoot out = new DataOutRoot();
+        // equal but different objects must be written separately
+        out.write("one", new TestRef("same", null));
+        out.write("two", new TestRef("same", null));
+
+        PData pData = out.toPrimitiveData();
+
+        assertEquals(PData.Type.DATA, pData.getType("two"));
+        assertNotEquals(pData.getSection("one").getLong("__id"), pData.getSection("two").getLong("__id"));
+    }
+
+    @Test
+    public void testManyObjects() {
+        DataOutRoot out = new DataOutRoot();
+        TestSerializable[] objects = new TestSerializable[1000];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = new TestSerializable("value" + i);
+            out.write("object" + i, objects[i]);
+        }
+        DataOut refs = out.createSection("refs");
+        for (int i = 0; i < objects.length; i++) {
+            refs.write("ref" + i, objects[i]);
+        }
+
+        PData pData = out.toPrimitiveData();
+        DataIn in = new DataIn(pData).readSection("refs");
+
+        for (int i = 0; i < objects.length; i++) {
+            assertEquals(pData.getSection("object" + i).getLong("__id"), pData.getSection("refs").getReference("ref" + i));
+            assertEquals("value" + i, in.read(TestSerializable.class, "ref" + i).value);
+        }
+    }
+
+    private static byte[] write(PData pData) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new JsonLoader().write(output, pData);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.texxel.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IdentityTableTest {
+
+    @Test
+    public void testIdsAreDense() {
+        IdentityTable table = new IdentityTable();
+        Object[] objects = new Object[1000];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = new Object();
+            assertEquals(i, table.add(objects[i]));
+        }
+
+        assertEquals(objects.length, table.size());
+        for (int i = 0; i < objects.length; i++) {
+            assertEquals(i, table.get(objects[i]));
+        }
+    }
+
+    @Test
+    public void testUsesIdentityNotEquality() {
+        IdentityTable table = new IdentityTable();
+        String a = new String("same");
+        String b = new String("same");
+        table.add(a);
+
+        assertEquals(0, table.get(a));
+        assertEquals(-1, table.get(b));
+        assertEquals(1, table.add(b));
+        assertEquals(1, table.get(b));
+    }
+}
@@ -1,7 +1,12 @@
 package com.github.texxel.data;
 
+import com.github.texxel.data.exceptions.InvalidDataException;
+import com.github.texxel.data.exceptions.WrongTypeException;
+import com.github.texxel.data.serializers.DataSerializer;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.*;
 
 import static com.github.texxel.AssertHelpers.*;
@@ -126,7 +131,60 @@ public class JavaObjectSerializationTests {
         out.write("array", array);
         PData data = out.toPrimitiveData();
 
-        assertEquals(PData.Type.LONG, data.getSection("array").getType("1"));
+        assertEquals(PData.Type.LONG_ARRAY, data.getSection("array").getType("values"));
+        assertArrayEquals(new long[] {1, 2, 3}, data.getSection("array").getLongArray("values"));
+    }
+
+    @Test
+    public void testAllPrimitiveArrays() {
+        long[] longs = { Long.MIN_VALUE, 0, Long.MAX_VALUE };
+        int[] ints = { Integer.MIN_VALUE, -1, Integer.MAX_VALUE };
+        short[] shorts = { Short.MIN_VALUE, 7 };
+        char[] chars = { 'a', '\uFFFF' };
+        byte[] bytes = { Byte.MIN_VALUE, 0, Byte.MAX_VALUE };
+        double[] doubles = { 0.5, -0.0, Double.MAX_VALUE };
+        float[] floats = { 1.5f, Float.MIN_VALUE };
+        boolean[] booleans = { true, false, true };
+
+        DataOutRoot out = new DataOutRoot();
+        out.write("longs", longs);
+        out.write("ints", ints);
+        out.write("shorts", shorts);
+        out.write("chars", chars);
+        out.write("bytes", bytes);
+        out.write("doubles", doubles);
+        out.write("floats", floats);
+        out.write("booleans", booleans);
+        out.write("empty", new float[0]);
+
+        for (DataLoader loader : new DataLoader[] { new JsonLoader(), new BinaryLoader() }) {
+            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+            loader.write(bytesOut, out.toPrimitiveData());
+            DataIn in = new DataIn(loader.read(new ByteArrayInputStream(bytesOut.toByteArray())));
+
+            assertArrayEquals(longs, in.read(long[].class, "longs"));
+            assertArrayEquals(ints, in.read(int[].class, "ints"));
+            assertArrayEquals(shorts, in.read(short[].class, "shorts"));
+            assertArrayEquals(chars, in.read(char[].class, "chars"));
+            assertArrayEquals(bytes, in.read(byte[].class, "bytes"));
+            assertArrayEquals(doubles, in.read(double[].class, "doubles"), 0);
+            assertArrayEquals(floats, in.read(float[].class, "floats"), 0);
+            assertTrue(Arrays.equals(booleans, in.read(boolean[].class, "booleans")));
+            assertEquals(0, in.read(float[].class, "empty").length);
+        }
+    }
+
+    @Test
+    public void testOldPrimitiveArraysCanBeRead() {
+        PData data = new PData();
+        data.createSection("array")
+                .set("__classname", int[].class.getName())
+                .set("__id", 0)
+                .set("size", 2)
+                .set("0", 5)
+                .set("1", 6);
+
+        assertArrayEquals(new int[] {5, 6}, new DataIn(data).read(int[].class, "array"));
     }
 
     @Test
@@ -179,4 +237,407 @@ public class JavaObjectSerializationTests {
         assertSetEquals(intsWrite, intsRead);
     }
 
+    @Test
+    public void testCollectionsAreWrittenAsLists() {
+        List<Object> original = new ArrayList<>();
+        original.add("one");
+        original.add(2L);
+        original.add(new TestClass("three"));
+        original.add(null);
+
+        DataOutRoot out = new DataOutRoot();
+        out.write("list", original);
+        out.write("again", original.get(2));
+        PData data = out.toPrimitiveData();
+
+        assertEquals(PData.Type.LIST, data.getSection("list").getType("values"));
+        for (DataLoader loader : new DataLoader[] { new JsonLoader(), new BinaryLoader() }) {
+            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+            loader.write(bytesOut, data);
+            DataIn in = new DataIn(loader.read(new ByteArrayInputStream(bytesOut.toByteArray())));
+
+            List<Object> read = in.read(List.class, "list");
+            assertListEquals(original, read);
+            assertSame(read.get(2), in.read(TestClass.class, "again"));
+        }
+    }
+
+    @Test
+    public void testOldCollectionsCanBeRead() {
+        PData data = new PData();
+        data.createSection("list")
+                .set("__classname", ArrayList.class.getName())
+                .set("__id", 0)
+                .set("size", 2)
+                .set("0", "a")
+                .set("1", "b");
+        data.createSection("map")
+                .set("__classname", HashMap.class.getName())
+                .set("__id", 1)
+                .set("size", 1)
+                .set("0-k", "key")
+                .set("0-v", "value");
+        PData lists = data.createSection("lists")
+                .set("__classname", HashMap.class.getName())
+                .set("__id", 2);
+        lists.createList("keys").add("key");
+        lists.createList("values").add("value");
+
+        DataIn in = new DataIn(data);
+        assertListEquals(Arrays.asList("a", "b"), in.read(List.class, "list"));
+        assertEquals("value", in.read(Map.class, "map").get("key"));
+        assertEquals("value", in.read(Map.class, "lists").get("key"));
+    }
+
+    @Test
+    public void testScalarsAreWrittenInline() {
+        final List<Object> values = new ArrayList<>();
+        values.add(1L);
+        values.add(2.5);
+        values.add(true);
+        values.add(3);
+        values.add((short) 4);
+        values.add((byte) 5);
+        values.add('c');
+        values.add(6.5f);
+        values.add(TestEnum.B);
+        values.add(TestClass.class);
+        values.add(int.class);
+
+        DataOutRoot out = new DataOutRoot();
+        out.write("values", values);
+        PData data = out.toPrimitiveData();
+
+        PData section = data.getSection("values");
+        PList list = section.getList("values");
+        assertEquals(1, list.getLong(0));
+        assertEquals(2.5, list.getDouble(1), 0);
+        assertTrue(list.getBoolean(2));
+        // the list already has a long so the int cannot be written as one
+        assertEquals(Integer.class.getName(), list.getSection(3).getString("__classname"));
+        assertEquals(TestEnum.class.getName(), section.getString("__classname:values"));
+        assertEquals("B", list.getString(8));
+        // the class would be read back as an enum
+        assertEquals(Class.class.getName(), list.getSection(9).getString("__classname"));
+        PData planned = DataOutRoot.writePlanned(new DataSerializable() {
+            @Override
+            public void bundleInto(DataOut out) {
+                out.write("values", values);
+            }
+        });
+        assertListEquals(values, new DataIn(planned).read(List.class, "values"));
+
+        for (DataLoader loader : new DataLoader[] { new JsonLoader(), new BinaryLoader() }) {
+            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+            loader.write(bytesOut, data);
+            DataIn in = new DataIn(loader.read(new ByteArrayInputStream(bytesOut.toByteArray())));
+
+            assertListEquals(values, in.read(List.class, "values"));
+        }
+    }
+
+    @Test
+    public void testScalarListsRecordTheirClassOnce() {
+        List<Integer> ints = new ArrayList<>();
+        List<Float> floats = new ArrayList<>();
+        List<TestEnum> enums = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ints.add(i);
+            floats.add(i + 0.5f);
+            enums.add(TestEnum.values()[i % 2]);
+        }
+        DataOutRoot out = new DataOutRoot();
+        out.write("ints", ints);
+        out.write("floats", floats);
+        out.write("enums", enums);
+        out.write("char", (Object) 'x');
+        PData data = out.toPrimitiveData();
+
+        PData section = data.getSection("ints");
+        assertEquals(Integer.class.getName(), section.getString("__classname:values"));
+        for (int i = 0; i < 10; i++)
+            assertEquals(i, section.getList("values").getLong(i));
+        assertEquals(1.5, data.getSection("floats").getList("values").getDouble(1), 0);
+        assertEquals("B", data.getSection("enums").getList("values").getString(1));
+        assertEquals((long) 'x', data.getLong("char"));
+
+        for (DataLoader loader : new DataLoader[] { new JsonLoader(), new BinaryLoader() }) {
+            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+            loader.write(bytesOut, data);
+            DataIn in = new DataIn(loader.read(new ByteArrayInputStream(bytesOut.toByteArray())));
+
+            assertListEquals(ints, in.read(List.class, "ints"));
+            assertListEquals(floats, in.read(List.class, "floats"));
+            assertListEquals(enums, in.read(List.class, "enums"));
+            assertEquals('x', in.read(Object.class, "char"));
+        }
+        ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+        new JsonLoader().write(bytesOut, data);
+        DataIn streamed = new DataIn(new JsonLoader().stream(new ByteArrayInputStream(bytesOut.toByteArray())));
+        assertListEquals(ints, streamed.read(List.class, "ints"));
+        assertListEquals(enums, streamed.read(List.class, "enums"));
+    }
+
+    @Test
+    public void testRewrittenKeysForgetTheirClass() {
+        DataOutRoot out = new DataOutRoot();
+        out.write("x", (Object) 5);
+        out.write("x", (Object) 7L);
+        out.write("y", (Object) TestEnum.A);
+        out.write("y", "hello");
+        out.write("z", (Object) 'c');
+        out.write("z", 9);
+        out.write("list", (Object) (short) 2);
+        out.createList("list").add((Object) 3);
+        PData data = out.toPrimitiveData();
+        data.set("deleted", 4);
+        data.set("__classname:deleted", Integer.class.getName());
+        data.delete("deleted");
+        data.set("deleted", 5);
+
+        DataIn in = new DataIn(data);
+        assertEquals(7L, in.read(Object.class, "x"));
+        assertEquals("hello", in.read(Object.class, "y"));
+        assertEquals(9L, in.read(Object.class, "z"));
+        assertEquals(3, in.read(DataInList.class, "list").read(Object.class, 0));
+        assertEquals(5L, in.read(Object.class, "deleted"));
+    }
+
+    @Test
+    public void testSectionsThatLookLikeScalarsAreSections() {
+        DataOutRoot out = new DataOutRoot();
+        out.createSection("section").write("__int", 5);
+        out.createSection("enum").write("__enum", TestEnum.class.getName() + ".A");
+
+        DataIn in = new DataIn(out.toPrimitiveData());
+        assertEquals(5, ((DataIn) in.read(Object.class, "section")).readLong("__int"));
+        assertTrue(in.read(Object.class, "enum") instanceof DataIn);
+    }
+
+    private enum CountedEnum {
+        ONE
+    }
+
+    private static class CountedEnumConverter implements DataConverter<CountedEnum> {
+        int writes;
+
+        @Override
+        public void serialize(CountedEnum obj, DataOut data) {
+            writes++;
+            data.write("ordinal", obj.ordinal());
+        }
+
+        @Override
+        public CountedEnum create(DataIn data, Class<? extends CountedEnum> actual) {
+            return CountedEnum.values()[data.readInt("ordinal")];
+        }
+
+        @Override
+        public void initialise(DataIn data, CountedEnum obj) {
+        }
+    }
+
+    @Test
+    public void testRegisteredScalarConvertersAreUsed() {
+        CountedEnumConverter converter = new CountedEnumConverter();
+        ConverterRegistry.register(CountedEnum.class, converter);
+        DataOutRoot out = new DataOutRoot();
+        out.write("value", CountedEnum.ONE);
+        PData data = out.toPrimitiveData();
+
+        assertEquals(1, converter.writes);
+        assertEquals(0, data.getSection("value").getLong("ordinal"));
+        assertEquals(CountedEnum.ONE, new DataIn(data).read(Object.class, "value"));
+    }
+
+    private static class Link {
+        Link other;
+    }
+
+    private static class EagerLinkConverter implements DataConverter<Link> {
+        @Override
+        public void serialize(Link obj, DataOut data) {
+            data.write("other", obj.other);
+        }
+
+        @Override
+        public Link create(DataIn data, Class<? extends Link> actual) {
+            // reads the other link before this one exists
+            Link link = new Link();
+            link.other = data.read(Link.class, "other");
+            return link;
+        }
+
+        @Override
+        public void initialise(DataIn data, Link obj) {
+        }
+    }
+
+    @Test
+    public void testReferencesReadWhileCreatingAreRejected() {
+        ConverterRegistry.register(Link.class, new EagerLinkConverter());
+        Link first = new Link();
+        first.other = new Link();
+        first.other.other = first;
+        DataOutRoot out = new DataOutRoot();
+        out.write("link", first);
+
+        try {
+            new DataIn(out.toPrimitiveData()).read(Link.class, "link");
+            fail("The cycle cannot be created");
+        } catch (InvalidDataException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(Link.class.getName()));
+        }
+    }
+
+    @Test
+    public void testOldScalarsCanBeRead() {
+        PData data = new PData();
+        data.createSection("int")
+                .set("__classname", Integer.class.getName())
+                .set("__id", 0)
+                .set("value", 5);
+        data.createSection("enum")
+                .set("__classname", TestEnum.class.getName())
+                .set("__id", 1)
+                .set("name", "A");
+
+        DataIn in = new DataIn(data);
+        assertEquals(5, in.read(Object.class, "int"));
+        assertEquals(TestEnum.A, in.read(TestEnum.class, "enum"));
+    }
+
+    @Test
+    public void testScalarsReadAsOtherNumbers() {
+        DataOutRoot out = new DataOutRoot();
+        out.write("long", 7L);
+        out.write("short", (short) 3);
+
+        DataIn in = new DataIn(out.toPrimitiveData());
+        assertEquals((short) 7, (short) in.read(short.class, "long"));
+        assertEquals('\u0007', (char) in.read(Character.class, "long"));
+        assertEquals((short) 3, (short) in.read(Short.class, "short"));
+    }
+
+    @Test(expected = WrongTypeException.class)
+    public void testTaggedScalarsKeepTheirType() {
+        DataOutRoot out = new DataOutRoot();
+        out.write("int", 3);
+
+        new DataIn(out.toPrimitiveData()).read(String.class, "int");
+    }
+
+    private static class OtherClass extends TestClass {
+        @Constructor
+        OtherClass(DataIn in) {
+            super(in);
+        }
+
+        OtherClass(String value) {
+            super(value);
+        }
+    }
+
+    @Test
+    public void testElementClassIsWrittenOnce() {
+        List<TestClass> original = new ArrayList<>();
+        original.add(new TestClass("a"));
+        original.add(new OtherClass("b"));
+        original.add(new TestClass("c"));
+
+        DataOutRoot out = new DataOutRoot();
+        out.write("list", original);
+        out.write("array", new TestClass[] { new TestClass("d"), new TestClass("e") });
+        PData data = out.toPrimitiveData();
+
+        PData list = data.getSection("list");
+        assertEquals(TestClass.class.getName(), list.getString("__classname:values"));
+        assertFalse(list.getList("values").getSection(0).contains("__classname"));
+        assertEquals(OtherClass.class.getName(), list.getList("values").getSection(1).getString("__classname"));
+        assertFalse(list.getList("values").getSection(2).contains("__classname"));
+
+        for (DataLoader loader : new DataLoader[] { new JsonLoader(), new BinaryLoader() }) {
+            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+            loader.write(bytesOut, data);
+            DataIn in = new DataIn(loader.read(new ByteArrayInputStream(bytesOut.toByteArray())));
+
+            List<TestClass> read = in.read(List.class, "list");
+            assertListEquals(original, read);
+            assertEquals(OtherClass.class, read.get(1).getClass());
+            assertArrayEquals(new TestClass[] { new TestClass("d"), new TestClass("e") },
+                    in.read(TestClass[].class, "array"));
+        }
+    }
+
+    @Test
+    public void testReferencesIntoListsWithElementClass() {
+        TestClass shared = new TestClass("shared");
+        List<TestClass> original = new ArrayList<>();
+        original.add(new TestClass("first"));
+        original.add(shared);
+
+        DataOutRoot out = new DataOutRoot();
+        out.write("list", original);
+        out.createSection("a").createSection("b").write("same", shared);
+        out.write("moved", original.get(0));
+        PData data = out.toPrimitiveData();
+
+        assertEquals(TestClass.class.getName(), data.getSection("moved").getString("__classname"));
+        // read the reference before the list so the object has to be found by its id
+        DataIn in = new DataIn(data);
+        TestClass same = in.readSection("a").readSection("b").read(TestClass.class, "same");
+        List<TestClass> read = in.read(List.class, "list");
+        assertSame(same, read.get(1));
+        assertSame(read.get(0), in.read(TestClass.class, "moved"));
+    }
+
+    private static class IdClass extends TestClass {
+        @Constructor
+        IdClass(DataIn in) {
+            super(in);
+        }
+
+        IdClass(String value) {
+            super(value);
+        }
+    }
+
+    @Test
+    public void testTypeIdsReplaceClassnames() {
+        ConverterRegistry.register(IdClass.class, new DataSerializer(), 1000);
+        IdClass original = new IdClass("id");
+
+        DataOutRoot out = new DataOutRoot();
+        out.write("obj", original);
+        PData data = out.toPrimitiveData();
+
+        assertEquals(1000, data.getSection("obj").getLong("__type"));
+        assertFalse(data.getSection("obj").contains("__classname"));
+        for (DataLoader loader : new DataLoader[] { new JsonLoader(), new BinaryLoader() }) {
+            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+            loader.write(bytesOut, data);
+            DataIn in = new DataIn(loader.read(new ByteArrayInputStream(bytesOut.toByteArray())));
+
+            IdClass read = in.read(IdClass.class, "obj");
+            assertEquals(original, read);
+            assertEquals(IdClass.class, read.getClass());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeIdsAreUnique() {
+        ConverterRegistry.register(IdClass.class, new DataSerializer(), 1001);
+        ConverterRegistry.register(OtherClass.class, new DataSerializer(), 1001);
+    }
+
+    @Test(expected = InvalidDataException.class)
+    public void testUnknownTypeId() {
+        PData data = new PData();
+        data.createSection("obj")
+                .set("__type", 123456)
+                .set("__id", 0);
+
+        new DataIn(data).read(Object.class, "obj");
+    }
+
 }
@@ -2,6 +2,7 @@ package com.github.texxel.data;
 
 import com.badlogic.gdx.utils.JsonReader;
 import com.badlogic.gdx.utils.JsonValue;
+import com.github.texxel.data.exceptions.DataSerializationException;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -9,6 +10,9 @@ import static org.junit.Assert.*;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
 
 public class JsonLoaderTest {
 
@@ -102,4 +106,227 @@ public class JsonLoaderTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testWriteEscapesStrings() {
+        PData data = new PData()
+                .set("quote", "say \"hi\"\\")
+                .set("control", "line\nbreak\ttab\u0001")
+                .set("unicode", "caf\u00e9 \u20ac \ud83d\ude00");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonLoader().write(out, data);
+        PData read = new JsonLoader().read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(data.getString("quote"), read.getString("quote"));
+        assertEquals(data.getString("control"), read.getString("control"));
+        assertEquals(data.getString("unicode"), read.getString("unicode"));
+    }
+
+    @Test
+    public void testWriteLargerThanBuffer() {
+        PData data = new PData();
+        for (int i = 0; i < 5000; i++) {
+            data.createSection("section" + i)
+                    .set("long", -i * 1000L)
+                    .set("double", i / 4.0)
+                    .set("string", "value " + i);
+        }
+        data.set("min", Long.MIN_VALUE);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonLoader().write(out, data);
+        PData read = new JsonLoader().read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(data.toString(), read.toString());
+    }
+
+    @Test
+    public void testReadNumbers() {
+        String data = "{ \"zero\": 0, \"negative\": -42, \"max\": 9223372036854775807, " +
+                "\"min\": -9223372036854775808, \"exp\": 1.5e3, \"negExp\": -2E-2, \"nan\": NaN }";
+        PData pData = new JsonLoader().read(data.getBytes());
+
+        assertEquals(0, pData.getLong("zero"));
+        assertEquals(-42, pData.getLong("negative"));
+        assertEquals(Long.MAX_VALUE, pData.getLong("max"));
+        assertEquals(Long.MIN_VALUE, pData.getLong("min"));
+        assertEquals(PData.Type.DOUBLE, pData.getType("exp"));
+        assertEquals(1500, pData.getDouble("exp"), 0.001);
+        assertEquals(-0.02, pData.getDouble("negExp"), 0.0001);
+        assertTrue(Double.isNaN(pData.getDouble("nan")));
+    }
+
+    @Test
+    public void testReadEscapedNames() {
+        String data = "{ \"a\\\"b\": 1, \"caf\u00e9\": 2, \"\\u0041\": 3 }";
+        PData pData = new JsonLoader().read(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(1, pData.getLong("a\"b"));
+        assertEquals(2, pData.getLong("caf\u00e9"));
+        assertEquals(3, pData.getLong("A"));
+    }
+
+    @Test(expected = DataSerializationException.class)
+    public void testMalformedJson() {
+        new JsonLoader().read("{ \"a\": 1, }".getBytes());
+    }
+
+    @Test
+    public void testReferences() {
+        PData pData = new PData()
+                .setReference("ref", 12)
+                .set("notRef", "__#12x")
+                .set("prefix", "__#")
+                .set("looksLikeRef", "__#0");
+        pData.createList("list").addReference(3).add("__#3");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonLoader().write(out, pData);
+
+        String json = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        PData read = new JsonLoader().read(out.toByteArray());
+
+        assertTrue(json.contains("\"ref\":{\"__ref\":12}"));
+        assertEquals(12, read.getReference("ref"));
+        assertEquals("__#12x", read.getString("notRef"));
+        assertEquals("__#", read.getString("prefix"));
+        assertEquals("__#0", read.getString("looksLikeRef"));
+        assertEquals(PData.Type.REFERENCE, read.getList("list").getType(0));
+        assertEquals("__#3", read.getList("list").getString(1));
+    }
+
+    @Test
+    public void testSectionsThatLookLikeTags() {
+        PData pData = new PData();
+        pData.createSection("ref").set("__ref", 5);
+        pData.createSection("marker").set("__section", true).set("other", 1);
+        pData.createSection("later").set("first", 1).set("__ref", 2);
+        pData.createList("list").addSection().set("__ref", 7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonLoader().write(out, pData);
+
+        PData read = new JsonLoader().read(out.toByteArray());
+        PData streamed = new JsonLoader().stream(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(pData.toString(), read.toString());
+        assertEquals(5, streamed.getSection("ref").getLong("__ref"));
+        assertTrue(streamed.getSection("marker").getBoolean("__section"));
+        assertEquals(2, streamed.getSection("later").getLong("__ref"));
+        assertEquals(7, streamed.getList("list").getSection(0).getLong("__ref"));
+    }
+
+    @Test
+    public void testPackedArrays() {
+        PData pData = new PData()
+                .setArray("longs", new long[] {1, -2, Long.MAX_VALUE})
+                .setArray("doubles", new double[] {1.0, 0.25, Double.NaN});
+        for (int length = 0; length < 6; length++) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++)
+                bytes[i] = (byte) (i * 97 - 128);
+            pData.setArray("bytes" + length, bytes);
+        }
+        byte[] big = new byte[20000];
+        new Random(5).nextBytes(big);
+        pData.setArray("big", big);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonLoader().write(out, pData);
+
+        String json = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        PData read = new JsonLoader().read(out.toByteArray());
+
+        assertTrue(json.contains("\"longs\":{\"__longs\":[1,-2,9223372036854775807]}"));
+        assertTrue(json.contains("\"bytes3\":{\"__bytes\":\"gOFC\"}"));
+        assertArrayEquals(pData.getLongArray("longs"), read.getLongArray("longs"));
+        assertArrayEquals(pData.getDoubleArray("doubles"), read.getDoubleArray("doubles"), 0);
+        for (int length = 0; length < 6; length++)
+            assertArrayEquals(pData.getByteArray("bytes" + length), read.getByteArray("bytes" + length));
+        assertArrayEquals(big, read.getByteArray("big"));
+        PData streamed = new JsonLoader().stream(new ByteArrayInputStream(out.toByteArray()));
+        assertArrayEquals(pData.getByteArray("bytes5"), streamed.getByteArray("bytes5"));
+        assertArrayEquals(big, streamed.getByteArray("big"));
+        assertArrayEquals(pData.getLongArray("longs"), streamed.getLongArray("longs"));
+        assertArrayEquals(pData.getDoubleArray("doubles"), streamed.getDoubleArray("doubles"), 0);
+    }
+
+    @Test
+    public void testNumberListsKeepTheirTypes() {
+        final ArrayList<Object> numbers = new ArrayList<>();
+        numbers.add(1L);
+        numbers.add(2.5);
+        numbers.add(3L);
+        DataOutRoot out = new DataOutRoot();
+        out.write("numbers", numbers);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new JsonLoader().write(bytes, out.toPrimitiveData());
+
+        PData read = new JsonLoader().read(bytes.toByteArray());
+        PData streamed = new JsonLoader().stream(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals(numbers, new DataIn(read).read(ArrayList.class, "numbers"));
+        assertEquals(numbers, new DataIn(streamed).read(ArrayList.class, "numbers"));
+    }
+
+    @Test
+    public void testStringsAreNotBytes() {
+        PData pData = new PData()
+                .set("docs", "__base64:see docs")
+                .set("valid", "__base64:AAAA")
+                .set("tag", "__bytes");
+        pData.createSection("section").set("__bytes", "AAAA");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonLoader().write(out, pData);
+
+        PData read = new JsonLoader().read(out.toByteArray());
+        PData streamed = new JsonLoader().stream(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(pData.toString(), read.toString());
+        assertEquals("__base64:see docs", streamed.getString("docs"));
+        assertEquals("__base64:AAAA", streamed.getString("valid"));
+        assertEquals("__bytes", streamed.getString("tag"));
+        assertEquals("AAAA", streamed.getSection("section").getString("__bytes"));
+    }
+
+    @Test
+    public void testReadMixedNumberArray() {
+        PData pData = new JsonLoader().read("{ \"mixed\": [1, 2.5, 3], \"empty\": [] }".getBytes());
+
+        assertEquals(PData.Type.LONG, pData.getList("mixed").getType(0));
+        assertEquals(PData.Type.DOUBLE, pData.getList("mixed").getType(1));
+        assertArrayEquals(new double[] {1, 2.5, 3}, pData.getDoubleArray("mixed"), 0);
+        assertEquals(0, pData.getDoubleArray("empty").length);
+    }
+
+    @Test
+    public void testLists() {
+        PData pData = new PData();
+        PList list = pData.createList("list")
+                .add(1)
+                .add("two")
+                .addNull()
+                .add(false)
+                .addReference(3);
+        list.addSection().set("inner", 4);
+        list.addList().add("nested");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonLoader().write(out, pData);
+
+        String json = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        PData read = new JsonLoader().read(out.toByteArray());
+
+        assertEquals("{\"list\":[1,\"two\",null,false,{\"__ref\":3},{\"inner\":4},[\"nested\"]]}", json);
+        assertEquals(pData.toString(), read.toString());
+    }
+
+    @Test
+    public void testReadNumbersThenOtherValuesAsList() {
+        PData pData = new JsonLoader().read("{ \"list\": [1, 2.5, \"three\", [4]] }".getBytes());
+
+        PList list = pData.getList("list");
+        assertEquals(4, list.size());
+        assertEquals(1, list.getLong(0));
+        assertEquals(2.5, list.getDouble(1), 0);
+        assertEquals("three", list.getString(2));
+        assertEquals(4, list.getList(3).getLong(0));
+    }
+
+}
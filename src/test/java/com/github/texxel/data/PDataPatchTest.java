@@ -0,0 +1,135 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.InvalidDataException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class PDataPatchTest {
+
+    private static PData tree() {
+        PData data = new PData();
+        data.set("name", "hero").set("level", 3).set("hp", 12.5);
+        data.setArray("stats", new long[] {1, 2, 3});
+        PData position = data.createSection("position");
+        position.set("x", 4).set("y", 7);
+        data.createSection("inventory").createSection("bag").set("gold", 10);
+        PList items = data.createList("items");
+        items.add("sword").addSection().set("kind", "potion");
+        return data;
+    }
+
+    @Test
+    public void testSameTreesGiveAnEmptyPatch() {
+        PData patch = PDataPatch.diff(tree(), tree());
+        assertTrue(PDataPatch.isEmpty(patch));
+    }
+
+    @Test
+    public void testDiffOnlyHoldsTheChanges() {
+        PData base = tree();
+        PData target = tree();
+        target.set("level", 4);
+        target.delete("hp");
+        target.set("title", "sir");
+        target.getSection("inventory").getSection("bag").set("gold", 11);
+
+        PData patch = PDataPatch.diff(base, target);
+
+        PData set = patch.getSection("set");
+        assertEquals(2, set.keys().size());
+        assertEquals(4, set.getLong("level"));
+        assertEquals("sir", set.getString("title"));
+        assertEquals(1, patch.getList("delete").size());
+        assertEquals("hp", patch.getList("delete").getString(0));
+        PData sections = patch.getSection("patch");
+        assertEquals(1, sections.keys().size());
+        assertEquals(11, sections.getSection("inventory").getSection("patch").getSection("bag")
+                .getSection("set").getLong("gold"));
+        // the base is left alone
+        assertEquals(3, base.getLong("level"));
+    }
+
+    @Test
+    public void testApply() {
+        PData base = tree();
+        PData target = tree();
+        target.set("level", 4);
+        target.delete("position");
+        target.setArray("stats", new long[] {1, 2, 4});
+        target.getList("items").getSection(1).set("kind", "scroll");
+        target.getSection("inventory").createSection("pouch").set("gems", 2);
+        target.getSection("inventory").getSection("bag").setNull("gold");
+
+        PData patch = PDataPatch.diff(base, target);
+        assertSame(base, PDataPatch.apply(base, patch));
+
+        assertTrue(PDataPatch.isEmpty(PDataPatch.diff(base, target)));
+        assertFalse(base.contains("position"));
+        assertEquals("scroll", base.getList("items").getSection(1).getString("kind"));
+        assertEquals(2, base.getSection("inventory").getSection("pouch").getLong("gems"));
+    }
+
+    @Test
+    public void testApplyDoesNotShareThePatch() {
+        PData base = tree();
+        PData target = tree();
+        target.createSection("new").set("a", 1);
+
+        PData patch = PDataPatch.diff(base, target);
+        PDataPatch.apply(base, patch);
+        base.getSection("new").set("a", 2);
+
+        assertEquals(1, patch.getSection("set").getSection("new").getLong("a"));
+    }
+
+    @Test
+    public void testPatchSurvivesSaving() {
+        DataLoader[] loaders = { new JsonLoader(), new BinaryLoader() };
+        for (DataLoader loader : loaders) {
+            PData base = tree();
+            PData target = tree();
+            target.set("name", "villain");
+            target.getSection("position").delete("y");
+            target.getList("items").add(5);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            loader.write(bytes, PDataPatch.diff(base, target));
+            PData patch = loader.read(new ByteArrayInputStream(bytes.toByteArray()));
+            PDataPatch.apply(base, patch);
+
+            assertTrue(PDataPatch.isEmpty(PDataPatch.diff(base, target)));
+        }
+    }
+
+    @Test
+    public void testApplyKeepsTheHeaderFirst() {
+        PData base = new PData();
+        base.set("__classname", "Old").set("name", "hero");
+        PData target = new PData();
+        target.set("__classname", "New").set("name", "hero").set("__id", 3);
+
+        PDataPatch.apply(base, PDataPatch.diff(base, target));
+
+        Iterator<String> keys = base.keys().iterator();
+        assertEquals("__classname", keys.next());
+        assertEquals("__id", keys.next());
+        assertEquals("name", keys.next());
+        assertEquals("New", base.getString("__classname"));
+    }
+
+    @Test(expected = InvalidDataException.class)
+    public void testPatchingAMissingSection() {
+        PData base = tree();
+        PData target = tree();
+        target.getSection("position").set("x", 5);
+        PData patch = PDataPatch.diff(base, target);
+
+        base.delete("position");
+        PDataPatch.apply(base, patch);
+    }
+}
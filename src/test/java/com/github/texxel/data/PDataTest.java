@@ -1,6 +1,7 @@
 package com.github.texxel.data;
 
 import com.github.texxel.data.PData;
+import com.github.texxel.data.exceptions.InvalidDataException;
 import com.github.texxel.data.exceptions.MissingDataException;
 import com.github.texxel.data.exceptions.WrongTypeException;
 import org.junit.Test;
@@ -161,4 +162,134 @@ public class PDataTest {
 
         data.getString("int");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testKeysKeepInsertionOrder() {
+        PData data = new PData();
+        data.set("c", 1).set("a", 2).set("b", 3);
+        data.set("a", 4);
+
+        assertArrayEquals(new String[] { "c", "a", "b" }, data.keys().toArray());
+    }
+
+    @Test
+    public void testOverwriteWithDifferentType() {
+        PData data = new PData();
+        data.set("value", 1);
+        data.set("value", "one");
+        data.set("value", 1.5);
+
+        assertEquals(PData.Type.DOUBLE, data.getType("value"));
+        assertEquals(1.5, data.getDouble("value"), 0);
+        assertEquals(1, data.keys().size());
+    }
+
+    @Test
+    public void testManyKeysWithDeletes() {
+        PData data = new PData();
+        for (int i = 0; i < 1000; i++) {
+            data.set("key" + i, i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            data.delete("key" + i);
+        }
+        for (int i = 1000; i < 1500; i++) {
+            data.set("key" + i, i);
+        }
+
+        assertEquals(1000, data.keys().size());
+        for (int i = 0; i < 1500; i++) {
+            if (i < 1000 && i % 2 == 0)
+                assertFalse(data.contains("key" + i));
+            else
+                assertEquals(i, data.getLong("key" + i));
+        }
+    }
+
+    @Test
+    public void testExtremeValues() {
+        PData data = new PData()
+                .set("max", Long.MAX_VALUE)
+                .set("min", Long.MIN_VALUE)
+                .set("nan", Double.NaN)
+                .set("negZero", -0.0);
+
+        assertEquals(Long.MAX_VALUE, data.getLong("max"));
+        assertEquals(Long.MIN_VALUE, data.getLong("min"));
+        assertTrue(Double.isNaN(data.getDouble("nan")));
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(data.getDouble("negZero")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testKeysCannotBeModified() {
+        PData data = new PData().set("one", 1);
+
+        data.keys().remove("one");
+    }
+
+    @Test
+    public void testSmallSectionGrowsPastDeletes() {
+        PData data = new PData();
+        for (int i = 0; i < 4; i++) {
+            data.set("key" + i, i);
+        }
+        data.delete("key1");
+        data.delete("key2");
+        for (int i = 4; i < 20; i++) {
+            data.set("key" + i, i);
+        }
+        data.delete("key10");
+
+        assertEquals(17, data.keys().size());
+        assertFalse(data.contains("key1"));
+        assertFalse(data.contains("key10"));
+        assertEquals(0, data.getLong("key0"));
+        assertEquals(19, data.getLong("key19"));
+        assertEquals(data.toString(), data.copy().toString());
+    }
+
+    @Test
+    public void testPackedArrays() {
+        PData data = new PData()
+                .setArray("longs", new long[] {1, 2})
+                .setArray("doubles", new double[] {0.5})
+                .setArray("bytes", new byte[] {3})
+                .setArray("null", (long[]) null);
+
+        assertEquals(PData.Type.LONG_ARRAY, data.getType("longs"));
+        assertEquals(2, data.getLongArray("longs")[1]);
+        assertEquals(0.5, data.getDoubleArray("doubles")[0], 0);
+        assertEquals(2.0, data.getDoubleArray("longs")[1], 0);
+        assertEquals(3, data.getByteArray("bytes")[0]);
+        assertEquals(PData.Type.NULL, data.getType("null"));
+        assertEquals(2, data.copy().getLongArray("longs").length);
+    }
+
+    @Test(expected = WrongTypeException.class)
+    public void testPackedArrayWrongType() {
+        new PData().setArray("doubles", new double[] {0.5}).getLongArray("doubles");
+    }
+
+    @Test
+    public void testFailedDecodingIsNotForgotten() {
+        PData data = new PData();
+        data.pending = new PendingEntries() {
+            int calls;
+
+            @Override
+            boolean decodeNext(PData pData) {
+                if (calls++ == 0)
+                    throw new InvalidDataException("broken");
+                pData.set("key", 1);
+                return false;
+            }
+        };
+
+        try {
+            data.contains("key");
+            fail();
+        } catch (InvalidDataException expected) {
+        }
+        assertEquals(1, data.getLong("key"));
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.texxel.data;
+
+import com.github.texxel.data.exceptions.MissingDataException;
+import com.github.texxel.data.exceptions.WrongTypeException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PListTest {
+
+    @Test
+    public void testAddAndGet() {
+        PList list = new PList()
+                .add(1)
+                .add(0.5)
+                .add("hi")
+                .add(true)
+                .addNull()
+                .addReference(7);
+        list.addSection().set("inner", 2);
+        list.addList().add(3);
+
+        assertEquals(8, list.size());
+        assertEquals(1, list.getLong(0));
+        assertEquals(0.5, list.getDouble(1), 0);
+        assertEquals(1.0, list.getDouble(0), 0);
+        assertEquals("hi", list.getString(2));
+        assertTrue(list.getBoolean(3));
+        assertEquals(PData.Type.NULL, list.getType(4));
+        assertEquals(7, list.getReference(5));
+        assertEquals(2, list.getSection(6).getLong("inner"));
+        assertEquals(3, list.getList(7).getLong(0));
+    }
+
+    @Test
+    public void testGrows() {
+        PList list = new PList();
+        for (int i = 0; i < 1000; i++)
+            list.add(i);
+
+        assertEquals(1000, list.size());
+        for (int i = 0; i < 1000; i++)
+            assertEquals(i, list.getLong(i));
+    }
+
+    @Test(expected = WrongTypeException.class)
+    public void testWrongType() {
+        new PList().add("hi").getLong(0);
+    }
+
+    @Test(expected = MissingDataException.class)
+    public void testOutOfRange() {
+        new PList().add(1).getLong(1);
+    }
+
+    @Test
+    public void testCopyIsDeep() {
+        PData data = new PData();
+        data.createList("list").addSection().set("value", 1);
+
+        PData copy = data.copy();
+        copy.getList("list").getSection(0).set("value", 2);
+        copy.getList("list").add(3);
+
+        assertEquals(1, data.getList("list").getSection(0).getLong("value"));
+        assertEquals(1, data.getList("list").size());
+    }
+
+    @Test
+    public void testPackedArraysCanBeReadAsLists() {
+        PData data = new PData()
+                .setArray("longs", new long[] {1, 2})
+                .setArray("doubles", new double[] {0.5});
+
+        assertEquals(2, data.getList("longs").getLong(1));
+        assertEquals(0.5, data.getList("doubles").getDouble(0), 0);
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.texxel.data;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class SectionCacheTest {
+
+    enum Colour { RED, BLUE }
+
+    static class Thing implements DataSerializable, Versioned {
+
+        String name;
+        Colour colour = Colour.RED;
+        Thing other;
+        long version;
+        int writes;
+
+        Thing(String name) {
+            this.name = name;
+        }
+
+        @Constructor
+        private Thing(DataIn data) {
+            name = data.read(String.class, "name");
+            colour = data.read(Colour.class, "colour");
+            other = data.read(Thing.class, "other");
+        }
+
+        void rename(String name) {
+            this.name = name;
+            version++;
+        }
+
+        @Override
+        public long dataVersion() {
+            return version;
+        }
+
+        @Override
+        public void bundleInto(DataOut data) {
+            writes++;
+            data.write("name", name);
+            data.write("colour", colour);
+            data.createSection("extra").write("length", name.length());
+            data.write("other", other);
+        }
+    }
+
+    private static PData save(SectionCache cache, Object... objects) {
+        DataOutRoot out = cache == null ? new DataOutRoot() : new DataOutRoot(cache);
+        for (int i = 0; i < objects.length; i++)
+            out.write("thing" + i, objects[i]);
+        return out.toPrimitiveData();
+    }
+
+    @Test
+    public void testUnchangedObjectsAreNotWrittenAgain() {
+        SectionCache cache = new SectionCache();
+        Thing a = new Thing("a");
+        Thing b = new Thing("bee");
+
+        save(cache, a, b);
+        PData second = save(cache, a, b);
+
+        assertEquals(1, a.writes);
+        assertEquals(1, b.writes);
+        assertEquals(save(null, a, b).toString(), second.toString());
+        DataIn in = new DataIn(second);
+        assertEquals("bee", in.read(Thing.class, "thing1").name);
+        assertEquals(Colour.RED, in.read(Thing.class, "thing1").colour);
+    }
+
+    @Test
+    public void testChangedObjectsAreWrittenAgain() {
+        SectionCache cache = new SectionCache();
+        Thing a = new Thing("a");
+        save(cache, a);
+
+        a.rename("changed");
+        PData pData = save(cache, a);
+
+        assertEquals(2, a.writes);
+        assertEquals("changed", pData.getSection("thing0").getString("name"));
+        assertEquals(7, pData.getSection("thing0").getSection("extra").getLong("length"));
+    }
+
+    @Test
+    public void testObjectsHoldingObjectsAreNotCached() {
+        SectionCache cache = new SectionCache();
+        Thing a = new Thing("a");
+        Thing b = new Thing("b");
+        a.other = b;
+
+        save(cache, a, b);
+        PData pData = save(cache, a, b);
+
+        assertEquals(2, a.writes);
+        assertEquals(1, b.writes);
+        DataIn in = new DataIn(pData);
+        assertSame(in.read(Thing.class, "thing1"), in.read(Thing.class, "thing0").other);
+    }
+
+    @Test
+    public void testObjectsNotSavedAreForgotten() {
+        SectionCache cache = new SectionCache();
+        Thing a = new Thing("a");
+        Thing b = new Thing("b");
+
+        save(cache, a, b);
+        assertEquals(2, cache.size());
+        save(cache, a);
+        save(cache, a);
+
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCachedSectionsCannotBeChanged() {
+        SectionCache cache = new SectionCache();
+        Thing a = new Thing("a");
+        save(cache, a);
+
+        PData first = save(cache, a);
+        first.getSection("thing0").getSection("extra").set("length", 100);
+
+        assertEquals(1, save(cache, a).getSection("thing0").getSection("extra").getLong("length"));
+    }
+
+    @Test
+    public void testPlannedAndStreamedWrites() {
+        SectionCache cache = new SectionCache();
+        final ArrayList<Thing> things = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            things.add(new Thing("thing" + i));
+        DataSerializable content = new DataSerializable() {
+            @Override
+            public void bundleInto(DataOut out) {
+                out.write("things", things);
+            }
+        };
+        PData expected = DataOutRoot.writePlanned(content);
+        int perWrite = things.get(0).writes;
+
+        DataOutRoot.writePlanned(content, cache);
+        int writes = things.get(0).writes;
+        assertEquals(expected.toString(), DataOutRoot.writePlanned(content, cache).toString());
+        assertEquals(writes, things.get(0).writes);
+
+        ByteArrayOutputStream cached = new ByteArrayOutputStream();
+        DataOutRoot.writeStreamed(content, new JsonLoader().sink(cached), cache);
+        ByteArrayOutputStream uncached = new ByteArrayOutputStream();
+        DataOutRoot.writeStreamed(content, new JsonLoader().sink(uncached));
+        assertArrayEquals(uncached.toByteArray(), cached.toByteArray());
+        // only the uncached write called the converter
+        assertEquals(writes + perWrite, things.get(0).writes);
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.texxel.data.processor;
+
+import com.github.texxel.data.ConverterRegistry;
+import com.github.texxel.data.DataConverter;
+import com.github.texxel.data.DataIn;
+import com.github.texxel.data.DataOutRoot;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class ConverterProcessorTest {
+
+    private static final String SOURCE =
+            "package gen;\n" +
+            "import com.github.texxel.data.*;\n" +
+            "@GenerateConverter\n" +
+            "public class Point implements DataSerializable {\n" +
+            "    public final int x;\n" +
+            "    public static int constructed;\n" +
+            "    public Point(int x) { this.x = x; }\n" +
+            "    Point(DataIn in) { x = in.readInt(\"x\"); constructed++; }\n" +
+            "    public void bundleInto(DataOut out) { out.write(\"x\", x); }\n" +
+            "    @GenerateConverter\n" +
+            "    static class Inner implements DataSerializable {\n" +
+            "        Inner() {}\n" +
+            "        public void bundleInto(DataOut out) {}\n" +
+            "    }\n" +
+            "}\n";
+
+    private static File compile(String source, ByteArrayOutputStream errors) throws IOException {
+        File dir = Files.createTempDirectory("processor").toFile();
+        File sourceFile = new File(dir, "gen/Point.java");
+        sourceFile.getParentFile().mkdirs();
+        Files.write(sourceFile.toPath(), source.getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int result = compiler.run(null, null, errors,
+                "-classpath", System.getProperty("java.class.path"),
+                "-processor", ConverterProcessor.class.getName(),
+                "-d", dir.getPath(), "-s", dir.getPath(),
+                sourceFile.getPath());
+        return result == 0 ? dir : null;
+    }
+
+    @Test
+    public void testGeneratesConverters() throws Exception {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        File dir = compile(SOURCE, errors);
+        assertNotNull(errors.toString(), dir);
+        assertTrue(new File(dir, "gen/Point_DataConverter.java").exists());
+        assertTrue(new File(dir, "gen/Point_Inner_DataConverter.java").exists());
+        String services = new String(Files.readAllBytes(new File(dir, ConverterProcessor.SERVICE_FILE).toPath()),
+                StandardCharsets.UTF_8);
+        assertEquals("gen.Point_DataConverter\ngen.Point_Inner_DataConverter\n", services);
+
+        ClassLoader loader = new URLClassLoader(new URL[] { dir.toURI().toURL() }, getClass().getClassLoader());
+        Class point = loader.loadClass("gen.Point");
+        ConverterRegistry.registerGenerated(loader);
+        DataConverter converter = ConverterRegistry.find(point);
+        assertEquals("gen.Point_DataConverter", converter.getClass().getName());
+
+        DataOutRoot out = new DataOutRoot();
+        out.write("point", point.getConstructor(int.class).newInstance(7));
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        Object read;
+        try {
+            read = new DataIn(out.toPrimitiveData()).read(Object.class, "point");
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+        assertSame(point, read.getClass());
+        assertEquals(7, point.getField("x").get(read));
+        assertEquals(1, point.getField("constructed").get(null));
+    }
+
+    @Test
+    public void testRejectsPrivateConstructors() throws Exception {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        File dir = compile(SOURCE.replace("    Point(DataIn in)", "    private Point(DataIn in)"), errors);
+        assertNull(dir);
+        assertTrue(errors.toString(), errors.toString().contains("cannot be private"));
+    }
+}
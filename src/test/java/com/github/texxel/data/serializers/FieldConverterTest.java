@@ -0,0 +1,103 @@
+package com.github.texxel.data.serializers;
+
+import com.github.texxel.data.*;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FieldConverterTest {
+
+    static class Base {
+        int shared = 1;
+        String name;
+    }
+
+    static class Plain extends Base {
+        static int ignoredStatic = 3;
+
+        private final int shared;
+        long aLong;
+        double aDouble;
+        float aFloat;
+        boolean aBoolean;
+        short aShort;
+        byte aByte;
+        char aChar;
+        Object boxed;
+        int[] array;
+        List<String> list;
+        Plain other;
+        transient int ignoredTransient = 4;
+
+        Plain(int shared) {
+            this.shared = shared;
+        }
+    }
+
+    @BeforeClass
+    public static void register() {
+        ConverterRegistry.register(Base.class, new FieldConverter());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Plain plain = new Plain(2);
+        ((Base) plain).shared = 5;
+        plain.name = "plain";
+        plain.aLong = Long.MIN_VALUE;
+        plain.aDouble = 0.25;
+        plain.aFloat = 1.5f;
+        plain.aBoolean = true;
+        plain.aShort = -7;
+        plain.aByte = 9;
+        plain.aChar = 'x';
+        plain.boxed = 12;
+        plain.array = new int[] {1, 2};
+        plain.list = new ArrayList<>();
+        plain.list.add("a");
+        plain.other = plain;
+        plain.ignoredTransient = 8;
+
+        DataOutRoot out = new DataOutRoot();
+        out.write("plain", plain);
+        PData data = out.toPrimitiveData();
+        Plain read = new DataIn(data).read(Plain.class, "plain");
+
+        assertEquals(5, data.getSection("plain").getLong("Base.shared"));
+        assertFalse(data.getSection("plain").contains("ignoredStatic"));
+        assertFalse(data.getSection("plain").contains("ignoredTransient"));
+        assertEquals(2, read.shared);
+        assertEquals(5, ((Base) read).shared);
+        assertEquals("plain", read.name);
+        assertEquals(Long.MIN_VALUE, read.aLong);
+        assertEquals(0.25, read.aDouble, 0);
+        assertEquals(1.5f, read.aFloat, 0);
+        assertTrue(read.aBoolean);
+        assertEquals(-7, read.aShort);
+        assertEquals(9, read.aByte);
+        assertEquals('x', read.aChar);
+        assertEquals(12, read.boxed);
+        assertArrayEquals(new int[] {1, 2}, read.array);
+        assertEquals(plain.list, read.list);
+        assertSame(read, read.other);
+        assertEquals(0, read.ignoredTransient);
+    }
+
+    @Test
+    public void testMissingFieldsKeepDefaults() {
+        PData data = new PData();
+        data.createSection("plain")
+                .set("__classname", Plain.class.getName())
+                .set("__id", 0)
+                .set("name", "old");
+
+        Plain read = new DataIn(data).read(Plain.class, "plain");
+        assertEquals("old", read.name);
+        assertEquals(0, read.aLong);
+        assertNull(read.list);
+    }
+}
@@ -3,8 +3,10 @@ package com.github.texxel.data.serializers;
 import com.github.texxel.data.Constructor;
 import com.github.texxel.data.DataIn;
 import com.github.texxel.data.DataOut;
+import com.github.texxel.data.DataOutRoot;
 import com.github.texxel.data.DataSerializable;
 import com.github.texxel.data.exceptions.DataException;
+import com.github.texxel.data.exceptions.DataSerializationException;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -89,4 +91,179 @@ public class ObjectCreatorTest {
         ObjectCreator.initialise(obj, null);
     }
 
-}
\ No newline at end of file
+    private static class NoSupportedConstructor {
+        private NoSupportedConstructor(int value) {}
+    }
+
+    @Test
+    public void testRepeatedConstruction() {
+        for (int i = 0; i < 3; i++) {
+            DataConstructor obj = ObjectCreator.create(DataConstructor.class);
+            DataIn data = mock(DataIn.class);
+            ObjectCreator.initialise(obj, data);
+
+            assertSame(data, obj.data);
+        }
+    }
+
+    @Test( expected = DataException.class)
+    public void testNoSupportedConstructor() {
+        NoSupportedConstructor obj = ObjectCreator.create(NoSupportedConstructor.class);
+        ObjectCreator.initialise(obj, null);
+    }
+
+    private static class Parent {
+        final String parentValue;
+
+        Parent(String parentValue) {
+            this.parentValue = parentValue;
+        }
+    }
+
+    private static class Child extends Parent {
+        private final DataIn data;
+        private int number = 5;
+
+        private Child(DataIn data) {
+            super("parent");
+            this.data = data;
+        }
+    }
+
+    @Test
+    public void testSuperClassFieldsAreConstructed() {
+        Child obj = ObjectCreator.create(Child.class);
+        DataIn data = mock(DataIn.class);
+        ObjectCreator.initialise(obj, data);
+
+        assertEquals("parent", obj.parentValue);
+        assertSame(data, obj.data);
+        assertEquals(5, obj.number);
+    }
+
+    private static class Owner implements DataSerializable {
+        final Part part;
+        final Runnable task;
+        Owner found;
+
+        private Owner() {
+            part = new Part(this);
+            task = new Runnable() {
+                @Override
+                public void run() {
+                    found = Owner.this;
+                }
+            };
+        }
+
+        @Override
+        public void bundleInto (DataOut data) {}
+    }
+
+    private static class Part {
+        final Owner owner;
+
+        Part(Owner owner) {
+            this.owner = owner;
+        }
+    }
+
+    @Test
+    public void testConstructorsRunOnTheCreatedObject() {
+        Owner obj = ObjectCreator.create(Owner.class);
+        ObjectCreator.initialise(obj, null);
+
+        assertSame(obj, obj.part.owner);
+        obj.task.run();
+        assertSame(obj, obj.found);
+    }
+
+    @Test
+    public void testReflectionInstantiator() {
+        Instantiator previous = ObjectCreator.instantiator;
+        DataSerializer.setInstantiator(new ReflectionInstantiator());
+        try {
+            Child obj = ObjectCreator.create(Child.class);
+            assertNull(obj.parentValue);
+
+            DataIn data = mock(DataIn.class);
+            ObjectCreator.initialise(obj, data);
+            assertEquals("parent", obj.parentValue);
+            assertSame(data, obj.data);
+            assertEquals(5, obj.number);
+
+            NoArgConstructor noArgs = ObjectCreator.create(NoArgConstructor.class);
+            ObjectCreator.initialise(noArgs, null);
+            assertEquals(2, noArgs.arg);
+        } finally {
+            ObjectCreator.instantiator = previous;
+        }
+    }
+
+    private static class Holder implements DataSerializable {
+        Held held;
+
+        Holder() {}
+
+        @Constructor
+        private Holder (DataIn data) {
+            // the held object sets itself on the holder
+            data.read(Held.class, "held");
+        }
+
+        @Override
+        public void bundleInto (DataOut data) {
+            data.write("held", held);
+        }
+    }
+
+    private static class Held implements DataSerializable {
+        final Holder holder;
+
+        Held (Holder holder) {
+            this.holder = holder;
+        }
+
+        @Constructor
+        private Held (DataIn data) {
+            holder = data.read(Holder.class, "holder");
+            holder.held = this;
+        }
+
+        @Override
+        public void bundleInto (DataOut data) {
+            data.write("holder", holder);
+        }
+    }
+
+    private static DataIn writeCycle() {
+        Holder holder = new Holder();
+        holder.held = new Held(holder);
+        DataOutRoot out = new DataOutRoot();
+        out.write("holder", holder);
+        return new DataIn(out.toPrimitiveData());
+    }
+
+    @Test
+    public void testCyclesThatWriteIntoTheReadObject() {
+        Holder back = writeCycle().read(Holder.class, "holder");
+
+        assertNotNull(back.held);
+        assertSame(back, back.held.holder);
+    }
+
+    @Test
+    public void testReflectionInstantiatorRejectsCyclesThatWriteIntoTheReadObject() {
+        Instantiator previous = ObjectCreator.instantiator;
+        DataSerializer.setInstantiator(new ReflectionInstantiator());
+        try {
+            writeCycle().read(Holder.class, "holder");
+            fail("copying the constructed holder would have lost the held object");
+        } catch (DataSerializationException expected) {
+            // expected
+        } finally {
+            ObjectCreator.instantiator = previous;
+        }
+    }
+
+}